@@ -0,0 +1,591 @@
+package ru.stepup.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Генератор синтетического access-лога в формате combined для нагрузочных тестов.
+// Результат определяется только зерном и настройками: строки создаются блоками, у каждого блока
+// своё зерно, поэтому файл одинаков при любом числе потоков. Блоки собираются сразу в байты
+// и генерируются параллельно, а записываются по порядку.
+//
+// Запуск: java -cp benchmarks/target/benchmarks.jar ru.stepup.benchmarks.CorpusGenerator
+//         --size 1GB --out access.log [--seed 42] [--ips 100000] [--ip-skew 1.1] [--ipv6 0.1]
+//         [--paths 50000] [--path-skew 1.0] [--codes 200:80,301:3,304:5,404:8,500:3,502:1]
+//         [--bots 0.15] [--referers 0.4] [--rate 200] [--malformed 0.001] [--long 0] [--threads N]
+public class CorpusGenerator {
+    private static final int LINES_PER_BLOCK = 8192;
+    private static final byte[][] MONTHS = bytes("Jan", "Feb", "Mar", "Apr", "May", "Jun",
+            "Jul", "Aug", "Sep", "Oct", "Nov", "Dec");
+    private static final byte[][] METHODS = bytes("GET", "POST", "PUT", "DELETE", "PATCH");
+    private static final int[] METHOD_WEIGHTS = {85, 10, 2, 2, 1};
+
+    private static final String[] BROWSER_AGENTS = {
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36 Edg/120.0.2210.61",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.1 Safari/605.1.15",
+            "Mozilla/5.0 (X11; Linux x86_64; rv:121.0) Gecko/20100101 Firefox/121.0",
+            "Mozilla/5.0 (Linux; Android 14; Pixel 8) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Mobile Safari/537.36",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 17_1 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.1 Mobile/15E148 Safari/604.1",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36 OPR/105.0.0.0",
+            "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chromium/119.0.0.0 Safari/537.36",
+            "curl/8.4.0",
+            "-"
+    };
+    private static final int[] BROWSER_WEIGHTS = {40, 12, 12, 8, 15, 8, 2, 1, 1, 1};
+    private static final String[] BOT_AGENTS = {
+            "Mozilla/5.0 (compatible; YandexBot/3.0; +http://yandex.com/bots)",
+            "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)",
+            "Mozilla/5.0 (compatible; bingbot/2.0; +http://www.bing.com/bingbot.htm)",
+            "Mozilla/5.0 (compatible; AhrefsBot/7.0; +http://ahrefs.com/robot/)"
+    };
+    private static final int[] BOT_WEIGHTS = {40, 40, 10, 10};
+
+    // Настройки генерации
+    public static class Settings {
+        private long seed = 42;
+        private long sizeBytes = 1L << 20;
+        private int ipCount = 100_000; // Число различных клиентов
+        private double ipSkew = 1.1; // Показатель распределения Ципфа по клиентам
+        private double ipv6Share = 0.1;
+        private int pathCount = 50_000;
+        private double pathSkew = 1.0;
+        private int[] codes = {200, 301, 304, 404, 500, 502};
+        private int[] codeWeights = {80, 3, 5, 8, 3, 1};
+        private double botShare = 0.15; // Доля запросов от ботов
+        private double refererShare = 0.4; // Доля запросов с непустым referer
+        private int refererDomainCount = 500;
+        private double requestsPerSecond = 200;
+        private long startEpochSecond = 1_698_796_800L; // 1 ноября 2023, 00:00 UTC
+        private double malformedShare = 0.001; // Доля строк с ошибкой формата
+        private double longLineShare = 0; // Доля строк длиннее 1024 символов (анализ на них прерывается)
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        public Settings setSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public Settings setSizeBytes(long sizeBytes) {
+            this.sizeBytes = positive(sizeBytes, "Размер");
+            return this;
+        }
+
+        public Settings setIps(int ipCount, double skew, double ipv6Share) {
+            this.ipCount = (int) positive(ipCount, "Число IP-адресов");
+            this.ipSkew = skew;
+            this.ipv6Share = share(ipv6Share, "Доля IPv6");
+            return this;
+        }
+
+        public Settings setPaths(int pathCount, double skew) {
+            this.pathCount = (int) positive(pathCount, "Число страниц");
+            this.pathSkew = skew;
+            return this;
+        }
+
+        // Распределение кодов ответа в виде "200:80,404:8,500:3"
+        public Settings setCodes(String distribution) {
+            String[] items = distribution.split(",");
+            codes = new int[items.length];
+            codeWeights = new int[items.length];
+            for (int i = 0; i < items.length; i++) {
+                String[] pair = items[i].trim().split(":");
+                if (pair.length != 2) {
+                    throw new IllegalArgumentException("Неверное распределение кодов ответа: " + distribution);
+                }
+                codes[i] = Integer.parseInt(pair[0].trim());
+                codeWeights[i] = (int) positive(Integer.parseInt(pair[1].trim()), "Вес кода ответа");
+            }
+            return this;
+        }
+
+        public Settings setBotShare(double botShare) {
+            this.botShare = share(botShare, "Доля ботов");
+            return this;
+        }
+
+        public Settings setRefererShare(double refererShare) {
+            this.refererShare = share(refererShare, "Доля referer");
+            return this;
+        }
+
+        public Settings setRequestsPerSecond(double requestsPerSecond) {
+            if (!(requestsPerSecond > 0)) {
+                throw new IllegalArgumentException("Частота запросов должна быть положительной: " + requestsPerSecond);
+            }
+            this.requestsPerSecond = requestsPerSecond;
+            return this;
+        }
+
+        public Settings setStartEpochSecond(long startEpochSecond) {
+            this.startEpochSecond = startEpochSecond;
+            return this;
+        }
+
+        public Settings setMalformedShare(double malformedShare) {
+            this.malformedShare = share(malformedShare, "Доля ошибочных строк");
+            return this;
+        }
+
+        public Settings setLongLineShare(double longLineShare) {
+            this.longLineShare = share(longLineShare, "Доля длинных строк");
+            return this;
+        }
+
+        public Settings setThreads(int threads) {
+            this.threads = (int) positive(threads, "Число потоков");
+            return this;
+        }
+
+        private static long positive(long value, String name) {
+            if (value <= 0) {
+                throw new IllegalArgumentException(name + " должно быть положительным: " + value);
+            }
+            return value;
+        }
+
+        private static double share(double value, String name) {
+            if (value < 0 || value > 1) {
+                throw new IllegalArgumentException(name + " должна быть от 0 до 1: " + value);
+            }
+            return value;
+        }
+    }
+
+    private final Settings settings;
+
+    // Общие таблицы, неизменяемые после построения
+    private final int[] ipv4;
+    private final byte[][] ipv6;
+    private final ZipfTable ipTable;
+    private final byte[][] paths;
+    private final ZipfTable pathTable;
+    private final byte[][] referers;
+    private final ZipfTable refererTable;
+    private final byte[][] browserAgents = bytes(BROWSER_AGENTS);
+    private final int[] browserCumulative = cumulative(BROWSER_WEIGHTS);
+    private final byte[][] botAgents = bytes(BOT_AGENTS);
+    private final int[] botCumulative = cumulative(BOT_WEIGHTS);
+    private final int[] methodCumulative = cumulative(METHOD_WEIGHTS);
+    private final int[] codeCumulative;
+
+    public CorpusGenerator(Settings settings) {
+        this.settings = settings;
+        SplittableRandom random = new SplittableRandom(settings.seed);
+
+        ipv4 = new int[settings.ipCount];
+        ipv6 = new byte[settings.ipCount][];
+        for (int i = 0; i < settings.ipCount; i++) {
+            if (random.nextDouble() < settings.ipv6Share) {
+                ipv6[i] = ("2001:db8:" + Integer.toHexString(random.nextInt(1, 0x10000)) + "::"
+                        + Integer.toHexString(random.nextInt(1, 0x10000))).getBytes(StandardCharsets.US_ASCII);
+            } else {
+                ipv4[i] = (int) random.nextLong(1L << 24, 224L << 24); // Без 0.x.x.x и multicast
+            }
+        }
+        ipTable = new ZipfTable(settings.ipCount, settings.ipSkew);
+
+        String[] sections = {"catalog", "product", "blog", "news", "user", "api/v1/items", "static/js", "search"};
+        paths = new byte[settings.pathCount][];
+        for (int i = 0; i < settings.pathCount; i++) {
+            String section = sections[random.nextInt(sections.length)];
+            String path = "/" + section + "/" + i + (random.nextInt(4) == 0 ? "?page=" + random.nextInt(1, 50) : "");
+            paths[i] = path.getBytes(StandardCharsets.US_ASCII);
+        }
+        pathTable = new ZipfTable(settings.pathCount, settings.pathSkew);
+
+        // Поисковики самые частые, дальше сайты с разными вариантами записи адреса
+        List<String> refererList = new ArrayList<>(List.of("https://www.google.com/search?q=access+log",
+                "https://yandex.ru/search/?text=log", "https://www.bing.com/search?q=log"));
+        String[] forms = {"https://www.%s/page", "http://%s/", "https://%s:8443/a/b?c=d", "http://WWW.%s/x|y"};
+        for (int i = 0; i < settings.refererDomainCount; i++) {
+            refererList.add(String.format(forms[random.nextInt(forms.length)], "site" + i + ".example.com"));
+        }
+        referers = bytes(refererList.toArray(new String[0]));
+        refererTable = new ZipfTable(referers.length, 1.0);
+
+        codeCumulative = cumulative(settings.codeWeights);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Settings settings = new Settings();
+        Path out = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--out" -> out = Path.of(value);
+                case "--size" -> settings.setSizeBytes(parseSize(value));
+                case "--seed" -> settings.setSeed(Long.parseLong(value));
+                case "--ips" -> settings.setIps(Integer.parseInt(value), settings.ipSkew, settings.ipv6Share);
+                case "--ip-skew" -> settings.setIps(settings.ipCount, Double.parseDouble(value), settings.ipv6Share);
+                case "--ipv6" -> settings.setIps(settings.ipCount, settings.ipSkew, Double.parseDouble(value));
+                case "--paths" -> settings.setPaths(Integer.parseInt(value), settings.pathSkew);
+                case "--path-skew" -> settings.setPaths(settings.pathCount, Double.parseDouble(value));
+                case "--codes" -> settings.setCodes(value);
+                case "--bots" -> settings.setBotShare(Double.parseDouble(value));
+                case "--referers" -> settings.setRefererShare(Double.parseDouble(value));
+                case "--rate" -> settings.setRequestsPerSecond(Double.parseDouble(value));
+                case "--malformed" -> settings.setMalformedShare(Double.parseDouble(value));
+                case "--long" -> settings.setLongLineShare(Double.parseDouble(value));
+                case "--threads" -> settings.setThreads(Integer.parseInt(value));
+                default -> throw new IllegalArgumentException("Неизвестный параметр: " + args[i]);
+            }
+        }
+        if (out == null) {
+            throw new IllegalArgumentException("Не указан файл: --out <путь>");
+        }
+
+        long start = System.nanoTime();
+        try (OutputStream stream = Files.newOutputStream(out)) {
+            new CorpusGenerator(settings).write(stream);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long size = Files.size(out);
+        System.out.printf("Записано %d байт за %.1f с (%.0f МБ/с)%n", size, seconds, size / seconds / (1 << 20));
+    }
+
+    // Размер вида 1048576, 512KB, 1MB, 50GB
+    static long parseSize(String value) {
+        String upper = value.trim().toUpperCase();
+        long multiplier = 1;
+        if (upper.endsWith("KB")) {
+            multiplier = 1L << 10;
+        } else if (upper.endsWith("MB")) {
+            multiplier = 1L << 20;
+        } else if (upper.endsWith("GB")) {
+            multiplier = 1L << 30;
+        }
+        String digits = multiplier == 1 ? upper : upper.substring(0, upper.length() - 2);
+        return Long.parseLong(digits.trim()) * multiplier;
+    }
+
+    // Пишем строки, пока не наберётся settings.sizeBytes (последняя строка дописывается целиком)
+    public void write(OutputStream out) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(settings.threads);
+        try {
+            ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
+            long written = 0;
+            long nextBlock = 0;
+            while (written < settings.sizeBytes) {
+                // Держим в работе не больше двух блоков на поток, чтобы не раздувать память
+                while (pending.size() < settings.threads * 2) {
+                    long block = nextBlock++;
+                    pending.add(executor.submit(() -> generateBlock(block)));
+                }
+                Block chunk = get(pending.poll());
+                byte[] data = chunk.data;
+                int length = chunk.length;
+                long remaining = settings.sizeBytes - written;
+                if (length > remaining) {
+                    // Обрезаем блок по концу строки, на которой достигнут размер
+                    int end = (int) remaining - 1;
+                    while (data[end] != '\n') {
+                        end++;
+                    }
+                    length = end + 1;
+                }
+                out.write(data, 0, length);
+                written += length;
+            }
+            for (Future<Block> future : pending) {
+                future.cancel(true);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Все User-Agent, которые встречаются в логе
+    public static String[] agents() {
+        String[] agents = Arrays.copyOf(BROWSER_AGENTS, BROWSER_AGENTS.length + BOT_AGENTS.length);
+        System.arraycopy(BOT_AGENTS, 0, agents, BROWSER_AGENTS.length, BOT_AGENTS.length);
+        return agents;
+    }
+
+    // Первые count строк без ошибочных и длинных строк (для микробенчмарков)
+    public static String[] lines(int count) {
+        Settings settings = new Settings().setMalformedShare(0).setLongLineShare(0).setThreads(1);
+        CorpusGenerator generator = new CorpusGenerator(settings);
+        String[] lines = new String[count];
+        int filled = 0;
+        for (long block = 0; filled < count; block++) {
+            Block chunk = generator.generateBlock(block);
+            String text = new String(chunk.data, 0, chunk.length, StandardCharsets.US_ASCII);
+            for (String line : text.split("\n")) {
+                if (filled == count) {
+                    break;
+                }
+                lines[filled++] = line;
+            }
+        }
+        return lines;
+    }
+
+    private static Block get(Future<Block> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Ошибка генерации блока", e.getCause());
+        }
+    }
+
+    // Готовые строки блока: data[0, length)
+    private static final class Block {
+        private final byte[] data;
+        private final int length;
+
+        Block(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    // Блок строк зависит только от зерна и номера блока
+    Block generateBlock(long block) {
+        SplittableRandom random = new SplittableRandom(settings.seed * 0x9E3779B97F4A7C15L + block);
+        LineBuilder line = new LineBuilder(LINES_PER_BLOCK * 220);
+        double time = settings.startEpochSecond + block * LINES_PER_BLOCK / settings.requestsPerSecond;
+        for (int i = 0; i < LINES_PER_BLOCK; i++) {
+            // Интервалы между запросами распределены экспоненциально (поток Пуассона)
+            time += -Math.log(1 - random.nextDouble()) / settings.requestsPerSecond;
+            double kind = random.nextDouble();
+            if (kind < settings.malformedShare) {
+                appendMalformed(line, random, (long) time);
+            } else {
+                appendLine(line, random, (long) time, kind < settings.malformedShare + settings.longLineShare);
+            }
+        }
+        return new Block(line.data, line.length);
+    }
+
+    private void appendLine(LineBuilder line, SplittableRandom random, long epochSecond, boolean veryLong) {
+        appendIp(line, ipTable.sample(random));
+        line.append(" - - [");
+        line.appendTime(epochSecond);
+        line.append("] \"");
+        line.append(METHODS[pick(methodCumulative, random)]);
+        line.append(' ');
+        line.append(paths[pathTable.sample(random)]);
+        if (veryLong) {
+            line.append("?q=");
+            for (int i = 0; i < 1100; i++) {
+                line.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        line.append(" HTTP/1.1\" ");
+
+        int code = settings.codes[pick(codeCumulative, random)];
+        line.appendNumber(code);
+        line.append(' ');
+        // Размер ответа: логнормальное распределение, для 304 тело пустое
+        line.appendNumber(code == 304 ? 0 : (long) Math.min(Math.exp(8 + 1.5 * nextGaussian(random)), 50_000_000));
+
+        line.append(" \"");
+        if (random.nextDouble() < settings.refererShare) {
+            line.append(referers[refererTable.sample(random)]);
+        } else {
+            line.append('-');
+        }
+        line.append("\" \"");
+        if (random.nextDouble() < settings.botShare) {
+            line.append(botAgents[pick(botCumulative, random)]);
+        } else {
+            line.append(browserAgents[pick(browserCumulative, random)]);
+        }
+        line.append("\"\n");
+    }
+
+    // Строки, которые гарантированно не проходят разбор
+    private void appendMalformed(LineBuilder line, SplittableRandom random, long epochSecond) {
+        switch (random.nextInt(4)) {
+            case 0 -> line.append("10.0.0.1 - - [32/Foo/2023:25:61:61 +0300] \"GET / HTTP/1.1\" 200 1 \"-\" \"-\"\n");
+            case 1 -> {
+                appendIp(line, ipTable.sample(random));
+                line.append(" - - [");
+                line.appendTime(epochSecond);
+                line.append("] \"FETCH / HTTP/1.1\" 200 1 \"-\" \"-\"\n");
+            }
+            case 2 -> {
+                appendIp(line, ipTable.sample(random));
+                line.append(" - - [");
+                line.appendTime(epochSecond);
+                line.append("] \"GET / HTTP/1.1\" abc 1 \"-\" \"-\"\n");
+            }
+            default -> {
+                line.append("garbage-");
+                line.appendNumber(random.nextInt(1_000_000));
+                line.append('\n');
+            }
+        }
+    }
+
+    private void appendIp(LineBuilder line, int client) {
+        if (ipv6[client] != null) {
+            line.append(ipv6[client]);
+            return;
+        }
+        int address = ipv4[client];
+        line.appendNumber(address >>> 24);
+        line.append('.');
+        line.appendNumber((address >>> 16) & 0xFF);
+        line.append('.');
+        line.appendNumber((address >>> 8) & 0xFF);
+        line.append('.');
+        line.appendNumber(address & 0xFF);
+    }
+
+    // SplittableRandom не умеет нормальное распределение: метод Бокса-Мюллера
+    private static double nextGaussian(SplittableRandom random) {
+        return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    private static int pick(int[] cumulative, SplittableRandom random) {
+        int value = random.nextInt(cumulative[cumulative.length - 1]);
+        int i = 0;
+        while (cumulative[i] <= value) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int[] cumulative(int[] weights) {
+        int[] result = new int[weights.length];
+        int sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            result[i] = sum;
+        }
+        return result;
+    }
+
+    private static byte[][] bytes(String... values) {
+        byte[][] result = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = values[i].getBytes(StandardCharsets.US_ASCII);
+        }
+        return result;
+    }
+
+    // Распределение Ципфа на 0..n-1: вероятность элемента k пропорциональна 1 / (k + 1)^skew
+    private static final class ZipfTable {
+        private final double[] cdf;
+
+        ZipfTable(int n, double skew) {
+            cdf = new double[n];
+            double sum = 0;
+            for (int k = 0; k < n; k++) {
+                sum += 1 / Math.pow(k + 1, skew);
+                cdf[k] = sum;
+            }
+            for (int k = 0; k < n; k++) {
+                cdf[k] /= sum;
+            }
+        }
+
+        int sample(SplittableRandom random) {
+            int index = Arrays.binarySearch(cdf, random.nextDouble());
+            return Math.min(index >= 0 ? index : -index - 1, cdf.length - 1);
+        }
+    }
+
+    // Сборка строк прямо в байтах, время форматируется с кэшем текущего дня
+    private static final class LineBuilder {
+        private static final int OFFSET_SECONDS = 3 * 3600; // Зона +0300
+
+        private byte[] data;
+        private int length;
+        private long cachedDay = Long.MIN_VALUE;
+        private final byte[] datePrefix = new byte[12]; // "dd/MMM/yyyy:"
+
+        LineBuilder(int capacity) {
+            data = new byte[capacity];
+        }
+
+        void append(char c) {
+            ensure(1);
+            data[length++] = (byte) c;
+        }
+
+        void append(String s) {
+            ensure(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                data[length++] = (byte) s.charAt(i);
+            }
+        }
+
+        void append(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, data, length, bytes.length);
+            length += bytes.length;
+        }
+
+        void appendNumber(long value) {
+            ensure(20);
+            if (value == 0) {
+                data[length++] = '0';
+                return;
+            }
+            int start = length;
+            while (value > 0) {
+                data[length++] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            for (int i = start, j = length - 1; i < j; i++, j--) {
+                byte tmp = data[i];
+                data[i] = data[j];
+                data[j] = tmp;
+            }
+        }
+
+        // "dd/MMM/yyyy:HH:mm:ss +0300"
+        void appendTime(long epochSecond) {
+            long local = epochSecond + OFFSET_SECONDS;
+            long day = Math.floorDiv(local, 86400);
+            if (day != cachedDay) {
+                LocalDate date = LocalDate.ofEpochDay(day);
+                twoDigits(datePrefix, 0, date.getDayOfMonth());
+                datePrefix[2] = '/';
+                System.arraycopy(MONTHS[date.getMonthValue() - 1], 0, datePrefix, 3, 3);
+                datePrefix[6] = '/';
+                twoDigits(datePrefix, 7, date.getYear() / 100);
+                twoDigits(datePrefix, 9, date.getYear() % 100);
+                datePrefix[11] = ':';
+                cachedDay = day;
+            }
+            append(datePrefix);
+            int secondOfDay = Math.floorMod(local, 86400);
+            ensure(14);
+            twoDigits(data, length, secondOfDay / 3600);
+            data[length + 2] = ':';
+            twoDigits(data, length + 3, secondOfDay / 60 % 60);
+            data[length + 5] = ':';
+            twoDigits(data, length + 6, secondOfDay % 60);
+            length += 8;
+            append(" +0300");
+        }
+
+        private static void twoDigits(byte[] target, int pos, int value) {
+            target[pos] = (byte) ('0' + value / 10);
+            target[pos + 1] = (byte) ('0' + value % 10);
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + extra));
+            }
+        }
+    }
+}
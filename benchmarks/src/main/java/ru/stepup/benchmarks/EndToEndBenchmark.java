@@ -0,0 +1,89 @@
+package ru.stepup.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.stepup.utils.AnalysisMetrics;
+import ru.stepup.utils.Analyze;
+import ru.stepup.utils.AnalyzeOptions;
+import ru.stepup.utils.Metric;
+import ru.stepup.utils.ParserMode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Полный анализ сгенерированного файла через Analyze.analyzeFile (вывод отчёта отбрасывается;
+// ошибочные строки только считаются по причинам, а stderr остаётся для сбоев анализа файла).
+// Пропускная способность: sizeMb / (время операции в секундах) МБ/с
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+
+    @Param({"64"})
+    public int sizeMb;
+
+    @Param({"CLASSIC", "SINGLE_PASS", "BYTES"})
+    public ParserMode parserMode;
+
+    // Масштабирование по потокам: "N" - по числу ядер (Runtime.availableProcessors)
+    @Param({"1", "2", "4", "N"})
+    public String threads;
+
+    // Набор метрик как в --metrics: "traffic" - проход только по трафику
+    @Param({"all", "traffic"})
+    public String metrics;
+
+    // Встроенные замеры (счётчики, задержки, оценка памяти) без JMX и строки прогресса
+    @Param({"false", "true"})
+    public boolean instrumented;
+
+    private Path file;
+    private AnalyzeOptions options;
+    private PrintStream originalOut;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        file = Files.createTempFile("access-benchmark", ".log");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            new CorpusGenerator(new CorpusGenerator.Settings().setSizeBytes(sizeMb * 1024L * 1024L)).write(out);
+        }
+        options = new AnalyzeOptions().setParserMode(parserMode).setThreads(threadCount())
+                .setMetrics(Metric.parse(metrics))
+                .setInstrumentation(instrumented ? new AnalysisMetrics() : null);
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    private int threadCount() {
+        return "N".equals(threads) ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(originalOut);
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void analyzeFile() {
+        Analyze.analyzeFile(file.toString(), options);
+    }
+}
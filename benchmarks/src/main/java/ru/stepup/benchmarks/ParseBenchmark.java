@@ -0,0 +1,123 @@
+package ru.stepup.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.stepup.model.LogEntry;
+import ru.stepup.model.LogLine;
+import ru.stepup.model.ParseFailure;
+import ru.stepup.model.TimestampDecoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Разбор одной строки: классический LogEntry, однопроходный LogLine и декодирование времени.
+// Для строк с ошибками - разбор с исключением и без него (tryParse)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseBenchmark {
+    private static final int LINE_COUNT = 4096; // Степень двойки для быстрого выбора строки
+
+    private String[] lines;
+    private byte[][] lineBytes;
+    private String[] timestamps;
+    private String[] malformed; // Те же строки, испорченные по-разному, как мусор в логе
+    private final ParseFailure failure = new ParseFailure();
+    private final TimestampDecoder decoder = new TimestampDecoder();
+    private int index;
+
+    @Setup
+    public void setUp() {
+        lines = CorpusGenerator.lines(LINE_COUNT);
+        lineBytes = new byte[LINE_COUNT][];
+        timestamps = new String[LINE_COUNT];
+        for (int i = 0; i < LINE_COUNT; i++) {
+            lineBytes[i] = lines[i].getBytes(StandardCharsets.UTF_8);
+            timestamps[i] = lines[i].substring(lines[i].indexOf('[') + 1, lines[i].indexOf(']'));
+        }
+
+        malformed = new String[LINE_COUNT];
+        for (int i = 0; i < LINE_COUNT; i++) {
+            String line = lines[i];
+            malformed[i] = switch (i % 5) {
+                case 0 -> line.replaceFirst("/[A-Z][a-z]{2}/", "/Foo/"); // Неверная дата
+                case 1 -> line.replaceFirst("\"[A-Z]+ ", "\"FETCH "); // Неизвестный метод
+                case 2 -> line.substring(0, line.length() / 3); // Обрезанная строка
+                case 3 -> "\\x16\\x03\\x01\\x02\\x00\\x01\\x00\\x01\\xfc\\x03\\x03"; // TLS на HTTP-порт
+                default -> line.replaceFirst("\" (\\d{3}) ", "\" 2x0 "); // Неверный код ответа
+            };
+        }
+    }
+
+    private int next() {
+        return index = (index + 1) & (LINE_COUNT - 1);
+    }
+
+    @Benchmark
+    public LogEntry logEntry() {
+        return new LogEntry(lines[next()]);
+    }
+
+    @Benchmark
+    public LogLine logLineFromString() {
+        return LogLine.parse(lines[next()]);
+    }
+
+    @Benchmark
+    public LogLine logLineFromBytes() {
+        byte[] bytes = lineBytes[next()];
+        return LogLine.parse(bytes, 0, bytes.length);
+    }
+
+    // Полный LogEntry через однопроходный разбор (все поля материализуются)
+    @Benchmark
+    public LogEntry logLineToLogEntry() {
+        return LogLine.parse(lines[next()]).toLogEntry();
+    }
+
+    @Benchmark
+    public LogLine logLineTryParseFromBytes() {
+        byte[] bytes = lineBytes[next()];
+        return LogLine.tryParse(bytes, 0, bytes.length, failure);
+    }
+
+    // Строка с ошибкой: исключение с сообщением и стеком вызовов
+    @Benchmark
+    public Object malformedThrowing() {
+        try {
+            return LogLine.parse(malformed[next()]);
+        } catch (IllegalArgumentException e) {
+            return e;
+        }
+    }
+
+    // Строка с ошибкой без исключения: только причина в переиспользуемом ParseFailure
+    @Benchmark
+    public Object malformedTryParse() {
+        LogLine line = LogLine.tryParse(malformed[next()], failure);
+        return line != null ? line : failure.getReason();
+    }
+
+    @Benchmark
+    public Object malformedLogEntryTryParse() {
+        LogEntry entry = LogEntry.tryParse(malformed[next()], failure);
+        return entry != null ? entry : failure.getReason();
+    }
+
+    @Benchmark
+    public long timestamp() {
+        String timestamp = timestamps[next()];
+        return decoder.decode(timestamp, 0, timestamp.length());
+    }
+}
@@ -0,0 +1,75 @@
+package ru.stepup.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.stepup.model.LogLine;
+import ru.stepup.utils.RefererDomains;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Извлечение домена из referer: через URI, быстрым разбором и через кэш.
+// Непустые referer из корпуса, 10% из них заменены некорректными (пробелы, '|', '{', битые
+// %-последовательности), на которых URI бросает исключение
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RefererDomainBenchmark {
+    private static final int REFERER_COUNT = 4096;
+    private static final String[] MALFORMED_FORMS = {"http://WWW.site%d.example.com/a b", "https://site%d.example.com/{x}",
+            "http://site%d.example.com/%%zz", "site%d.example.com/search?q=a|b"};
+
+    private String[] referers;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        List<String> valid = new ArrayList<>();
+        for (String line : CorpusGenerator.lines(REFERER_COUNT * 4)) {
+            String referer = LogLine.parse(line).getReferer();
+            if (!referer.isEmpty()) {
+                valid.add(referer);
+            }
+        }
+
+        SplittableRandom random = new SplittableRandom(1);
+        referers = new String[REFERER_COUNT];
+        for (int i = 0; i < REFERER_COUNT; i++) {
+            referers[i] = random.nextInt(10) == 0
+                    ? String.format(MALFORMED_FORMS[random.nextInt(MALFORMED_FORMS.length)], random.nextInt(200))
+                    : valid.get(i % valid.size());
+        }
+    }
+
+    private String next() {
+        return referers[index = (index + 1) & (REFERER_COUNT - 1)];
+    }
+
+    @Benchmark
+    public String uri() {
+        return RefererDomains.parseWithUri(next());
+    }
+
+    @Benchmark
+    public String parse() {
+        return RefererDomains.parse(next());
+    }
+
+    @Benchmark
+    public String cached() {
+        return RefererDomains.of(next());
+    }
+}
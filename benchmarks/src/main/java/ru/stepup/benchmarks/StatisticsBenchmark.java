@@ -0,0 +1,76 @@
+package ru.stepup.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.stepup.model.LogEntry;
+import ru.stepup.model.LogLine;
+import ru.stepup.utils.Statistics;
+
+import java.util.concurrent.TimeUnit;
+
+// Накопление статистики по уже разобранным строкам через публичный addEntry.
+// Извлечение домена referer отдельно замеряет RefererDomainBenchmark
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class StatisticsBenchmark {
+    private static final int LINE_COUNT = 4096;
+
+    private LogEntry[] entries;
+    private LogLine[] logLines;
+    private Statistics statistics;
+    private Statistics approximateStatistics;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] lines = CorpusGenerator.lines(LINE_COUNT);
+        entries = new LogEntry[LINE_COUNT];
+        logLines = new LogLine[LINE_COUNT];
+        for (int i = 0; i < LINE_COUNT; i++) {
+            entries[i] = new LogEntry(lines[i]);
+            logLines[i] = LogLine.parse(lines[i]);
+        }
+    }
+
+    // Новая статистика на каждую итерацию, чтобы множества не росли между итерациями
+    @Setup(Level.Iteration)
+    public void resetStatistics() {
+        statistics = new Statistics();
+        approximateStatistics = new Statistics(true);
+    }
+
+    private int next() {
+        return index = (index + 1) & (LINE_COUNT - 1);
+    }
+
+    @Benchmark
+    public Statistics addLogEntry() {
+        statistics.addEntry(entries[next()]);
+        return statistics;
+    }
+
+    @Benchmark
+    public Statistics addLogLine() {
+        statistics.addEntry(logLines[next()]);
+        return statistics;
+    }
+
+    @Benchmark
+    public Statistics addLogLineApproximate() {
+        approximateStatistics.addEntry(logLines[next()]);
+        return approximateStatistics;
+    }
+}
@@ -0,0 +1,49 @@
+package ru.stepup.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.stepup.model.UserAgent;
+import ru.stepup.model.UserAgentMatcher;
+
+import java.util.concurrent.TimeUnit;
+
+// Классификация User-Agent: полный разбор, только поиск токенов и обращение к кэшу
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class UserAgentBenchmark {
+    private final String[] agents = CorpusGenerator.agents();
+    private final UserAgentMatcher matcher = UserAgentMatcher.defaults();
+    private int index;
+
+    private String next() {
+        index = index + 1 == agents.length ? 0 : index + 1;
+        return agents[index];
+    }
+
+    @Benchmark
+    public UserAgent classify() {
+        return new UserAgent(next(), matcher);
+    }
+
+    @Benchmark
+    public long matchTokens() {
+        String agent = next();
+        return matcher.match(agent, 0, agent.length());
+    }
+
+    @Benchmark
+    public UserAgent cached() {
+        return UserAgent.of(next());
+    }
+}
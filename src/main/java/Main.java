@@ -1,15 +1,111 @@
+import ru.stepup.model.UserAgentMatcher;
+import ru.stepup.utils.AnalysisMetrics;
 import ru.stepup.utils.Analyze;
+import ru.stepup.utils.AnalyzeOptions;
+import ru.stepup.utils.BatchAnalyzer;
+import ru.stepup.utils.CommandLine;
+import ru.stepup.utils.LogFollower;
+import ru.stepup.utils.ParserMode;
+import ru.stepup.utils.QuarantineWriter;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Scanner;
+import javax.management.JMException;
 
 public class Main {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        CommandLine commandLine;
+        try {
+            commandLine = CommandLine.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(CommandLine.USAGE);
+            System.exit(2);
+            return;
+        }
+        if (commandLine.isHelp()) {
+            System.out.println(CommandLine.USAGE);
+            return;
+        }
+        AnalyzeOptions options = commandLine.getOptions();
+
+        // Дополнительные токены ботов: --bots <файл>, по одному токену в строке
+        if (commandLine.getBotsFile() != null) {
+            List<String> botTokens = Files.readAllLines(Path.of(commandLine.getBotsFile()));
+            UserAgentMatcher.install(UserAgentMatcher.withBotTokens(botTokens));
+        }
+
+        // Карантин неразобранных строк: --quarantine <файл>, общий для всех анализируемых файлов
+        QuarantineWriter quarantine = null;
+        if (commandLine.getQuarantineFile() != null) {
+            quarantine = QuarantineWriter.open(Path.of(commandLine.getQuarantineFile()),
+                    commandLine.getQuarantineLimit());
+            options.setQuarantine(quarantine);
+        }
+
+        // Замеры хода анализа: --jmx (MBean) и --progress [интервал в секундах]
+        AnalysisMetrics instrumentation = null;
+        if (commandLine.isJmx() || commandLine.getProgressIntervalSeconds() > 0) {
+            instrumentation = new AnalysisMetrics();
+            if (commandLine.isJmx()) {
+                try {
+                    instrumentation.registerMBeans();
+                } catch (JMException e) {
+                    System.err.println("Не удалось зарегистрировать MBean: " + e.getMessage());
+                }
+            }
+            if (commandLine.getProgressIntervalSeconds() > 0) {
+                instrumentation.startProgress(commandLine.getProgressIntervalSeconds() * 1000);
+            }
+            options.setInstrumentation(instrumentation);
+        }
+
+        // Режим слежения: --follow <путь> [интервал отчёта в секундах]
+        if (commandLine.getFollowPath() != null) {
+            closeOnExit(quarantine, instrumentation, commandLine);
+            AnalyzeOptions followOptions = new AnalyzeOptions().setParserMode(ParserMode.BYTES)
+                    .setApproximate(options.isApproximate()).setMetrics(options.getMetrics())
+                    .setQuarantine(quarantine).setInstrumentation(instrumentation);
+            new LogFollower(commandLine.getFollowPath(), followOptions,
+                    commandLine.getFollowIntervalSeconds() * 1000).run();
+            return;
+        }
+
+        // Пакетный режим: анализируем указанные файлы, папки и шаблоны и завершаемся.
+        // Код выхода 1 - часть файлов не обработана, 2 - ошибка в аргументах
+        if (!commandLine.getPaths().isEmpty()) {
+            List<Path> files;
+            try {
+                files = BatchAnalyzer.resolveInputs(commandLine.getPaths());
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                System.exit(2);
+                return;
+            }
+            int failed;
+            try {
+                failed = Analyze.analyzeFiles(files, options, commandLine.isPerFile());
+            } finally {
+                // Дописываем карантин до выхода: System.exit не ждёт поток записи
+                close(quarantine, instrumentation, commandLine);
+            }
+            System.exit(failed == 0 ? 0 : 1);
+        }
+
+        // Диалоговый режим идёт до конца ввода или остановки программы
+        closeOnExit(quarantine, instrumentation, commandLine);
         Scanner scanner = new Scanner(System.in); // Создаём Scanner один раз
 
         while (true) {
-            System.out.println("Введите путь к файлу:");
+            System.out.println("Введите путь к файлу или папке:");
+            if (!scanner.hasNextLine()) {
+                return; // Ввод закончился
+            }
             String path = scanner.nextLine(); // Используем существующий scanner
             File file = new File(path);
 
@@ -17,17 +113,53 @@ public class Main {
                 System.out.println("Файл не существует");
                 continue;
             }
-            if (file.isDirectory()) {
-                System.out.println("Это папка, а не файл");
-                continue;
-            }
 
             System.out.println("Путь указан верно");
 
-            // Анализируем файл и выводим результаты
-            Analyze.analyzeFile(path);
+            // Анализируем файл (или все файлы папки) и выводим результаты
+            if (file.isDirectory()) {
+                try {
+                    List<Path> files = BatchAnalyzer.resolveInputs(List.of(path));
+                    Analyze.analyzeFiles(files, options, commandLine.isPerFile());
+                } catch (IllegalArgumentException e) {
+                    System.out.println(e.getMessage());
+                    continue;
+                }
+            } else {
+                Analyze.analyzeFile(path, options);
+            }
 
             System.out.println("\n" + "=".repeat(60) + "\n");
         }
     }
-}
\ No newline at end of file
+
+    // Закрываем карантин и замеры: карантин дописывает очередь и выводит итог, замеры - сводку
+    private static void close(QuarantineWriter quarantine, AnalysisMetrics instrumentation,
+                              CommandLine commandLine) throws IOException {
+        if (quarantine != null) {
+            quarantine.close();
+        }
+        if (instrumentation != null) {
+            instrumentation.close();
+            if (commandLine.getProgressIntervalSeconds() > 0) {
+                System.err.println(instrumentation.describe());
+            }
+        }
+    }
+
+    // Слежение и диалоговый режим заканчиваются концом ввода, исключением или остановкой процесса
+    // (Ctrl+C): закрываем всё при завершении JVM, иначе поток записи карантина (демон) теряет очередь
+    private static void closeOnExit(QuarantineWriter quarantine, AnalysisMetrics instrumentation,
+                                    CommandLine commandLine) {
+        if (quarantine == null && instrumentation == null) {
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                close(quarantine, instrumentation, commandLine);
+            } catch (IOException e) {
+                System.err.println("Не удалось дописать карантин: " + e.getMessage());
+            }
+        }));
+    }
+}
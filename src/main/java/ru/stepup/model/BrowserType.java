@@ -0,0 +1,23 @@
+package ru.stepup.model;
+
+// Браузер из User-Agent
+public enum BrowserType {
+    EDGE("Edge"),
+    FIREFOX("Firefox"),
+    CHROME("Chrome"),
+    CHROMIUM("Chromium"),
+    SAFARI("Safari"),
+    OPERA("Opera"),
+    OTHER("Other"),
+    UNKNOWN("Unknown");
+
+    private final String displayName;
+
+    BrowserType(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+}
@@ -0,0 +1,41 @@
+package ru.stepup.model;
+
+import java.nio.charset.Charset;
+
+// Байты строки лога, видимые как CharSequence: каждый байт - один символ, индексы совпадают
+// с индексами массива. Разделители лога ASCII, а байты многобайтовых символов UTF-8 никогда
+// не совпадают с ASCII, поэтому разбор по байтам находит те же границы полей.
+// Строки создаются только по требованию, декодированием в кодировке по умолчанию (как у FileReader)
+final class ByteSequence implements CharSequence {
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private final byte[] bytes;
+
+    ByteSequence(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    @Override
+    public int length() {
+        return bytes.length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes[index] & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return decode(start, end);
+    }
+
+    String decode(int start, int end) {
+        return new String(bytes, start, end - start, CHARSET);
+    }
+
+    @Override
+    public String toString() {
+        return decode(0, bytes.length);
+    }
+}
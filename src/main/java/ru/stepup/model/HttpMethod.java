@@ -1,5 +1,43 @@
 package ru.stepup.model;
 
 enum HttpMethod {
-    GET, POST, PUT, DELETE, PATCH // Enum для методов HTTP-запросов
+    GET, POST, PUT, DELETE, PATCH; // Enum для методов HTTP-запросов
+
+    private static final HttpMethod[] VALUES = values();
+
+    // Метод по точному имени (как valueOf), null - такого метода нет
+    static HttpMethod byName(String name) {
+        for (HttpMethod method : VALUES) {
+            if (method.name().equals(name)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    // Ищем метод по фрагменту строки (или байтов) без учёта регистра и без создания подстроки
+    static HttpMethod match(CharSequence s, int start, int end) {
+        int length = end - start;
+        for (HttpMethod method : VALUES) {
+            String name = method.name();
+            if (name.length() == length && sameIgnoringCase(s, start, name)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    // Имена методов - заглавные латинские буквы, поэтому достаточно сравнить ASCII-регистр
+    private static boolean sameIgnoringCase(CharSequence s, int start, String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = s.charAt(start + i);
+            if (c >= 'a' && c <= 'z') {
+                c -= 'a' - 'A';
+            }
+            if (c != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
\ No newline at end of file
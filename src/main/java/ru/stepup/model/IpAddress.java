@@ -0,0 +1,229 @@
+package ru.stepup.model;
+
+// Компактное представление IP-адреса: IPv4 - одно число int, IPv6 - два числа long.
+// Принимается только канонический вид адреса (IPv4 без ведущих нулей, IPv6 по RFC 5952),
+// поэтому разные строки всегда дают разные ключи и подсчёт уникальных адресов не меняется.
+// Остальные адреса остаются строками. Объект переиспользуется: parse перезаписывает поля
+public final class IpAddress {
+    public static final long NOT_IPV4 = -1;
+
+    public enum Kind {
+        IPV4, IPV6, OTHER
+    }
+
+    private final int[] groups = new int[8];
+    private final char[] canonical = new char[39];
+
+    private Kind kind = Kind.OTHER;
+    private int ipv4;
+    private long high;
+    private long low;
+
+    // Разбираем адрес из фрагмента строки (или байтов) без создания подстроки
+    public Kind parse(CharSequence s, int start, int end) {
+        long v4 = parseIpv4(s, start, end);
+        if (v4 != NOT_IPV4) {
+            ipv4 = (int) v4;
+            kind = Kind.IPV4;
+        } else if (parseIpv6(s, start, end)) {
+            kind = Kind.IPV6;
+        } else {
+            kind = Kind.OTHER;
+        }
+        return kind;
+    }
+
+    // Восстанавливаем ранее разобранный адрес (например, из колоночного кэша) без разбора строки
+    public void restore(Kind kind, int ipv4, long high, long low) {
+        this.kind = kind;
+        this.ipv4 = ipv4;
+        this.high = high;
+        this.low = low;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getIpv4() {
+        return ipv4;
+    }
+
+    // Старшие 64 бита IPv6
+    public long getHigh() {
+        return high;
+    }
+
+    // Младшие 64 бита IPv6
+    public long getLow() {
+        return low;
+    }
+
+    // Разбираем IPv4 в каноническом виде "a.b.c.d" (без ведущих нулей) в число 0..2^32-1.
+    // Канонический вид гарантирует, что разные строки дают разные числа. NOT_IPV4 при ошибке
+    public static long parseIpv4(CharSequence s, int start, int end) {
+        long result = 0;
+        int parts = 0;
+        int pos = start;
+        while (parts < 4) {
+            int partStart = pos;
+            int value = 0;
+            while (pos < end && pos - partStart < 3) {
+                char c = s.charAt(pos);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                value = value * 10 + (c - '0');
+                pos++;
+            }
+            int digits = pos - partStart;
+            if (digits == 0 || value > 255 || (digits > 1 && s.charAt(partStart) == '0')) {
+                return NOT_IPV4;
+            }
+            result = (result << 8) | value;
+            parts++;
+
+            if (parts < 4) {
+                if (pos >= end || s.charAt(pos) != '.') {
+                    return NOT_IPV4;
+                }
+                pos++;
+            }
+        }
+        return pos == end ? result : NOT_IPV4;
+    }
+
+    // Обратное преобразование IPv4 в строку
+    public static String formatIpv4(int address) {
+        return (address >>> 24) + "." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+
+    // Разбираем IPv6 из шестнадцатеричных групп с не более чем одним "::",
+    // затем сверяем строку с каноническим видом того же адреса
+    private boolean parseIpv6(CharSequence s, int start, int end) {
+        int length = end - start;
+        if (length < 2 || length > canonical.length) {
+            return false;
+        }
+
+        int count = 0;
+        int gap = -1; // Номер группы, на месте которой стоит "::"
+        int pos = start;
+        if (s.charAt(pos) == ':') {
+            if (s.charAt(pos + 1) != ':') {
+                return false;
+            }
+            gap = 0;
+            pos += 2;
+        }
+        while (pos < end) {
+            int value = 0;
+            int digits = 0;
+            while (pos < end && digits < 5) {
+                int digit = Character.digit(s.charAt(pos), 16);
+                if (digit < 0) {
+                    break;
+                }
+                value = (value << 4) | digit;
+                digits++;
+                pos++;
+            }
+            if (digits == 0 || digits > 4 || count == 8) {
+                return false;
+            }
+            groups[count++] = value;
+
+            if (pos < end) {
+                if (s.charAt(pos) != ':' || pos + 1 == end) {
+                    return false;
+                }
+                pos++;
+                if (s.charAt(pos) == ':') {
+                    if (gap != -1) {
+                        return false;
+                    }
+                    gap = count;
+                    pos++;
+                }
+            }
+        }
+
+        // Раздвигаем группы на место "::"
+        if (gap == -1) {
+            if (count != 8) {
+                return false;
+            }
+        } else {
+            int zeros = 8 - count;
+            if (zeros < 1) {
+                return false;
+            }
+            System.arraycopy(groups, gap, groups, gap + zeros, count - gap);
+            for (int i = gap; i < gap + zeros; i++) {
+                groups[i] = 0;
+            }
+        }
+
+        int canonicalLength = formatCanonical();
+        if (canonicalLength != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(start + i) != canonical[i]) {
+                return false;
+            }
+        }
+
+        high = ((long) groups[0] << 48) | ((long) groups[1] << 32) | ((long) groups[2] << 16) | groups[3];
+        low = ((long) groups[4] << 48) | ((long) groups[5] << 32) | ((long) groups[6] << 16) | groups[7];
+        return true;
+    }
+
+    // Канонический вид по RFC 5952: строчные цифры без ведущих нулей, самая длинная
+    // (первая из равных) серия из двух и более нулевых групп заменяется на "::"
+    private int formatCanonical() {
+        int bestStart = -1;
+        int bestLength = 1;
+        for (int i = 0; i < 8; ) {
+            if (groups[i] != 0) {
+                i++;
+                continue;
+            }
+            int runStart = i;
+            while (i < 8 && groups[i] == 0) {
+                i++;
+            }
+            if (i - runStart > bestLength) {
+                bestStart = runStart;
+                bestLength = i - runStart;
+            }
+        }
+
+        int length = 0;
+        for (int i = 0; i < 8; i++) {
+            if (i == bestStart) {
+                canonical[length++] = ':';
+                canonical[length++] = ':';
+                i += bestLength - 1;
+                continue;
+            }
+            if (i > 0 && i != bestStart + bestLength) {
+                canonical[length++] = ':';
+            }
+            length = appendHex(groups[i], length);
+        }
+        return length;
+    }
+
+    private int appendHex(int value, int length) {
+        boolean started = false;
+        for (int shift = 12; shift >= 0; shift -= 4) {
+            int digit = (value >>> shift) & 0xF;
+            if (digit != 0 || started || shift == 0) {
+                canonical[length++] = Character.forDigit(digit, 16);
+                started = true;
+            }
+        }
+        return length;
+    }
+}
@@ -1,13 +1,18 @@
 package ru.stepup.model;
 
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Locale;
+import java.time.ZoneOffset;
+import java.util.EnumSet;
+import java.util.Set;
 
 // Класс для представления записи лога
 public class LogEntry {
+    private static final long INVALID_NUMBER = Long.MIN_VALUE;
+    private static final Set<LogField> ALL_FIELDS = EnumSet.allOf(LogField.class);
+
     private final String ipAddr;
-    private final LocalDateTime time;
+    private final LocalDateTime time; // Время как записано в логе, без учёта зоны
+    private final long epochSecond; // Момент времени в секундах эпохи UTC с учётом зоны
     private final HttpMethod method;
     private final String path;
     private final int responseCode;
@@ -15,136 +20,180 @@ public class LogEntry {
     private final String referer;
     private final UserAgent agent;
 
-    // Конструктор, принимающий строку лога
+    // Конструктор, принимающий строку лога. Неверная строка - IllegalArgumentException
     public LogEntry(String logLine) {
-        this.ipAddr = extractIpAddress(logLine);
-        this.time = extractDateTime(logLine);
-        this.method = extractHttpMethod(logLine);
-        this.path = extractPath(logLine);
-        this.responseCode = extractResponseCode(logLine);
-        this.responseSize = (int) extractDataSize(logLine);
-        this.referer = extractReferer(logLine);
-        this.agent = new UserAgent(extractUserAgentString(logLine));
-    }
-
-    // Методы для извлечения компонентов из строки лога
-    private String extractIpAddress(String logLine) {
+        this(parseOrThrow(logLine));
+    }
+
+    private LogEntry(LogEntry parsed) {
+        this(parsed.ipAddr, parsed.time, parsed.epochSecond, parsed.method, parsed.path, parsed.responseCode,
+                parsed.responseSize, parsed.referer, parsed.agent);
+    }
+
+    // Конструктор для уже разобранных полей (используется однопроходным разбором LogLine)
+    LogEntry(String ipAddr, LocalDateTime time, long epochSecond, HttpMethod method, String path,
+             int responseCode, int responseSize, String referer, UserAgent agent) {
+        this.ipAddr = ipAddr;
+        this.time = time;
+        this.epochSecond = epochSecond;
+        this.method = method;
+        this.path = path;
+        this.responseCode = responseCode;
+        this.responseSize = responseSize;
+        this.referer = referer;
+        this.agent = agent;
+    }
+
+    private static LogEntry parseOrThrow(String logLine) {
+        ParseFailure failure = new ParseFailure();
+        LogEntry entry = tryParse(logLine, failure);
+        if (entry == null) {
+            throw failure.toException();
+        }
+        return entry;
+    }
+
+    // Разбор без исключений: null, а причина ошибки - в failure. Поля ищутся так же,
+    // как раньше искались отдельными методами, и ошибки те же, но вместо исключения
+    public static LogEntry tryParse(String logLine, ParseFailure failure) {
+        return tryParse(logLine, ALL_FIELDS, failure);
+    }
+
+    // Разбор только нужных полей: строка проверяется целиком, поэтому ошибки те же,
+    // но поля вне fields не создаются и в записи равны null
+    public static LogEntry tryParse(String logLine, Set<LogField> fields, ParseFailure failure) {
         // IP-адрес находится в начале строки до первого пробела
         int spaceIndex = logLine.indexOf(' ');
-        if (spaceIndex != -1) {
-            return logLine.substring(0, spaceIndex);
+        if (spaceIndex == -1) {
+            return failure.fail(ParseError.NO_IP_ADDRESS);
         }
-        throw new IllegalArgumentException("Неверный формат строки лога: не найден IP-адрес");
-    }
+        String ipAddr = fields.contains(LogField.IP_ADDRESS) ? logLine.substring(0, spaceIndex) : null;
 
-    private LocalDateTime extractDateTime(String logLine) {
         // Дата находится между квадратными скобками
         int openBracket = logLine.indexOf('[');
         int closeBracket = logLine.indexOf(']', openBracket);
-
-        if (openBracket != -1 && closeBracket != -1) {
-            String dateTimeStr = logLine.substring(openBracket + 1, closeBracket);
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH);
-            return LocalDateTime.parse(dateTimeStr, formatter);
+        if (openBracket == -1 || closeBracket == -1) {
+            return failure.fail(ParseError.NO_TIME);
         }
-        throw new IllegalArgumentException("Неверный формат строки лога: не найдена дата");
-    }
+        TimestampDecoder decoder = TimestampDecoder.forCurrentThread();
+        long epochSecond = decoder.tryDecode(logLine, openBracket + 1, closeBracket);
+        if (epochSecond == TimestampDecoder.INVALID) {
+            return failure.fail(ParseError.INVALID_TIME, logLine, openBracket + 1, closeBracket);
+        }
+        LocalDateTime time = fields.contains(LogField.TIME)
+                ? LocalDateTime.ofEpochSecond(epochSecond + decoder.getLastOffsetSeconds(), 0, ZoneOffset.UTC)
+                : null;
 
-    private HttpMethod extractHttpMethod(String logLine) {
         // Метод находится после даты, между кавычками
         int afterDate = logLine.indexOf(']') + 2; // +2 чтобы пропустить "] "
         int firstQuote = logLine.indexOf('"', afterDate);
         int firstSpace = logLine.indexOf(' ', firstQuote + 1);
-
-        if (firstQuote != -1 && firstSpace != -1) {
-            String methodStr = logLine.substring(firstQuote + 1, firstSpace);
-            try {
-                return HttpMethod.valueOf(methodStr.toUpperCase());
-            } catch (IllegalArgumentException e) {
-                throw new IllegalArgumentException("Неизвестный метод HTTP: " + methodStr);
-            }
+        if (firstQuote == -1 || firstSpace == -1) {
+            return failure.fail(ParseError.NO_METHOD);
+        }
+        HttpMethod method = HttpMethod.byName(logLine.substring(firstQuote + 1, firstSpace).toUpperCase());
+        if (method == null) {
+            return failure.fail(ParseError.UNKNOWN_METHOD, logLine, firstQuote + 1, firstSpace);
         }
-        throw new IllegalArgumentException("Неверный формат строки лога: не найден метод HTTP");
-    }
 
-    private String extractPath(String logLine) {
         // Путь находится после метода, до " HTTP/"
-        int afterDate = logLine.indexOf(']') + 2;
-        int firstQuote = logLine.indexOf('"', afterDate);
-        int firstSpace = logLine.indexOf(' ', firstQuote + 1);
         int httpIndex = logLine.indexOf(" HTTP/", firstSpace + 1);
-
-        if (firstSpace != -1 && httpIndex != -1) {
-            return logLine.substring(firstSpace + 1, httpIndex);
+        if (httpIndex == -1) {
+            return failure.fail(ParseError.NO_PATH);
         }
-        throw new IllegalArgumentException("Неверный формат строки лога: не найден путь");
-    }
+        String path = fields.contains(LogField.PATH) ? logLine.substring(firstSpace + 1, httpIndex) : null;
 
-    private int extractResponseCode(String logLine) {
         // Код ответа находится после пути, перед размером данных
         int afterHttp = logLine.indexOf("HTTP/");
         if (afterHttp == -1) {
-            throw new IllegalArgumentException("Неверный формат строки лога: не найден HTTP");
+            return failure.fail(ParseError.NO_PROTOCOL);
         }
-
         // Ищем следующий пробел после HTTP/
         int spaceAfterHttp = logLine.indexOf(' ', afterHttp);
-        int nextSpace = logLine.indexOf(' ', spaceAfterHttp + 1);
-
-        if (spaceAfterHttp != -1 && nextSpace != -1) {
-            String codeStr = logLine.substring(spaceAfterHttp + 1, nextSpace);
-            try {
-                return Integer.parseInt(codeStr);
-            } catch (NumberFormatException e) {
-                throw new IllegalArgumentException("Неверный формат кода ответа: " + codeStr);
-            }
+        int codeEnd = logLine.indexOf(' ', spaceAfterHttp + 1);
+        if (spaceAfterHttp == -1 || codeEnd == -1) {
+            return failure.fail(ParseError.NO_RESPONSE_CODE);
+        }
+        long responseCode = parseNumber(logLine, spaceAfterHttp + 1, codeEnd, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        if (responseCode == INVALID_NUMBER) {
+            return failure.fail(ParseError.INVALID_RESPONSE_CODE, logLine, spaceAfterHttp + 1, codeEnd);
         }
-        throw new IllegalArgumentException("Неверный формат строки лога: не найден код ответа");
-    }
 
-    private long extractDataSize(String logLine) {
         // Размер данных находится после кода ответа
-        int afterHttp = logLine.indexOf("HTTP/");
-        int spaceAfterHttp = logLine.indexOf(' ', afterHttp);
-        int firstSpace = logLine.indexOf(' ', spaceAfterHttp + 1);
-        int secondSpace = logLine.indexOf(' ', firstSpace + 1);
-
-        if (firstSpace != -1 && secondSpace != -1) {
-            String sizeStr = logLine.substring(firstSpace + 1, secondSpace);
-            try {
-                return Long.parseLong(sizeStr);
-            } catch (NumberFormatException e) {
-                throw new IllegalArgumentException("Неверный формат размера данных: " + sizeStr);
-            }
+        int sizeEnd = logLine.indexOf(' ', codeEnd + 1);
+        if (sizeEnd == -1) {
+            return failure.fail(ParseError.NO_RESPONSE_SIZE);
+        }
+        long responseSize = parseNumber(logLine, codeEnd + 1, sizeEnd, Long.MIN_VALUE, Long.MAX_VALUE);
+        if (responseSize == INVALID_NUMBER) {
+            return failure.fail(ParseError.INVALID_RESPONSE_SIZE, logLine, codeEnd + 1, sizeEnd);
         }
-        throw new IllegalArgumentException("Неверный формат строки лога: не найден размер данных");
-    }
 
-    private String extractReferer(String logLine) {
         // Referer находится в кавычках после размера данных
-        int sizeEnd = logLine.indexOf(' ', logLine.indexOf("HTTP/") + 1);
-        sizeEnd = logLine.indexOf(' ', sizeEnd + 1); // Переходим к позиции после размера данных
-
-        int firstQuote = logLine.indexOf('"', sizeEnd + 1);
-        int secondQuote = logLine.indexOf('"', firstQuote + 1);
-
-        if (firstQuote != -1 && secondQuote != -1) {
-            String refererStr = logLine.substring(firstQuote + 1, secondQuote);
-            return refererStr.equals("-") ? "" : refererStr;
+        int refererQuote = logLine.indexOf('"', sizeEnd + 1);
+        int refererEndQuote = logLine.indexOf('"', refererQuote + 1);
+        if (refererQuote == -1 || refererEndQuote == -1) {
+            return failure.fail(ParseError.NO_REFERER);
         }
-        throw new IllegalArgumentException("Неверный формат строки лога: не найден referer");
-    }
+        String referer = fields.contains(LogField.REFERER)
+                ? dashToEmpty(logLine.substring(refererQuote + 1, refererEndQuote)) : null;
 
-    private String extractUserAgentString(String logLine) {
         // User-Agent находится в последних кавычках
         int lastQuote = logLine.lastIndexOf('"');
         int secondLastQuote = logLine.lastIndexOf('"', lastQuote - 1);
+        if (lastQuote == -1 || secondLastQuote == -1) {
+            return failure.fail(ParseError.NO_USER_AGENT);
+        }
+        UserAgent agent = fields.contains(LogField.USER_AGENT)
+                ? UserAgent.of(dashToEmpty(logLine.substring(secondLastQuote + 1, lastQuote))) : null;
+
+        return new LogEntry(ipAddr, time, epochSecond, method, path, (int) responseCode, (int) responseSize,
+                referer, agent);
+    }
 
-        if (lastQuote != -1 && secondLastQuote != -1) {
-            String userAgent = logLine.substring(secondLastQuote + 1, lastQuote);
-            return userAgent.equals("-") ? "" : userAgent;
+    private static String dashToEmpty(String value) {
+        return value.equals("-") ? "" : value;
+    }
+
+    // Целое число как у Integer.parseInt / Long.parseLong (знак, цифры по Character.digit, проверка
+    // переполнения), но без исключения: INVALID_NUMBER при ошибке. Значение Long.MIN_VALUE
+    // тоже считается ошибкой, для кода и размера ответа это не ограничение. Общий для LogEntry и LogLine
+    static long parseNumber(CharSequence s, int start, int end, long min, long max) {
+        if (start >= end) {
+            return INVALID_NUMBER;
+        }
+        int i = start;
+        boolean negative = false;
+        long limit = -max;
+        char first = s.charAt(start);
+        if (first < '0') { // Возможен знак "+" или "-"
+            if (first == '-') {
+                negative = true;
+                limit = min;
+            } else if (first != '+') {
+                return INVALID_NUMBER;
+            }
+            if (end - start == 1) {
+                return INVALID_NUMBER;
+            }
+            i++;
+        }
+        // Копим отрицательное значение, чтобы поместился и минимум диапазона
+        long multmin = limit / 10;
+        long result = 0;
+        while (i < end) {
+            char c = s.charAt(i++);
+            int digit = c >= '0' && c <= '9' ? c - '0' : Character.digit(c, 10);
+            if (digit < 0 || result < multmin) {
+                return INVALID_NUMBER;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return INVALID_NUMBER;
+            }
+            result -= digit;
         }
-        throw new IllegalArgumentException("Неверный формат строки лога: не найден User-Agent");
+        return negative ? result : -result;
     }
 
     // Геттеры
@@ -152,10 +201,19 @@ public class LogEntry {
         return ipAddr;
     }
 
+    // Разбираем IP-адрес в компактный вид
+    public IpAddress.Kind decodeIpAddr(IpAddress target) {
+        return target.parse(ipAddr, 0, ipAddr.length());
+    }
+
     public LocalDateTime getTime() {
         return time;
     }
 
+    public long getEpochSecond() {
+        return epochSecond;
+    }
+
     public HttpMethod getMethod() {
         return method;
     }
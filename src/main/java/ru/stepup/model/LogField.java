@@ -0,0 +1,14 @@
+package ru.stepup.model;
+
+// Поля строки лога. Набор полей задаёт, что разбор должен извлечь: поля вне набора
+// проверяются на формат, но их значения (строки, время, User-Agent) не создаются
+public enum LogField {
+    IP_ADDRESS,
+    TIME,
+    METHOD,
+    PATH,
+    RESPONSE_CODE,
+    RESPONSE_SIZE,
+    REFERER,
+    USER_AGENT
+}
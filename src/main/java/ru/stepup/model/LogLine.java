@@ -0,0 +1,371 @@
+package ru.stepup.model;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+// Однопроходный разбор строки лога: строка просматривается один раз слева направо,
+// запоминаются только границы полей, а String создаётся лишь для запрошенных полей.
+// Строку можно разбирать как String или прямо из байтов (без декодирования в String)
+public final class LogLine {
+    private static final long INVALID_NUMBER = Long.MIN_VALUE;
+
+    private final CharSequence line; // String или ByteSequence
+
+    // Границы полей: начало включительно, конец исключительно
+    private final int ipStart;
+    private final int ipEnd;
+    private final int methodEnd;
+    private final int pathEnd;
+    private final int refererStart;
+    private final int refererEnd;
+    private final int agentStart;
+    private final int agentEnd;
+
+    // Поля без строкового представления разбираются сразу
+    private final long epochSecond;
+    private final int offsetSeconds;
+    private final HttpMethod method;
+    private final int responseCode;
+    private final int responseSize;
+
+    // Лениво созданные значения полей
+    private String ipAddr;
+    private LocalDateTime time;
+    private String path;
+    private String referer;
+    private UserAgent agent;
+
+    private LogLine(CharSequence line, int ipStart, int ipEnd, int methodEnd, int pathEnd, int refererStart, int refererEnd,
+                    int agentStart, int agentEnd, long epochSecond, int offsetSeconds, HttpMethod method,
+                    int responseCode, int responseSize) {
+        this.line = line;
+        this.ipStart = ipStart;
+        this.ipEnd = ipEnd;
+        this.methodEnd = methodEnd;
+        this.pathEnd = pathEnd;
+        this.refererStart = refererStart;
+        this.refererEnd = refererEnd;
+        this.agentStart = agentStart;
+        this.agentEnd = agentEnd;
+        this.epochSecond = epochSecond;
+        this.offsetSeconds = offsetSeconds;
+        this.method = method;
+        this.responseCode = responseCode;
+        this.responseSize = responseSize;
+    }
+
+    // Разбираем строку за один проход. Ошибки формата те же, что и у конструктора LogEntry
+    public static LogLine parse(String logLine) {
+        return orThrow(logLine, 0, logLine.length());
+    }
+
+    // Разбираем строку прямо из байтов buffer[offset, offset + length) без символов конца строки.
+    // Байты не копируются: LogLine можно использовать, пока buffer не перезаписан
+    public static LogLine parse(byte[] buffer, int offset, int length) {
+        return orThrow(new ByteSequence(buffer), offset, offset + length);
+    }
+
+    // Разбираем строку из байтов buffer[offset, offset + length) (абсолютные индексы)
+    public static LogLine parse(ByteBuffer buffer, int offset, int length) {
+        if (buffer.hasArray()) {
+            return parse(buffer.array(), buffer.arrayOffset() + offset, length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return parse(bytes, 0, length);
+    }
+
+    // Разбор без исключений: null, а причина ошибки - в failure. Неверные строки (мусор,
+    // запросы сканеров) обходятся так же дёшево, как верные: без исключения и стека вызовов
+    public static LogLine tryParse(String logLine, ParseFailure failure) {
+        return parse(logLine, 0, logLine.length(), failure);
+    }
+
+    public static LogLine tryParse(byte[] buffer, int offset, int length, ParseFailure failure) {
+        return parse(new ByteSequence(buffer), offset, offset + length, failure);
+    }
+
+    // Время строки, которую не удалось разобрать: метка ищется так же, как при разборе (между первой
+    // '[' и следующей ']'). Секунды эпохи UTC или TimestampDecoder.INVALID, если метки нет или она
+    // неверна; смещение зоны - TimestampDecoder.forCurrentThread().getLastOffsetSeconds()
+    public static long tryParseTime(String logLine) {
+        return parseTime(logLine, 0, logLine.length());
+    }
+
+    public static long tryParseTime(byte[] buffer, int offset, int length) {
+        return parseTime(new ByteSequence(buffer), offset, offset + length);
+    }
+
+    private static long parseTime(CharSequence logLine, int start, int end) {
+        int pos = start;
+        while (pos < end && logLine.charAt(pos) != '[') {
+            pos++;
+        }
+        int timeStart = pos + 1;
+        while (pos < end && logLine.charAt(pos) != ']') {
+            pos++;
+        }
+        if (pos >= end) {
+            return TimestampDecoder.INVALID;
+        }
+        return TimestampDecoder.forCurrentThread().tryDecode(logLine, timeStart, pos);
+    }
+
+    private static LogLine orThrow(CharSequence logLine, int start, int end) {
+        ParseFailure failure = new ParseFailure();
+        LogLine result = parse(logLine, start, end, failure);
+        if (result == null) {
+            throw failure.toException();
+        }
+        return result;
+    }
+
+    private static LogLine parse(CharSequence logLine, int start, int end, ParseFailure failure) {
+        int pos = start;
+
+        // IP-адрес: до первого пробела
+        while (pos < end && logLine.charAt(pos) != ' ') {
+            pos++;
+        }
+        if (pos == end) {
+            return failure.fail(ParseError.NO_IP_ADDRESS);
+        }
+        int ipEnd = pos;
+
+        // Дата: между первой '[' строки и следующей за ней ']'. Как и LogEntry, '[' ищем с начала строки,
+        // а метод - после первой ']' строки (они различаются, если скобки есть в адресе, например "[::1]")
+        pos = start;
+        int firstCloseBracket = -1;
+        while (pos < end && logLine.charAt(pos) != '[') {
+            if (firstCloseBracket == -1 && logLine.charAt(pos) == ']') {
+                firstCloseBracket = pos;
+            }
+            pos++;
+        }
+        int timeStart = pos + 1;
+        while (pos < end && logLine.charAt(pos) != ']') {
+            pos++;
+        }
+        if (pos >= end) {
+            return failure.fail(ParseError.NO_TIME);
+        }
+        TimestampDecoder decoder = TimestampDecoder.forCurrentThread();
+        long epochSecond = decoder.tryDecode(logLine, timeStart, pos);
+        if (epochSecond == TimestampDecoder.INVALID) {
+            return failure.fail(ParseError.INVALID_TIME, logLine, timeStart, pos);
+        }
+        int offsetSeconds = decoder.getLastOffsetSeconds();
+        int timeEnd = pos;
+        if (firstCloseBracket == -1) {
+            firstCloseBracket = timeEnd;
+        }
+
+        // Метод: после открывающей кавычки запроса до пробела
+        pos = firstCloseBracket + 2;
+        while (pos < end && logLine.charAt(pos) != '"') {
+            pos++;
+        }
+        int methodStart = pos + 1;
+        pos = methodStart;
+        while (pos < end && logLine.charAt(pos) != ' ') {
+            pos++;
+        }
+        if (pos >= end) {
+            return failure.fail(ParseError.NO_METHOD);
+        }
+        int methodEnd = pos;
+        HttpMethod method = HttpMethod.match(logLine, methodStart, methodEnd);
+        if (method == null && !isAscii(logLine, methodStart, methodEnd)) {
+            // LogEntry сравнивает имя после toUpperCase, а он переводит в латиницу и некоторые
+            // не-ASCII символы ('ſ' -> 'S'). Такие имена редки, поэтому проверяем их так же, через String
+            method = HttpMethod.byName(logLine.subSequence(methodStart, methodEnd).toString().toUpperCase());
+        }
+        if (method == null) {
+            return failure.fail(ParseError.UNKNOWN_METHOD, logLine, methodStart, methodEnd);
+        }
+
+        // Путь: после метода до " HTTP/"
+        int pathEnd = indexOf(logLine, " HTTP/", methodEnd + 1, end);
+        if (pathEnd == -1) {
+            return failure.fail(ParseError.NO_PATH);
+        }
+
+        // Код ответа: второе слово после первого "HTTP/" строки. Как у LogEntry, это не обязательно
+        // протокол запроса: "HTTP/" может встретиться раньше, например в пути без пробела перед ним
+        pos = indexOf(logLine, "HTTP/", start, pathEnd + 6) + 5;
+        while (pos < end && logLine.charAt(pos) != ' ') {
+            pos++;
+        }
+        int codeStart = pos + 1;
+        pos = codeStart;
+        while (pos < end && logLine.charAt(pos) != ' ') {
+            pos++;
+        }
+        if (codeStart > end || pos >= end) {
+            return failure.fail(ParseError.NO_RESPONSE_CODE);
+        }
+        int codeEnd = pos;
+        long code = parseNumber(logLine, codeStart, codeEnd, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        if (code == INVALID_NUMBER) {
+            return failure.fail(ParseError.INVALID_RESPONSE_CODE, logLine, codeStart, codeEnd);
+        }
+
+        // Размер данных: следующее слово
+        int sizeStart = codeEnd + 1;
+        pos = sizeStart;
+        while (pos < end && logLine.charAt(pos) != ' ') {
+            pos++;
+        }
+        if (pos >= end) {
+            return failure.fail(ParseError.NO_RESPONSE_SIZE);
+        }
+        int sizeEnd = pos;
+        long size = parseNumber(logLine, sizeStart, sizeEnd, Long.MIN_VALUE, Long.MAX_VALUE);
+        if (size == INVALID_NUMBER) {
+            return failure.fail(ParseError.INVALID_RESPONSE_SIZE, logLine, sizeStart, sizeEnd);
+        }
+
+        // Referer: первая пара кавычек после размера данных.
+        // Заодно запоминаем две последние кавычки строки для User-Agent
+        int refererQuote = -1;
+        int refererEndQuote = -1;
+        int lastQuote = -1;
+        int secondLastQuote = -1;
+        for (pos = codeEnd + 1; pos < end; pos++) {
+            if (logLine.charAt(pos) == '"') {
+                if (refererQuote == -1) {
+                    refererQuote = pos;
+                } else if (refererEndQuote == -1) {
+                    refererEndQuote = pos;
+                }
+                secondLastQuote = lastQuote;
+                lastQuote = pos;
+            }
+        }
+        if (refererEndQuote == -1) {
+            return failure.fail(ParseError.NO_REFERER);
+        }
+
+        return new LogLine(logLine, start, ipEnd, methodEnd, pathEnd, refererQuote + 1, refererEndQuote,
+                secondLastQuote + 1, lastQuote, epochSecond, offsetSeconds, method, (int) code, (int) size);
+    }
+
+    // Ищем target в [from, end), -1 - не найден
+    private static int indexOf(CharSequence s, String target, int from, int end) {
+        int length = target.length();
+        for (int i = from; i + length <= end; i++) {
+            int j = 0;
+            while (j < length && s.charAt(i + j) == target.charAt(j)) {
+                j++;
+            }
+            if (j == length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Целое число по правилам LogEntry, INVALID_NUMBER при ошибке. Строка из байтов видит байты
+    // UTF-8 по одному, а LogEntry принимает и не-ASCII цифры, поэтому такое число декодируем
+    private static long parseNumber(CharSequence s, int start, int end, long min, long max) {
+        if (s instanceof ByteSequence && !isAscii(s, start, end)) {
+            String decoded = s.subSequence(start, end).toString();
+            return LogEntry.parseNumber(decoded, 0, decoded.length(), min, max);
+        }
+        return LogEntry.parseNumber(s, start, end, min, max);
+    }
+
+    private static boolean isAscii(CharSequence s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Собираем полноценный LogEntry с теми же значениями полей
+    public LogEntry toLogEntry() {
+        return new LogEntry(getIpAddr(), getTime(), epochSecond, method, getPath(), responseCode, responseSize,
+                getReferer(), getAgent());
+    }
+
+    // Геттеры: строки создаются при первом обращении
+    public String getIpAddr() {
+        if (ipAddr == null) {
+            ipAddr = substring(ipStart, ipEnd);
+        }
+        return ipAddr;
+    }
+
+    // Разбираем IP-адрес в компактный вид прямо из строки, без создания String
+    public IpAddress.Kind decodeIpAddr(IpAddress target) {
+        return target.parse(line, ipStart, ipEnd);
+    }
+
+    // Время как записано в логе, без учёта зоны
+    public LocalDateTime getTime() {
+        if (time == null) {
+            time = LocalDateTime.ofEpochSecond(epochSecond + offsetSeconds, 0, ZoneOffset.UTC);
+        }
+        return time;
+    }
+
+    // Момент времени в секундах эпохи UTC с учётом зоны
+    public long getEpochSecond() {
+        return epochSecond;
+    }
+
+    // Смещение зоны из строки лога в секундах
+    public int getOffsetSeconds() {
+        return offsetSeconds;
+    }
+
+    public HttpMethod getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        if (path == null) {
+            path = substring(methodEnd + 1, pathEnd);
+        }
+        return path;
+    }
+
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    public long getResponseSize() {
+        return responseSize;
+    }
+
+    public String getReferer() {
+        if (referer == null) {
+            referer = dashToEmpty(refererStart, refererEnd);
+        }
+        return referer;
+    }
+
+    public UserAgent getAgent() {
+        if (agent == null) {
+            agent = UserAgent.of(dashToEmpty(agentStart, agentEnd));
+        }
+        return agent;
+    }
+
+    private String dashToEmpty(int start, int end) {
+        if (end - start == 1 && line.charAt(start) == '-') {
+            return "";
+        }
+        return substring(start, end);
+    }
+
+    private String substring(int start, int end) {
+        if (line instanceof String) {
+            return ((String) line).substring(start, end);
+        }
+        return ((ByteSequence) line).decode(start, end);
+    }
+}
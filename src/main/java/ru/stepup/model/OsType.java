@@ -0,0 +1,22 @@
+package ru.stepup.model;
+
+// Операционная система из User-Agent
+public enum OsType {
+    WINDOWS("Windows"),
+    MACOS("macOS"),
+    LINUX("Linux"),
+    ANDROID("Android"),
+    IOS("iOS"),
+    OTHER("Other"),
+    UNKNOWN("Unknown");
+
+    private final String displayName;
+
+    OsType(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+}
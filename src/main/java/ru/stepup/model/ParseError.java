@@ -0,0 +1,38 @@
+package ru.stepup.model;
+
+// Причина, по которой строку лога не удалось разобрать. Сообщения те же, что у исключений
+// прежнего разбора; для причин со значением к сообщению добавляется неверный фрагмент строки
+public enum ParseError {
+    NO_IP_ADDRESS("Неверный формат строки лога: не найден IP-адрес", false),
+    NO_TIME("Неверный формат строки лога: не найдена дата", false),
+    INVALID_TIME("Неверный формат даты", true),
+    NO_METHOD("Неверный формат строки лога: не найден метод HTTP", false),
+    UNKNOWN_METHOD("Неизвестный метод HTTP", true),
+    NO_PATH("Неверный формат строки лога: не найден путь", false),
+    NO_PROTOCOL("Неверный формат строки лога: не найден HTTP", false),
+    NO_RESPONSE_CODE("Неверный формат строки лога: не найден код ответа", false),
+    INVALID_RESPONSE_CODE("Неверный формат кода ответа", true),
+    NO_RESPONSE_SIZE("Неверный формат строки лога: не найден размер данных", false),
+    INVALID_RESPONSE_SIZE("Неверный формат размера данных", true),
+    NO_REFERER("Неверный формат строки лога: не найден referer", false),
+    NO_USER_AGENT("Неверный формат строки лога: не найден User-Agent", false),
+    LINE_TOO_LONG("Длина строки превышает 1024 символа", false); // Только при слежении: анализ файла прерывается
+
+    private final String message;
+    private final boolean withValue;
+
+    ParseError(String message, boolean withValue) {
+        this.message = message;
+        this.withValue = withValue;
+    }
+
+    // Сообщение без фрагмента строки, например для сводки по причинам
+    public String getMessage() {
+        return message;
+    }
+
+    // Полное сообщение: для причин со значением - вместе с неверным фрагментом
+    public String getMessage(CharSequence value) {
+        return withValue ? message + ": " + value : message;
+    }
+}
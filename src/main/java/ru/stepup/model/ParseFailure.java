@@ -0,0 +1,38 @@
+package ru.stepup.model;
+
+// Результат неудачного разбора строки без исключения: причина и границы неверного фрагмента.
+// Объект переиспользуется, как IpAddress: каждая неудача перезаписывает поля. Фрагмент берётся
+// из самой строки, поэтому для строки из байтов getMessage верен, пока буфер не перезаписан
+public final class ParseFailure {
+    private ParseError reason;
+    private CharSequence line;
+    private int valueStart;
+    private int valueEnd;
+
+    // Запоминаем причину; возвращает null, чтобы разбор мог завершиться одной строкой
+    <T> T fail(ParseError reason) {
+        return fail(reason, null, 0, 0);
+    }
+
+    <T> T fail(ParseError reason, CharSequence line, int valueStart, int valueEnd) {
+        this.reason = reason;
+        this.line = line;
+        this.valueStart = valueStart;
+        this.valueEnd = valueEnd;
+        return null;
+    }
+
+    public ParseError getReason() {
+        return reason;
+    }
+
+    // Сообщение в том же виде, что у исключения прежнего разбора
+    public String getMessage() {
+        return reason.getMessage(line == null ? "" : line.subSequence(valueStart, valueEnd));
+    }
+
+    // Исключение для разбора, который сообщает об ошибке исключением
+    public IllegalArgumentException toException() {
+        return new IllegalArgumentException(getMessage());
+    }
+}
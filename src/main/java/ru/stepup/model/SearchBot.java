@@ -0,0 +1,26 @@
+package ru.stepup.model;
+
+// Поисковый бот, запросы которого считаются в отчёте отдельно: по программе из User-Agent
+// без учёта регистра
+public enum SearchBot {
+    YANDEX("YandexBot"),
+    GOOGLE("Googlebot"),
+    NONE(null);
+
+    private final String program;
+
+    SearchBot(String program) {
+        this.program = program;
+    }
+
+    static SearchBot byProgram(String program) {
+        if (program != null) {
+            for (SearchBot bot : values()) {
+                if (bot.program != null && bot.program.equalsIgnoreCase(program)) {
+                    return bot;
+                }
+            }
+        }
+        return NONE;
+    }
+}
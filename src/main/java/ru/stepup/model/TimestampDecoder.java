@@ -0,0 +1,149 @@
+package ru.stepup.model;
+
+import java.time.LocalDate;
+
+// Декодер времени access-лога фиксированной ширины "dd/MMM/yyyy:HH:mm:ss Z".
+// Читает цифры напрямую по позициям и запоминает номер дня и смещение предыдущей строки:
+// строки лога идут почти по порядку, поэтому дата и зона обычно совпадают с предыдущими.
+// Экземпляр хранит состояние и не потокобезопасен, для каждого потока свой экземпляр
+public final class TimestampDecoder {
+    public static final int LENGTH = 26; // Длина строки "10/Oct/2023:13:55:36 +0300"
+    public static final long INVALID = Long.MIN_VALUE; // tryDecode: метка в неверном формате
+
+    private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+    private static final int DATE_LENGTH = 11; // "dd/MMM/yyyy"
+    private static final int OFFSET_START = 21; // "+HHMM"
+    private static final int INVALID_OFFSET = Integer.MIN_VALUE;
+    private static final ThreadLocal<TimestampDecoder> CURRENT = ThreadLocal.withInitial(TimestampDecoder::new);
+
+    // Кэш последней даты и последнего смещения
+    private final char[] cachedDate = new char[DATE_LENGTH];
+    private long cachedEpochDay;
+    private boolean dateCached;
+    private final char[] cachedOffset = new char[LENGTH - OFFSET_START];
+    private int cachedOffsetSeconds;
+    private boolean offsetCached;
+
+    // Смещение зоны последней декодированной метки (в секундах)
+    private int lastOffsetSeconds;
+
+    public static TimestampDecoder forCurrentThread() {
+        return CURRENT.get();
+    }
+
+    // Возвращаем секунды эпохи UTC с учётом смещения зоны
+    public long decode(CharSequence s, int start, int end) {
+        long epochSecond = tryDecode(s, start, end);
+        if (epochSecond == INVALID) {
+            throw new IllegalArgumentException(ParseError.INVALID_TIME.getMessage(s.subSequence(start, end)));
+        }
+        return epochSecond;
+    }
+
+    // То же без исключения: INVALID, если метка в неверном формате
+    public long tryDecode(CharSequence s, int start, int end) {
+        if (end - start != LENGTH
+                || s.charAt(start + 2) != '/' || s.charAt(start + 6) != '/' || s.charAt(start + 11) != ':'
+                || s.charAt(start + 14) != ':' || s.charAt(start + 17) != ':' || s.charAt(start + 20) != ' ') {
+            return INVALID;
+        }
+
+        long epochDay = dateCached && sameChars(s, start, cachedDate) ? cachedEpochDay : decodeDate(s, start);
+        if (epochDay == INVALID) {
+            return INVALID;
+        }
+
+        // Неверная цифра даёт -1, поэтому одна проверка на диапазон ловит и её
+        int hour = twoDigits(s, start + 12);
+        int minute = twoDigits(s, start + 15);
+        int second = twoDigits(s, start + 18);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return INVALID;
+        }
+
+        int offsetSeconds = offsetCached && sameChars(s, start + OFFSET_START, cachedOffset)
+                ? cachedOffsetSeconds : decodeOffset(s, start);
+        if (offsetSeconds == INVALID_OFFSET) {
+            return INVALID;
+        }
+        lastOffsetSeconds = offsetSeconds;
+
+        return epochDay * 86400 + hour * 3600 + minute * 60 + second - offsetSeconds;
+    }
+
+    // Смещение зоны последней успешно декодированной метки
+    public int getLastOffsetSeconds() {
+        return lastOffsetSeconds;
+    }
+
+    // Номер дня эпохи, INVALID при ошибке
+    private long decodeDate(CharSequence s, int start) {
+        int day = twoDigits(s, start);
+        int month = -1;
+        for (int i = 0; i < 12; i++) {
+            int m = i * 3;
+            if (s.charAt(start + 3) == MONTHS.charAt(m) && s.charAt(start + 4) == MONTHS.charAt(m + 1)
+                    && s.charAt(start + 5) == MONTHS.charAt(m + 2)) {
+                month = i + 1;
+                break;
+            }
+        }
+        int century = twoDigits(s, start + 7);
+        int yearOfCentury = twoDigits(s, start + 9);
+        if (month == -1 || day < 1 || day > 31 || century < 0 || yearOfCentury < 0) {
+            return INVALID;
+        }
+        int year = century * 100 + yearOfCentury;
+
+        // Как и DateTimeFormatter в режиме SMART, день за концом месяца сводим к последнему дню
+        LocalDate firstDay = LocalDate.of(year, month, 1);
+        long epochDay = firstDay.toEpochDay() + Math.min(day, firstDay.lengthOfMonth()) - 1;
+
+        for (int i = 0; i < DATE_LENGTH; i++) {
+            cachedDate[i] = s.charAt(start + i);
+        }
+        cachedEpochDay = epochDay;
+        dateCached = true;
+        return epochDay;
+    }
+
+    // Смещение зоны в секундах, INVALID_OFFSET при ошибке
+    private int decodeOffset(CharSequence s, int start) {
+        char sign = s.charAt(start + OFFSET_START);
+        if (sign != '+' && sign != '-') {
+            return INVALID_OFFSET;
+        }
+        int hours = twoDigits(s, start + OFFSET_START + 1);
+        int minutes = twoDigits(s, start + OFFSET_START + 3);
+        if (hours < 0 || hours > 18 || minutes < 0 || minutes > 59) {
+            return INVALID_OFFSET;
+        }
+        int offsetSeconds = (hours * 3600 + minutes * 60) * (sign == '-' ? -1 : 1);
+
+        for (int i = 0; i < cachedOffset.length; i++) {
+            cachedOffset[i] = s.charAt(start + OFFSET_START + i);
+        }
+        cachedOffsetSeconds = offsetSeconds;
+        offsetCached = true;
+        return offsetSeconds;
+    }
+
+    // Число из двух цифр, -1 если это не цифры
+    private static int twoDigits(CharSequence s, int pos) {
+        int high = s.charAt(pos) - '0';
+        int low = s.charAt(pos + 1) - '0';
+        if (high < 0 || high > 9 || low < 0 || low > 9) {
+            return -1;
+        }
+        return high * 10 + low;
+    }
+
+    private static boolean sameChars(CharSequence s, int start, char[] cached) {
+        for (int i = 0; i < cached.length; i++) {
+            if (s.charAt(start + i) != cached[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
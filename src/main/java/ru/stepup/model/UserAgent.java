@@ -1,76 +1,118 @@
 package ru.stepup.model;
 
+// Неизменяемая классификация User-Agent: все признаки вычисляются один раз в конструкторе,
+// поэтому один объект можно разделять между строками и потоками (см. UserAgentCache)
 public class UserAgent {
-    private final String osType;
-    private final String browserType;
+    private final OsType osType;
+    private final BrowserType browserType;
     private final String agent;
+    private final String program;
+    private final boolean bot;
+    private final SearchBot searchBot;
 
     public UserAgent(String userAgentString) {
-        this.agent = userAgentString;
-        this.osType = parseOsType(userAgentString);
-        this.browserType = parseBrowserType(userAgentString);
+        this(userAgentString, UserAgentMatcher.current());
     }
 
-    private String parseOsType(String userAgentString) {
+    // Классифицируем по токенам, найденным матчером за один проход по строке
+    public UserAgent(String userAgentString, UserAgentMatcher matcher) {
+        this.agent = userAgentString;
+        this.program = parseProgram(userAgentString);
+        this.searchBot = SearchBot.byProgram(program);
         if (userAgentString == null || userAgentString.isEmpty()) {
-            return "Unknown";
-        }
-
-        userAgentString = userAgentString.toLowerCase();
-
-        if (userAgentString.contains("windows")) {
-            return "Windows";
-        } else if (userAgentString.contains("mac os") || userAgentString.contains("macos")) {
-            return "macOS";
-        } else if (userAgentString.contains("linux")) {
-            return "Linux";
-        } else if (userAgentString.contains("android")) {
-            return "Android";
-        } else if (userAgentString.contains("ios")) {
-            return "iOS";
+            this.osType = OsType.UNKNOWN;
+            this.browserType = BrowserType.UNKNOWN;
+            this.bot = false;
         } else {
-            return "Other";
+            long tokens = matcher.match(userAgentString, 0, userAgentString.length());
+            this.osType = matcher.osType(tokens);
+            this.browserType = matcher.browserType(tokens);
+            this.bot = matcher.isBot(tokens);
         }
     }
 
-    private String parseBrowserType(String userAgentString) {
-        if (userAgentString == null || userAgentString.isEmpty()) {
-            return "Unknown";
+    // Классификация из общего кэша: повторяющиеся User-Agent разбираются один раз
+    public static UserAgent of(String userAgentString) {
+        return UserAgentCache.shared().get(userAgentString);
+    }
+
+    // Извлекаем название программы из User-Agent: второй элемент в первых скобках,
+    // например YandexBot из "Mozilla/5.0 (compatible; YandexBot/3.0; ...)"
+    private String parseProgram(String userAgentString) {
+        if (userAgentString == null) {
+            return null;
         }
 
-        userAgentString = userAgentString.toLowerCase();
-
-        if (userAgentString.contains("edg/") || userAgentString.contains("edge/")) {
-            return "Edge";
-        } else if (userAgentString.contains("firefox") || userAgentString.contains("fxios")) {
-            return "Firefox";
-        } else if (userAgentString.contains("chrome") && !userAgentString.contains("chromium")) {
-            return "Chrome";
-        } else if (userAgentString.contains("chromium")) {
-            return "Chromium";
-        } else if (userAgentString.contains("safari") && !userAgentString.contains("chrome")) {
-            return "Safari";
-        } else if (userAgentString.contains("opera") || userAgentString.contains("opr/")) {
-            return "Opera";
-        } else {
-            return "Other";
+        int openBracketIndex = userAgentString.indexOf('(');
+        int closeBracketIndex = userAgentString.indexOf(')', openBracketIndex);
+
+        if (openBracketIndex == -1 || closeBracketIndex == -1) {
+            return null;
+        }
+
+        // Второй элемент через ';' без split. Как и split, пустые части в конце не считаем:
+        // второй элемент есть, только если после первой ';' встречается что-то кроме ';'
+        int firstSemicolon = userAgentString.indexOf(';', openBracketIndex + 1);
+        if (firstSemicolon == -1 || firstSemicolon > closeBracketIndex) {
+            return null;
+        }
+        int partEnd = firstSemicolon + 1;
+        while (partEnd < closeBracketIndex && userAgentString.charAt(partEnd) == ';') {
+            partEnd++;
+        }
+        if (partEnd == closeBracketIndex) {
+            return null;
+        }
+        partEnd = userAgentString.indexOf(';', firstSemicolon + 1);
+        if (partEnd == -1 || partEnd > closeBracketIndex) {
+            partEnd = closeBracketIndex;
+        }
+
+        String fragment = userAgentString.substring(firstSemicolon + 1, partEnd).trim();
+        int slashIndex = fragment.indexOf('/');
+        if (slashIndex != -1) {
+            return fragment.substring(0, slashIndex).trim();
         }
+        return fragment;
     }
 
     public String getOsType() {
-        return osType;
+        return osType.getDisplayName();
     }
 
     public String getBrowserType() {
+        return browserType.getDisplayName();
+    }
+
+    public OsType getOs() {
+        return osType;
+    }
+
+    public BrowserType getBrowser() {
         return browserType;
     }
 
+    // Название программы из User-Agent или null, если его нет
+    public String getProgram() {
+        return program;
+    }
+
+    // Название бота (программа из User-Agent) или null, если это не бот
+    public String getBotName() {
+        return bot ? program : null;
+    }
+
+    // Поисковый бот по программе из User-Agent, NONE - не YandexBot и не Googlebot
+    public SearchBot getSearchBot() {
+        return searchBot;
+    }
+
+    public String getAgent() {
+        return agent;
+    }
+
     // Метод для определения, является ли User-Agent ботом
     public boolean isBot() {
-        if (agent == null || agent.isEmpty()) {
-            return false;
-        }
-        // Ищем слово "bot" в любом регистре
-        return agent.toLowerCase().contains("bot");
+        return bot;
     }
 }
\ No newline at end of file
@@ -0,0 +1,121 @@
+package ru.stepup.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Потокобезопасный кэш разобранных User-Agent с ограниченным размером.
+// Различных User-Agent в логе обычно несколько тысяч на миллионы строк, поэтому повторный
+// User-Agent стоит одного поиска в хеш-таблице. Кэш разбит на сегменты со своей блокировкой,
+// в каждом сегменте вытесняется давно не использованная запись (LRU)
+public final class UserAgentCache {
+    public static final int DEFAULT_CAPACITY = 8192;
+    private static final int SEGMENT_COUNT = 16;
+    private static final int MAX_AGENT_LENGTH = 1024; // Более длинные строки не кэшируем
+
+    private static final UserAgentCache SHARED = new UserAgentCache(DEFAULT_CAPACITY);
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private final class Segment extends LinkedHashMap<String, UserAgent> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, UserAgent> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public UserAgentCache(int capacity) {
+        if (capacity < SEGMENT_COUNT) {
+            throw new IllegalArgumentException("Размер кэша User-Agent должен быть не меньше " + SEGMENT_COUNT + ": " + capacity);
+        }
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(capacity / SEGMENT_COUNT);
+        }
+    }
+
+    // Общий кэш, которым пользуется UserAgent.of
+    public static UserAgentCache shared() {
+        return SHARED;
+    }
+
+    // Разобранный User-Agent из кэша или новый, если его ещё нет
+    public UserAgent get(String userAgentString) {
+        if (userAgentString == null || userAgentString.length() > MAX_AGENT_LENGTH) {
+            misses.increment();
+            return new UserAgent(userAgentString);
+        }
+
+        int hash = userAgentString.hashCode();
+        Segment segment = segments[(hash ^ (hash >>> 16)) & (SEGMENT_COUNT - 1)];
+        UserAgent agent;
+        synchronized (segment) {
+            agent = segment.get(userAgentString);
+        }
+        if (agent != null) {
+            hits.increment();
+            return agent;
+        }
+
+        // Разбираем вне блокировки: при гонке двух потоков результат одинаковый
+        misses.increment();
+        agent = new UserAgent(userAgentString);
+        synchronized (segment) {
+            segment.put(userAgentString, agent);
+        }
+        return agent;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    // Доля обращений, найденных в кэше, от 0 до 1
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    // Удаляем все записи, например после смены матчера
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+}
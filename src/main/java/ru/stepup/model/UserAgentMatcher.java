@@ -0,0 +1,215 @@
+package ru.stepup.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+// Поиск всех признаков ОС, браузера и бота в User-Agent за один проход (автомат Ахо-Корасик).
+// Регистр не учитывается. Результат - битовая маска найденных токенов, из неё классификация
+// получается по тем же приоритетам, что и прежние цепочки contains. Список ботов расширяемый:
+// к слову "bot" можно добавить свои токены (withBotTokens) и установить матчер как текущий
+public final class UserAgentMatcher {
+    private static final int ALPHABET = 128; // Токены только из ASCII
+
+    // Встроенные токены, номер в массиве - номер бита в маске
+    private static final String[] BUILTIN_TOKENS = {
+            "windows", "mac os", "macos", "linux", "android", "ios",
+            "edg/", "edge/", "firefox", "fxios", "chrome", "chromium", "safari", "opera", "opr/",
+            "bot"
+    };
+    private static final long WINDOWS = 1L;
+    private static final long MAC_OS = 1L << 1 | 1L << 2;
+    private static final long LINUX = 1L << 3;
+    private static final long ANDROID = 1L << 4;
+    private static final long IOS = 1L << 5;
+    private static final long EDGE = 1L << 6 | 1L << 7;
+    private static final long FIREFOX = 1L << 8 | 1L << 9;
+    private static final long CHROME = 1L << 10;
+    private static final long CHROMIUM = 1L << 11;
+    private static final long SAFARI = 1L << 12;
+    private static final long OPERA = 1L << 13 | 1L << 14;
+    private static final long BOT = 1L << 15;
+    private static final int MAX_TOKENS = Long.SIZE;
+
+    private static final UserAgentMatcher DEFAULT = new UserAgentMatcher(List.of());
+    private static volatile UserAgentMatcher current = DEFAULT;
+
+    private final List<String> botTokens; // Дополнительные токены ботов
+    private final long botMask;
+    private final int[] transitions; // Переходы автомата: state * ALPHABET + символ
+    private final long[] output; // Маска токенов, которые заканчиваются в состоянии
+
+    private UserAgentMatcher(Collection<String> extraBotTokens) {
+        List<String> tokens = new ArrayList<>(List.of(BUILTIN_TOKENS));
+        List<String> extra = new ArrayList<>();
+        long mask = BOT;
+        for (String token : extraBotTokens) {
+            String normalized = token.trim().toLowerCase(Locale.ROOT);
+            if (normalized.isEmpty() || tokens.contains(normalized)) {
+                continue;
+            }
+            if (!normalized.chars().allMatch(c -> c < ALPHABET)) {
+                throw new IllegalArgumentException("Токен бота должен состоять из символов ASCII: " + token);
+            }
+            if (tokens.size() == MAX_TOKENS) {
+                throw new IllegalArgumentException("Слишком много токенов ботов, максимум "
+                        + (MAX_TOKENS - BUILTIN_TOKENS.length));
+            }
+            mask |= 1L << tokens.size();
+            tokens.add(normalized);
+            extra.add(normalized);
+        }
+        this.botTokens = List.copyOf(extra);
+        this.botMask = mask;
+
+        // Бор из токенов: переходы по символам, -1 - перехода нет
+        int maxStates = 1;
+        for (String token : tokens) {
+            maxStates += token.length();
+        }
+        int[] trie = new int[maxStates * ALPHABET];
+        Arrays.fill(trie, -1);
+        long[] out = new long[maxStates];
+        int states = 1;
+        for (int i = 0; i < tokens.size(); i++) {
+            int state = 0;
+            for (char c : tokens.get(i).toCharArray()) {
+                int index = state * ALPHABET + c;
+                if (trie[index] == -1) {
+                    trie[index] = states++;
+                }
+                state = trie[index];
+            }
+            out[state] |= 1L << i;
+        }
+
+        // Обход в ширину: ссылки неудачи превращаем в полную таблицу переходов,
+        // маски найденных токенов наследуются по ссылкам неудачи
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET; c++) {
+            int next = trie[c];
+            if (next == -1) {
+                trie[c] = 0;
+            } else {
+                fail[next] = 0;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            out[state] |= out[fail[state]];
+            for (int c = 0; c < ALPHABET; c++) {
+                int index = state * ALPHABET + c;
+                int next = trie[index];
+                if (next == -1) {
+                    trie[index] = trie[fail[state] * ALPHABET + c];
+                } else {
+                    fail[next] = trie[fail[state] * ALPHABET + c];
+                    queue.add(next);
+                }
+            }
+        }
+
+        this.transitions = Arrays.copyOf(trie, states * ALPHABET);
+        this.output = Arrays.copyOf(out, states);
+    }
+
+    // Матчер только со встроенными токенами
+    public static UserAgentMatcher defaults() {
+        return DEFAULT;
+    }
+
+    // Матчер со встроенными токенами и дополнительными токенами ботов
+    public static UserAgentMatcher withBotTokens(Collection<String> botTokens) {
+        return new UserAgentMatcher(botTokens);
+    }
+
+    // Текущий матчер, которым пользуется UserAgent
+    public static UserAgentMatcher current() {
+        return current;
+    }
+
+    // Устанавливаем текущий матчер. Кэш разобранных User-Agent очищается,
+    // чтобы новые токены применились и к уже встречавшимся строкам. Вызывать до начала анализа
+    public static void install(UserAgentMatcher matcher) {
+        current = matcher;
+        UserAgentCache.shared().clear();
+    }
+
+    public List<String> getBotTokens() {
+        return botTokens;
+    }
+
+    // Маска всех токенов, встретившихся в s[start, end)
+    public long match(CharSequence s, int start, int end) {
+        int[] transitions = this.transitions;
+        long[] output = this.output;
+        int state = 0;
+        long mask = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= ALPHABET) {
+                // Не-ASCII символ может стать ASCII только после перевода в нижний регистр
+                // (например, 'İ' даёт "i" с комбинируемой точкой), иначе ни один токен его не содержит
+                char lower = Character.toLowerCase(c);
+                if (lower < ALPHABET) {
+                    state = transitions[state * ALPHABET + lower];
+                    mask |= output[state];
+                    if (c != '\u0130') {
+                        continue;
+                    }
+                }
+                state = 0;
+                continue;
+            }
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            state = transitions[state * ALPHABET + c];
+            mask |= output[state];
+        }
+        return mask;
+    }
+
+    public OsType osType(long mask) {
+        if ((mask & WINDOWS) != 0) {
+            return OsType.WINDOWS;
+        } else if ((mask & MAC_OS) != 0) {
+            return OsType.MACOS;
+        } else if ((mask & LINUX) != 0) {
+            return OsType.LINUX;
+        } else if ((mask & ANDROID) != 0) {
+            return OsType.ANDROID;
+        } else if ((mask & IOS) != 0) {
+            return OsType.IOS;
+        } else {
+            return OsType.OTHER;
+        }
+    }
+
+    public BrowserType browserType(long mask) {
+        if ((mask & EDGE) != 0) {
+            return BrowserType.EDGE;
+        } else if ((mask & FIREFOX) != 0) {
+            return BrowserType.FIREFOX;
+        } else if ((mask & CHROME) != 0 && (mask & CHROMIUM) == 0) {
+            return BrowserType.CHROME;
+        } else if ((mask & CHROMIUM) != 0) {
+            return BrowserType.CHROMIUM;
+        } else if ((mask & SAFARI) != 0 && (mask & CHROME) == 0) {
+            return BrowserType.SAFARI;
+        } else if ((mask & OPERA) != 0) {
+            return BrowserType.OPERA;
+        } else {
+            return BrowserType.OTHER;
+        }
+    }
+
+    public boolean isBot(long mask) {
+        return (mask & botMask) != 0;
+    }
+}
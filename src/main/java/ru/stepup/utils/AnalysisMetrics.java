@@ -0,0 +1,308 @@
+package ru.stepup.utils;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Встроенные замеры анализа: строки, байты, записи и ошибки разбора, задержки этапов чтения,
+// разбора и добавления в статистику и оценка памяти статистики. Потоки разбора копят счётчики
+// у себя и сбрасывают их пачками в LongAdder, задержки разбора замеряются у каждой 64-й строки,
+// поэтому замеры почти не замедляют анализ. Значения доступны через JMX и строкой прогресса
+public final class AnalysisMetrics implements AnalysisMetricsMXBean, Closeable {
+    static final int SAMPLE_MASK = 63; // Строка замеряется, если (номер & SAMPLE_MASK) == 0
+    static final long HEAP_UPDATE_NANOS = 1_000_000_000L; // Оценка памяти обновляется раз в секунду
+    private static final String ANALYSIS_NAME = "ru.stepup:type=Analysis";
+    private static final String HEAP_NAME = "ru.stepup:type=StatisticsHeap";
+
+    private final long startNanos = System.nanoTime();
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder entries = new LongAdder();
+    private final LongAdder expectedBytes = new LongAdder();
+    private final LatencyHistogram readLatency = new LatencyHistogram();
+    private final LatencyHistogram parseLatency = new LatencyHistogram();
+    private final LatencyHistogram aggregateLatency = new LatencyHistogram();
+
+    // Память: по каждой статистике, которую наполняет или копит анализ, - её текущая оценка,
+    // после анализа - итоговая. Статистика без equals, поэтому ключи сравниваются по ссылке
+    private final Map<Statistics, Map<String, Long>> liveHeap = new ConcurrentHashMap<>();
+    private volatile Map<String, Long> resultHeap = Collections.emptyMap();
+
+    private final List<ObjectName> registered = new ArrayList<>();
+    private Thread progress;
+
+    // Регистрируем MBean ru.stepup:type=Analysis и ru.stepup:type=StatisticsHeap
+    public AnalysisMetrics registerMBeans() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName analysis = new ObjectName(ANALYSIS_NAME);
+        server.registerMBean(this, analysis);
+        registered.add(analysis);
+        ObjectName heap = new ObjectName(HEAP_NAME);
+        server.registerMBean(new StatisticsHeap(), heap);
+        registered.add(heap);
+        return this;
+    }
+
+    // Выводим строку прогресса в stderr каждые intervalMillis миллисекунд
+    public AnalysisMetrics startProgress(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Интервал прогресса должен быть положительным: " + intervalMillis);
+        }
+        progress = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(intervalMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                System.err.println(progressLine());
+            }
+        }, "analysis-progress");
+        progress.setDaemon(true);
+        progress.start();
+        return this;
+    }
+
+    // Строка прогресса выводится: вместе с ней в stderr идут и пояснения к ходу анализа
+    boolean isProgressShown() {
+        return progress != null;
+    }
+
+    // Останавливаем вывод прогресса и снимаем MBean
+    @Override
+    public void close() {
+        if (progress != null) {
+            progress.interrupt();
+            try {
+                progress.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            progress = null;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException ignored) {
+                // Уже снят
+            }
+        }
+        registered.clear();
+    }
+
+    void addExpectedBytes(long count) {
+        expectedBytes.add(count);
+    }
+
+    // Один вызов чтения с диска
+    void recordRead(long count, long nanos) {
+        bytes.add(count);
+        readLatency.record(nanos);
+    }
+
+    // Байты, прочитанные без замера задержки (например, распакованные группы gzip)
+    void addBytes(long count) {
+        bytes.add(count);
+    }
+
+    // Пачка строк от потока разбора: errors = lineCount - entryCount
+    void addLines(long lineCount, long entryCount) {
+        lines.add(lineCount);
+        entries.add(entryCount);
+    }
+
+    void recordParse(long nanos) {
+        parseLatency.record(nanos);
+    }
+
+    void recordAggregate(long nanos) {
+        aggregateLatency.record(nanos);
+    }
+
+    // Оценка памяти статистики, которую наполняет обработчик строк
+    void updateHeap(Statistics statistics) {
+        liveHeap.put(statistics, statistics.estimateHeapBytes());
+    }
+
+    // part объединена в into: память part теперь учтена в into, и part больше не держится
+    void merged(Statistics into, Statistics part) {
+        liveHeap.remove(part);
+        liveHeap.put(into, into.estimateHeapBytes());
+    }
+
+    // Итоговая статистика анализа: её память заменяет оценки потоков
+    void publishResult(Statistics statistics) {
+        resultHeap = statistics.estimateHeapBytes();
+        liveHeap.clear();
+    }
+
+    @Override
+    public long getLineCount() {
+        return lines.sum();
+    }
+
+    @Override
+    public long getByteCount() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getEntryCount() {
+        return entries.sum();
+    }
+
+    @Override
+    public long getParseErrorCount() {
+        return lines.sum() - entries.sum();
+    }
+
+    @Override
+    public double getParseErrorRate() {
+        long lineCount = lines.sum();
+        return lineCount == 0 ? 0 : (double) (lineCount - entries.sum()) / lineCount;
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    @Override
+    public double getLinesPerSecond() {
+        return perSecond(lines.sum());
+    }
+
+    @Override
+    public double getMegabytesPerSecond() {
+        return perSecond(bytes.sum()) / 1048576.0;
+    }
+
+    @Override
+    public long getExpectedBytes() {
+        return Math.max(0, expectedBytes.sum());
+    }
+
+    @Override
+    public double getProgress() {
+        long expected = getExpectedBytes();
+        return expected == 0 ? -1 : Math.min(1.0, (double) bytes.sum() / expected);
+    }
+
+    @Override
+    public long getEtaSeconds() {
+        long expected = getExpectedBytes();
+        double rate = perSecond(bytes.sum());
+        if (expected == 0 || rate == 0) {
+            return -1;
+        }
+        return (long) Math.ceil(Math.max(0, expected - bytes.sum()) / rate);
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getReadLatency() {
+        return readLatency.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getParseLatency() {
+        return parseLatency.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getAggregateLatency() {
+        return aggregateLatency.snapshot();
+    }
+
+    // Память статистики по структурам: сумма по живым статистикам или итоговая статистика
+    public Map<String, Long> getStatisticsHeapBytes() {
+        if (liveHeap.isEmpty()) {
+            return resultHeap;
+        }
+        Map<String, Long> total = new LinkedHashMap<>();
+        for (Map<String, Long> heap : liveHeap.values()) {
+            heap.forEach((structure, size) -> total.merge(structure, size, Long::sum));
+        }
+        return total;
+    }
+
+    public long getStatisticsHeapTotalBytes() {
+        return getStatisticsHeapBytes().values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    // Строка прогресса: объём, скорость, доля ошибок и оценка оставшегося времени
+    public String progressLine() {
+        StringBuilder line = new StringBuilder("Прогресс: ");
+        double done = getProgress();
+        if (done >= 0) {
+            line.append(String.format("%.1f%% (%.1f из %.1f МБ)", done * 100, getByteCount() / 1048576.0,
+                    getExpectedBytes() / 1048576.0));
+        } else {
+            line.append(String.format("%.1f МБ", getByteCount() / 1048576.0));
+        }
+        line.append(String.format(", строк %d (%.0f/с), %.1f МБ/с, ошибок %.2f%%", getLineCount(),
+                getLinesPerSecond(), getMegabytesPerSecond(), getParseErrorRate() * 100));
+        long eta = getEtaSeconds();
+        if (eta >= 0) {
+            line.append(String.format(", осталось ~%d:%02d:%02d", eta / 3600, eta / 60 % 60, eta % 60));
+        }
+        line.append(String.format(", статистика ~%.1f МБ", getStatisticsHeapTotalBytes() / 1048576.0));
+        return line.toString();
+    }
+
+    // Сводка для вывода после анализа
+    public String describe() {
+        List<String> lines = new ArrayList<>();
+        lines.add("══════════════ ЗАМЕРЫ АНАЛИЗА ══════════════");
+        lines.add(String.format("Строк: %d, разобрано: %d, ошибок: %d (%.2f%%), прочитано %.1f МБ за %d мс",
+                getLineCount(), getEntryCount(), getParseErrorCount(), getParseErrorRate() * 100,
+                getByteCount() / 1048576.0, getElapsedMillis()));
+        lines.add(String.format("Скорость: %.0f строк/с, %.1f МБ/с", getLinesPerSecond(), getMegabytesPerSecond()));
+        lines.add("Задержки, мкс (среднее / p50 / p90 / p99 / макс):");
+        lines.add(describe("  чтение блока", getReadLatency()));
+        lines.add(describe("  разбор строки", getParseLatency()));
+        lines.add(describe("  добавление в статистику", getAggregateLatency()));
+        Map<String, Long> heap = getStatisticsHeapBytes();
+        lines.add(String.format("Память статистики (оценка): %.1f МБ", getStatisticsHeapTotalBytes() / 1048576.0));
+        heap.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(entry -> lines.add(String.format("  %s: %.1f КБ", entry.getKey(), entry.getValue() / 1024.0)));
+        return String.join("\n", lines);
+    }
+
+    private static String describe(String title, LatencyHistogram.Snapshot latency) {
+        if (latency.getCount() == 0) {
+            return title + ": нет замеров";
+        }
+        return String.format("%s: %.1f / %.1f / %.1f / %.1f / %.1f (%d замеров)", title,
+                latency.getMeanNanos() / 1000.0, latency.getP50Nanos() / 1000.0, latency.getP90Nanos() / 1000.0,
+                latency.getP99Nanos() / 1000.0, latency.getMaxNanos() / 1000.0, latency.getCount());
+    }
+
+    private double perSecond(long count) {
+        long elapsed = System.nanoTime() - startNanos;
+        return elapsed == 0 ? 0 : count / (elapsed / 1e9);
+    }
+
+    // Отдельный MBean для памяти статистики
+    private final class StatisticsHeap implements StatisticsHeapMXBean {
+        @Override
+        public Map<String, Long> getStructureBytes() {
+            return getStatisticsHeapBytes();
+        }
+
+        @Override
+        public long getTotalBytes() {
+            return getStatisticsHeapTotalBytes();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package ru.stepup.utils;
+
+// Ход анализа в JMX (ru.stepup:type=Analysis): счётчики, скорость, прогресс и задержки этапов.
+// Значения читаются во время анализа, поэтому согласованы между собой приблизительно
+public interface AnalysisMetricsMXBean {
+    long getLineCount();
+
+    long getByteCount();
+
+    long getEntryCount();
+
+    long getParseErrorCount();
+
+    // Доля строк с ошибками разбора, от 0 до 1
+    double getParseErrorRate();
+
+    long getElapsedMillis();
+
+    double getLinesPerSecond();
+
+    double getMegabytesPerSecond();
+
+    // Байтов во всех анализируемых файлах, 0 - неизвестно (например, при слежении за логом)
+    long getExpectedBytes();
+
+    // Доля обработанных байтов от 0 до 1, -1 - неизвестно
+    double getProgress();
+
+    // Оценка оставшегося времени в секундах, -1 - неизвестно
+    long getEtaSeconds();
+
+    // Чтение файла: один вызов чтения с диска (блок байтов)
+    LatencyHistogram.Snapshot getReadLatency();
+
+    // Разбор одной строки (выборка: каждая 64-я строка)
+    LatencyHistogram.Snapshot getParseLatency();
+
+    // Добавление одной разобранной записи в статистику (та же выборка)
+    LatencyHistogram.Snapshot getAggregateLatency();
+}
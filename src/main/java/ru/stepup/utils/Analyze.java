@@ -1,65 +1,46 @@
 package ru.stepup.utils;
 
 import ru.stepup.exceptions.VeryLongLine;
-import ru.stepup.model.LogEntry;
+import ru.stepup.model.ParseError;
 
 import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.temporal.ChronoUnit;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 public class Analyze {
 
     // Анализируем файл и выводим результаты
     public static void analyzeFile(String filePath) {
-        int totalLines = 0;
-        int yandexBotCount = 0;
-        int googleBotCount = 0;
-        Statistics statistics = new Statistics();
-        int parseErrors = 0;
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-
-            while ((line = reader.readLine()) != null) {
-                totalLines++;
-
-                // Проверка на слишком длинную строку
-                if (line.length() > 1024) {
-                    throw new VeryLongLine("Длина строки превышает 1024 символа");
-                }
+        analyzeFile(filePath, new AnalyzeOptions());
+    }
 
-                try {
-                    // Создаем объект ru.stepup.model.LogEntry используя новые классы
-                    LogEntry entry = new LogEntry(line);
-
-                    // Добавляем запись в статистику
-                    statistics.addEntry(entry);
-
-                    // Анализ строки лога
-                    String userAgent = extractUserAgentFromLogLine(line);
-                    if (userAgent != null) {
-                        String program = extractProgramFromUserAgent(userAgent);
-
-                        if (program != null) {
-                            if (program.equalsIgnoreCase("YandexBot")) {
-                                yandexBotCount++;
-                            } else if (program.equalsIgnoreCase("Googlebot")) {
-                                googleBotCount++;
-                            }
-                        }
-                    }
-
-                } catch (IllegalArgumentException e) {
-                    // Пропускаем строки с неверным форматом
-                    parseErrors++;
-                    System.err.println("Ошибка парсинга строки " + totalLines + ": " + e.getMessage());
-                }
+    // Анализируем файл с заданными настройками и выводим результаты
+    public static void analyzeFile(String filePath, AnalyzeOptions options) {
+        try {
+            AnalysisMetrics instrumentation = options.getInstrumentation();
+            if (instrumentation != null && !isTimeRegionRead(Path.of(filePath), options)) {
+                instrumentation.addExpectedBytes(Files.size(Path.of(filePath)));
+            }
+            Statistics statistics = collectStatistics(filePath, options);
+            if (instrumentation != null) {
+                instrumentation.publishResult(statistics);
             }
 
             // Вывод результатов после анализа всего файла
-            printResults(totalLines, yandexBotCount, googleBotCount, statistics, parseErrors);
+            printResults(statistics);
 
         } catch (VeryLongLine e) {
             System.err.println(e.getMessage());
@@ -69,28 +50,187 @@ public class Analyze {
         }
     }
 
-    //Выводим результаты анализа
-    private static void printResults(int totalLines, int yandexBotCount, int googleBotCount, Statistics statistics, int parseErrors) {
-        printBasicInfo(totalLines, yandexBotCount, googleBotCount, statistics, parseErrors);
-        printTrafficInfo(statistics);
-        printRequestShares(yandexBotCount, googleBotCount, statistics);
-        printExistingPagesInfo(statistics);
-        printOsStatsInfo(statistics);
-        printNonExistingPagesInfo(statistics);
-        printBrowserStatsInfo(statistics);
-        printVisitsAndErrorsInfo(statistics);
-        printPeakVisitsInfo(statistics);
-        printRefererDomainsInfo(statistics);
-        printMaxUserVisitsInfo(statistics);
+    // Анализируем несколько файлов одним заданием и выводим общий отчёт.
+    // perFile - дополнительно вывести краткую сводку по каждому файлу.
+    // Возвращаем число файлов, которые не удалось обработать
+    public static int analyzeFiles(List<Path> files, AnalyzeOptions options, boolean perFile) {
+        List<BatchAnalyzer.FileResult> results = BatchAnalyzer.analyze(files, options);
+        Statistics total = BatchAnalyzer.combine(results, options);
+        if (options.getInstrumentation() != null) {
+            options.getInstrumentation().publishResult(total);
+        }
+        printResults(total);
+
+        int failed = 0;
+        if (perFile || results.size() > 1) {
+            System.out.println("\n══════════════ ФАЙЛЫ ══════════════");
+        }
+        for (BatchAnalyzer.FileResult result : results) {
+            Statistics statistics = result.getStatistics();
+            if (statistics == null) {
+                failed++;
+                System.out.println("  " + result.getPath() + ": " + result.getError());
+            } else if (perFile) {
+                System.out.println("  " + result.getPath() + ": строк " + statistics.getLineCount()
+                        + ", разобрано " + statistics.getEntryCount()
+                        + ", ошибок " + statistics.getParseErrorCount()
+                        + ", трафик " + statistics.getTotalTraffic() + " байт"
+                        + (statistics.getMinTime() != null
+                        ? ", период " + statistics.getMinTime() + " - " + statistics.getMaxTime() : ""));
+            }
+        }
+        if (results.size() > 1) {
+            System.out.println("Обработано файлов: " + (results.size() - failed) + " из " + results.size());
+        }
+        return failed;
+    }
+
+    // Собираем статистику по файлу: последовательно или параллельно по фрагментам, сжатый или нет
+    public static Statistics collectStatistics(String filePath, AnalyzeOptions options) throws IOException, InterruptedException {
+        // Контрольные точки: продолжаем с сохранённого смещения и сохраняем состояние по ходу анализа
+        if (options.isCheckpointed()) {
+            return CheckpointedAnalyzer.analyze(Path.of(filePath), options);
+        }
+
+        // Колоночный кэш: текст разбирается только при первом анализе или после изменения лога
+        if (options.isCached()) {
+            return ColumnarCache.analyze(Path.of(filePath), options);
+        }
+        return parseStatistics(filePath, options);
+    }
+
+    // Из лога читается только часть интервала времени (TimeIndex), а не весь файл: обычный лог
+    // без конвейера. Ожидаемый объём для прогресса у такого файла добавляет TimeIndex.locate
+    static boolean isTimeRegionRead(Path file, AnalyzeOptions options) throws IOException {
+        return options.getTimeRange() != null && !options.isPipelined() && !options.isCached()
+                && !options.isCheckpointed() && !GzipAnalyzer.isGzip(file);
+    }
+
+    // Собираем статистику разбором текста лога
+    static Statistics parseStatistics(String filePath, AnalyzeOptions options) throws IOException, InterruptedException {
+        // Конвейер чтение -> разбор; сводка по этапам выводится вместе с сообщениями об ошибках
+        if (options.isPipelined()) {
+            PipelinedAnalyzer analyzer = new PipelinedAnalyzer(options);
+            Statistics statistics = analyzer.analyze(Path.of(filePath));
+            System.err.println(analyzer.getMetrics().describe());
+            return statistics;
+        }
+
+        // Сжатый gzip лог распаковывается на лету
+        if (GzipAnalyzer.isGzip(Path.of(filePath))) {
+            return GzipAnalyzer.analyze(Path.of(filePath), options);
+        }
+
+        // Интервал времени: разбираем только часть файла, найденную двоичным поиском по времени строк.
+        // Сжатый файл и конвейер читают лог целиком, строки вне интервала отбрасываются при разборе
+        if (options.getTimeRange() != null) {
+            try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+                TimeIndex.Region region = TimeIndex.locate(Path.of(filePath), channel, options);
+                return options.getThreads() > 1
+                        ? ChunkedAnalyzer.analyze(channel, region.start, region.end, options)
+                        : ChunkedAnalyzer.analyzeRange(channel, region.start, region.end, options,
+                        " (фрагмент с байта " + region.start + ")");
+            }
+        }
+
+        if (options.getThreads() > 1) {
+            return ChunkedAnalyzer.analyze(filePath, options);
+        }
+
+        if (options.isMemoryMapped() || options.getParserMode() == ParserMode.BYTES) {
+            // Байтовое чтение: строки передаются разбору без декодирования в String
+            try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+                return ChunkedAnalyzer.analyzeRange(channel, 0, channel.size(), options, "");
+            }
+        }
+
+        Statistics statistics = new Statistics(options.isApproximate(), options.getMetrics());
+        LineProcessor processor = new LineProcessor(statistics, options, "");
+
+        // С замерами файл читается через обёртку, которая считает байты и время чтения
+        Reader file = options.getInstrumentation() == null ? new FileReader(filePath)
+                : new InputStreamReader(new InstrumentedInputStream(new FileInputStream(filePath),
+                options.getInstrumentation()));
+        try (BufferedReader reader = new BufferedReader(file)) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                processor.processLine(line);
+            }
+        }
+        processor.finish();
+        return statistics;
+    }
+
+    //Выводим результаты анализа: разделы только выбранных метрик
+    static void printResults(Statistics statistics) {
+        Set<Metric> metrics = statistics.getMetrics();
+        printBasicInfo(statistics);
+        if (metrics.contains(Metric.TRAFFIC)) {
+            printTrafficInfo(statistics);
+        }
+        if (metrics.contains(Metric.STATUS)) {
+            printStatusInfo(statistics);
+        }
+        if (metrics.contains(Metric.BOTS)) {
+            printRequestShares(statistics);
+        }
+        if (metrics.contains(Metric.PAGES)) {
+            printExistingPagesInfo(statistics);
+        }
+        if (metrics.contains(Metric.OS)) {
+            printOsStatsInfo(statistics);
+        }
+        if (metrics.contains(Metric.PAGES)) {
+            printNonExistingPagesInfo(statistics);
+        }
+        if (metrics.contains(Metric.BROWSERS)) {
+            printBrowserStatsInfo(statistics);
+        }
+        if (metrics.contains(Metric.VISITS)) {
+            printVisitsAndErrorsInfo(statistics);
+        }
+        if (metrics.contains(Metric.PEAK)) {
+            printPeakVisitsInfo(statistics);
+        }
+        if (metrics.contains(Metric.TIME_SERIES)) {
+            printTimeSeriesInfo(statistics);
+        }
+        if (metrics.contains(Metric.REFERERS)) {
+            printRefererDomainsInfo(statistics);
+        }
+        if (metrics.contains(Metric.USERS)) {
+            printMaxUserVisitsInfo(statistics);
+        }
     }
 
-    private static void printBasicInfo(int totalLines, int yandexBotCount, int googleBotCount, Statistics statistics, int parseErrors) {
+    private static void printBasicInfo(Statistics statistics) {
         System.out.println("══════════════ РЕЗУЛЬТАТЫ АНАЛИЗА ══════════════");
-        System.out.println("Всего строк в файле: " + totalLines);
+        System.out.println("Всего строк в файле: " + statistics.getLineCount());
         System.out.println("Успешно разобрано строк: " + statistics.getEntryCount());
-        System.out.println("Ошибок парсинга: " + parseErrors);
-        System.out.println("Запросов от YandexBot: " + yandexBotCount);
-        System.out.println("Запросов от Googlebot: " + googleBotCount);
+        System.out.println("Ошибок парсинга: " + statistics.getParseErrorCount());
+        printParseErrorsInfo(statistics);
+        if (statistics.getMetrics().contains(Metric.BOTS)) {
+            System.out.println("Запросов от YandexBot: " + statistics.getYandexBotCount());
+            System.out.println("Запросов от Googlebot: " + statistics.getGoogleBotCount());
+        }
+    }
+
+    // Ошибки разбора по причинам вместо сообщения на каждую строку: на логе из мусора
+    // сводка остаётся короткой, а сами строки при необходимости сохраняет карантин
+    private static void printParseErrorsInfo(Statistics statistics) {
+        if (statistics.getParseErrorCount() == 0) {
+            return;
+        }
+        System.out.printf("  Доля строк с ошибками: %.2f%%\n", statistics.getParseErrorRate() * 100);
+        long withReason = 0;
+        for (Map.Entry<ParseError, Long> entry : statistics.getParseErrorCounts().entrySet()) {
+            System.out.println("  " + entry.getKey().getMessage() + ": " + entry.getValue());
+            withReason += entry.getValue();
+        }
+        if (withReason < statistics.getParseErrorCount()) {
+            System.out.println("  Причина не сохранена: " + (statistics.getParseErrorCount() - withReason));
+        }
     }
 
     private static void printTrafficInfo(Statistics statistics) {
@@ -104,8 +244,24 @@ public class Analyze {
         System.out.printf("Средний трафик в час: %.2f байт/час\n", statistics.getTrafficRate());
     }
 
-    private static void printRequestShares(int yandexBotCount, int googleBotCount, Statistics statistics) {
+    private static void printStatusInfo(Statistics statistics) {
+        System.out.println("\n══════════════ КОДЫ ОТВЕТА ══════════════");
+        Map<String, Long> statusCounts = statistics.getStatusClassCounts();
+        if (statusCounts.isEmpty()) {
+            System.out.println("Нет записей");
+            return;
+        }
+        for (Map.Entry<String, Long> entry : statusCounts.entrySet()) {
+            System.out.printf("  %s: %d (%.2f%%)\n", entry.getKey(), entry.getValue(),
+                    (double) entry.getValue() / statistics.getEntryCount() * 100);
+        }
+        System.out.println("Ошибочных запросов (4xx и 5xx): " + statistics.getErrorRequestsCount());
+    }
+
+    private static void printRequestShares(Statistics statistics) {
         if (statistics.getEntryCount() > 0) {
+            long yandexBotCount = statistics.getYandexBotCount();
+            long googleBotCount = statistics.getGoogleBotCount();
             double yandexShare = (double) yandexBotCount / statistics.getEntryCount() * 100;
             double googleShare = (double) googleBotCount / statistics.getEntryCount() * 100;
             double totalBotShare = (double) (yandexBotCount + googleBotCount) / statistics.getEntryCount() * 100;
@@ -124,12 +280,15 @@ public class Analyze {
     private static void printExistingPagesInfo(Statistics statistics) {
         // Вывод списка существующих страниц
         System.out.println("\n══════════════ СУЩЕСТВУЮЩИЕ СТРАНИЦЫ ══════════════");
-        if (statistics.getExistingPagesCount() > 0) {
+        if (statistics.isApproximate()) {
+            printTopList(statistics, "Всего страниц с кодом 200", statistics.getExistingPagesCount(),
+                    statistics.getTopExistingPages(), 20);
+        } else if (statistics.getExistingPagesCount() > 0) {
             System.out.println("Всего страниц с кодом 200: " + statistics.getExistingPagesCount());
 
             // Можно вывести первые 10 страниц для примера
             int counter = 1;
-            for (String page : statistics.getExistingPages()) {
+            for (String page : new TreeSet<>(statistics.getExistingPages())) {
                 if (counter > 20) {
                     System.out.println("  ... и еще " + (statistics.getExistingPagesCount() - 20) + " страниц");
                     break;
@@ -145,7 +304,7 @@ public class Analyze {
     private static void printOsStatsInfo(Statistics statistics) {
         // Вывод статистики операционных систем
         System.out.println("\n══════════════ ОПЕРАЦИОННЫЕ СИСТЕМЫ ══════════════");
-        Map<String, Double> osStats = statistics.getOsStatistics();
+        Map<String, Double> osStats = new TreeMap<>(statistics.getOsStatistics());
         if (!osStats.isEmpty()) {
             System.out.println("Распределение по операционным системам:");
             for (Map.Entry<String, Double> entry : osStats.entrySet()) {
@@ -160,12 +319,15 @@ public class Analyze {
     private static void printNonExistingPagesInfo(Statistics statistics) {
         // Вывод списка несуществующих страниц
         System.out.println("\n══════════════ НЕСУЩЕСТВУЮЩИЕ СТРАНИЦЫ (404) ══════════════");
-        if (statistics.getNonExistingPagesCount() > 0) {
+        if (statistics.isApproximate()) {
+            printTopList(statistics, "Всего страниц с кодом 404", statistics.getNonExistingPagesCount(),
+                    statistics.getTopNonExistingPages(), 10);
+        } else if (statistics.getNonExistingPagesCount() > 0) {
             System.out.println("Всего страниц с кодом 404: " + statistics.getNonExistingPagesCount());
 
             // Можно вывести первые 10 страниц для примера
             int counter = 1;
-            for (String page : statistics.getNonExistingPages()) {
+            for (String page : new TreeSet<>(statistics.getNonExistingPages())) {
                 if (counter > 10) {
                     System.out.println("  ... и еще " + (statistics.getNonExistingPagesCount() - 10) + " страниц");
                     break;
@@ -181,7 +343,7 @@ public class Analyze {
     private static void printBrowserStatsInfo(Statistics statistics) {
         // Вывод статистики браузеров
         System.out.println("\n══════════════ СТАТИСТИКА БРАУЗЕРОВ ══════════════");
-        Map<String, Double> browserStats = statistics.getBrowserStatistics();
+        Map<String, Double> browserStats = new TreeMap<>(statistics.getBrowserStatistics());
         if (!browserStats.isEmpty()) {
             System.out.println("Распределение по браузерам:");
             for (Map.Entry<String, Double> entry : browserStats.entrySet()) {
@@ -216,10 +378,40 @@ public class Analyze {
         System.out.printf("Максимальная посещаемость за секунду: %d запросов\n", peakVisitsPerSecond);
     }
 
+    // Динамика по корзинам времени: последние минуты лога и пиковые минута и час
+    private static void printTimeSeriesInfo(Statistics statistics) {
+        System.out.println("\n══════════════ ДИНАМИКА ПО ВРЕМЕНИ ══════════════");
+        TimeSeries minutes = statistics.getMinuteSeries();
+        TimeSeries hours = statistics.getHourSeries();
+        if (minutes.last(1) == null) {
+            System.out.println("Нет записей");
+            return;
+        }
+        printWindow("Последние 15 минут лога", minutes.last(15));
+        printWindow("Последний час лога", minutes.last(60));
+        printWindow("Пиковая минута за последние сутки лога", minutes.peak());
+        printWindow("Пиковый час за последние " + hours.getCapacity() / 24 + " дн. лога", hours.peak());
+    }
+
+    private static void printWindow(String title, TimeSeries.Window window) {
+        System.out.println(title + " (" + window.getStart() + " - " + window.getEnd() + "):");
+        System.out.printf("  Запросов: %d (%.2f в минуту), посещений реальными пользователями: %d (%.2f в минуту)\n",
+                window.getRequests(), window.getRequestsPerMinute(),
+                window.getHumanVisits(), window.getHumanVisitsPerMinute());
+        System.out.printf("  Ошибочных запросов: %d (%.2f в минуту), трафик: %d байт (%.2f байт/мин)\n",
+                window.getErrors(), window.getErrorsPerMinute(), window.getBytes(), window.getBytesPerMinute());
+        System.out.println("  Уникальных IP-адресов (оценка): " + window.getDistinctIps());
+    }
+
     private static void printRefererDomainsInfo(Statistics statistics) {
         // Вывод сайтов-рефереров
         System.out.println("\n══════════════ САЙТЫ-РЕФЕРЕРЫ ══════════════");
-        Set<String> refererDomains = statistics.getRefererDomains();
+        if (statistics.isApproximate()) {
+            printTopList(statistics, "Всего сайтов-рефереров", statistics.getRefererDomainsCount(),
+                    statistics.getTopRefererDomains(), 20);
+            return;
+        }
+        Set<String> refererDomains = new TreeSet<>(statistics.getRefererDomains());
         System.out.println("\nСписок сайтов-рефереров:");
         int count = 1;
         for (String domain : refererDomains) {
@@ -233,50 +425,29 @@ public class Analyze {
         System.out.println("\n══════════════ МАКСИМАЛЬНОЕ ПОСЕЩЕНИЕ ПОЛЬЗОВАТЕЛЕМ ══════════════");
         int maxVisitsByUser = statistics.getMaxVisitsBySingleUser();
         System.out.println("Максимальное количество посещений одним пользователем: " + maxVisitsByUser);
-    }
-
-    //Извлекаем User-Agent из строки лога
-    private static String extractUserAgentFromLogLine(String logLine) {
-        int lastQuoteIndex = logLine.lastIndexOf('"');
-        if (lastQuoteIndex == -1) return null;
-
-        int secondLastQuoteIndex = logLine.lastIndexOf('"', lastQuoteIndex - 1);
-        if (secondLastQuoteIndex == -1) return null;
-
-        String userAgent = logLine.substring(secondLastQuoteIndex + 1, lastQuoteIndex).trim();
-
-        if (userAgent.isEmpty() || userAgent.equals("-")) {
-            return null;
+        if (statistics.isApproximate()) {
+            System.out.println("  (оценка сверху, завышение не больше " + statistics.getApproximationErrorBound() + ")");
+            printTopList(statistics, "Уникальных IP-адресов реальных пользователей", statistics.getUniqueHumanIpCount(),
+                    statistics.getTopHumanIps(), 10);
         }
-        return userAgent;
     }
 
-    // Извлекаем название программы из User-Agent
-    private static String extractProgramFromUserAgent(String userAgent) {
-        try {
-            int openBracketIndex = userAgent.indexOf('(');
-            int closeBracketIndex = userAgent.indexOf(')', openBracketIndex);
-
-            if (openBracketIndex == -1 || closeBracketIndex == -1) {
-                return null;
-            }
-
-            String firstBrackets = userAgent.substring(openBracketIndex + 1, closeBracketIndex);
-            String[] parts = firstBrackets.split(";");
-
-            if (parts.length >= 2) {
-                String fragment = parts[1].trim();
-                int slashIndex = fragment.indexOf('/');
-                if (slashIndex != -1) {
-                    return fragment.substring(0, slashIndex).trim();
-                } else {
-                    return fragment.trim();
-                }
+    // Вывод оценки числа уникальных значений и самых частых из них (приблизительный режим)
+    private static void printTopList(Statistics statistics, String title, int distinctCount,
+                                     Map<String, Long> top, int limit) {
+        System.out.printf("%s (оценка, погрешность ~%.1f%%): %d\n", title,
+                statistics.getDistinctRelativeError() * 100, distinctCount);
+        if (top.isEmpty()) {
+            return;
+        }
+        System.out.println("Самые частые (число запросов - оценка сверху):");
+        int counter = 1;
+        for (Map.Entry<String, Long> entry : top.entrySet()) {
+            if (counter > limit) {
+                break;
             }
-
-        } catch (Exception e) {
-            return null;
+            System.out.println("  " + counter + ". " + entry.getKey() + " - " + entry.getValue());
+            counter++;
         }
-        return null;
     }
-}
+}
\ No newline at end of file
@@ -0,0 +1,134 @@
+package ru.stepup.utils;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+// Настройки анализа файла
+public class AnalyzeOptions {
+    private ParserMode parserMode = ParserMode.CLASSIC;
+    private int threads = 1; // Число потоков разбора, 1 - последовательный анализ
+    private boolean memoryMapped; // Читать файл через отображение в память
+    private boolean approximate; // Ограниченная память: оценки вместо точных множеств
+    private boolean pipelined; // Конвейер: поток чтения и потоки разбора через очередь пакетов строк
+    private boolean cached; // Колоночный кэш разобранных записей рядом с логом
+    private boolean checkpointed; // Контрольные точки: продолжение анализа с сохранённого смещения
+    private QuarantineWriter quarantine; // Карантин неразобранных строк, null - не сохранять
+    private Set<Metric> metrics = Metric.all(); // Метрики отчёта, разбор извлекает только нужные им поля
+    private AnalysisMetrics instrumentation; // Замеры хода анализа (JMX, прогресс), null - без замеров
+    private TimeRange timeRange; // Только строки этого интервала времени, null - все строки
+    private boolean timeIndexed; // Сохранять пробы поиска по времени в <лог>.timeindex
+
+    public Set<Metric> getMetrics() {
+        return metrics;
+    }
+
+    public AnalyzeOptions setMetrics(Set<Metric> metrics) {
+        if (metrics == null || metrics.isEmpty()) {
+            throw new IllegalArgumentException("Не указано ни одной метрики");
+        }
+        this.metrics = EnumSet.copyOf(metrics);
+        return this;
+    }
+
+    public ParserMode getParserMode() {
+        return parserMode;
+    }
+
+    public AnalyzeOptions setParserMode(ParserMode parserMode) {
+        this.parserMode = parserMode;
+        return this;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public AnalyzeOptions setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Число потоков должно быть положительным: " + threads);
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    public AnalyzeOptions setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+        return this;
+    }
+
+    public boolean isApproximate() {
+        return approximate;
+    }
+
+    public AnalyzeOptions setApproximate(boolean approximate) {
+        this.approximate = approximate;
+        return this;
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    public AnalyzeOptions setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+        return this;
+    }
+
+    public boolean isCached() {
+        return cached;
+    }
+
+    public AnalyzeOptions setCached(boolean cached) {
+        this.cached = cached;
+        return this;
+    }
+
+    public boolean isCheckpointed() {
+        return checkpointed;
+    }
+
+    public AnalyzeOptions setCheckpointed(boolean checkpointed) {
+        this.checkpointed = checkpointed;
+        return this;
+    }
+
+    public QuarantineWriter getQuarantine() {
+        return quarantine;
+    }
+
+    public AnalyzeOptions setQuarantine(QuarantineWriter quarantine) {
+        this.quarantine = quarantine;
+        return this;
+    }
+
+    public AnalysisMetrics getInstrumentation() {
+        return instrumentation;
+    }
+
+    public AnalyzeOptions setInstrumentation(AnalysisMetrics instrumentation) {
+        this.instrumentation = instrumentation;
+        return this;
+    }
+
+    public TimeRange getTimeRange() {
+        return timeRange;
+    }
+
+    public AnalyzeOptions setTimeRange(TimeRange timeRange) {
+        this.timeRange = timeRange;
+        return this;
+    }
+
+    public boolean isTimeIndexed() {
+        return timeIndexed;
+    }
+
+    public AnalyzeOptions setTimeIndexed(boolean timeIndexed) {
+        this.timeIndexed = timeIndexed;
+        return this;
+    }
+}
@@ -0,0 +1,302 @@
+package ru.stepup.utils;
+
+import ru.stepup.exceptions.VeryLongLine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+
+// Анализ множества файлов (каталог, шаблон, список) в пуле ForkJoin с перехватом работы.
+// Большие файлы делятся на фрагменты по границам строк, поэтому один огромный файл в конце
+// не оставляет остальные потоки без дела. Сжатые файлы не делятся и распаковываются прямо в потоке
+// пула; их объём работы оценивается по размеру распакованных данных. Статистика каждого файла
+// собирается отдельно и затем объединяется в общую
+public class BatchAnalyzer {
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    private static final int CHUNKS_PER_THREAD = 8;
+    // Служебные файлы, которые анализ сохраняет рядом с логом: при обходе папок и шаблонов
+    // это не логи, а повторный --cache или --checkpoint создал бы для них свои файлы
+    private static final List<String> SIDECAR_SUFFIXES =
+            List.of(ColumnarCache.SUFFIX, CheckpointedAnalyzer.SUFFIX, TimeIndex.SUFFIX);
+
+    // Результат по одному файлу: статистика или сообщение об ошибке
+    public static final class FileResult {
+        private final Path path;
+        private Statistics statistics;
+        private String error;
+        private long workSize; // Байтов для разбора: у gzip - оценка распакованного размера
+
+        FileResult(Path path) {
+            this.path = path;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public Statistics getStatistics() {
+            return statistics;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    // Список файлов по аргументам: файл, каталог (все файлы рекурсивно) или шаблон glob
+    // вида "logs/*/access-*.log". В каталогах и по шаблону служебные файлы анализа
+    // (<лог>.colcache, .checkpoint, .timeindex) пропускаются. Результат отсортирован, повторы убраны
+    public static List<Path> resolveInputs(List<String> inputs) throws IOException {
+        TreeSet<Path> files = new TreeSet<>();
+        for (String input : inputs) {
+            List<Path> matched = resolveInput(input);
+            if (matched.isEmpty()) {
+                throw new IllegalArgumentException("Не найдено файлов: " + input);
+            }
+            files.addAll(matched);
+        }
+        return new ArrayList<>(files);
+    }
+
+    private static List<Path> resolveInput(String input) throws IOException {
+        int globStart = firstGlobChar(input);
+        if (globStart == -1) {
+            Path path = Path.of(input);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> walk = Files.walk(path)) {
+                    return walk.filter(Files::isRegularFile).filter(file -> !isSidecar(file)).sorted().toList();
+                }
+            }
+            return Files.isRegularFile(path) ? List.of(path) : List.of();
+        }
+
+        // Каталог до первого сегмента с шаблоном - точка обхода, остаток сравниваем с шаблоном
+        int separator = input.lastIndexOf('/', globStart);
+        Path base = separator == -1 ? Path.of(".") : Path.of(separator == 0 ? "/" : input.substring(0, separator));
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + input.substring(separator + 1));
+        if (!Files.isDirectory(base)) {
+            return List.of();
+        }
+        try (Stream<Path> walk = Files.walk(base)) {
+            return walk.filter(Files::isRegularFile)
+                    .filter(path -> !isSidecar(path))
+                    .filter(path -> matcher.matches(base.relativize(path)))
+                    .map(path -> separator == -1 ? base.relativize(path) : path)
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static boolean isSidecar(Path path) {
+        String name = path.getFileName().toString();
+        return SIDECAR_SUFFIXES.stream().anyMatch(name::endsWith);
+    }
+
+    private static int firstGlobChar(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Анализируем файлы в options.getThreads() потоков. Ошибка в одном файле не останавливает
+    // остальные: файл попадает в результат с сообщением об ошибке и без статистики
+    public static List<FileResult> analyze(List<Path> files, AnalyzeOptions options) {
+        List<FileResult> results = new ArrayList<>();
+        long fileBytes = 0;
+        for (Path file : files) {
+            results.add(new FileResult(file));
+            fileBytes += expectedSizeOf(file, options);
+        }
+        if (options.getInstrumentation() != null) {
+            // Прогресс считает прочитанные байты файлов, у gzip - сжатые, у части файла
+            // по интервалу времени - только её (добавляется при поиске части)
+            options.getInstrumentation().addExpectedBytes(fileBytes);
+        }
+        // Конвейер, чтение кэша и анализ с контрольными точками сами распределяют работу
+        // по потокам, поэтому файлы идут по очереди
+        if (options.isPipelined() || options.isCached() || options.isCheckpointed()) {
+            for (FileResult result : results) {
+                try {
+                    result.statistics = Analyze.collectStatistics(result.path.toString(), options);
+                } catch (Exception e) {
+                    fail(result, e);
+                }
+            }
+            return results;
+        }
+
+        long workBytes = 0;
+        for (FileResult result : results) {
+            result.workSize = workSizeOf(result.path);
+            workBytes += result.workSize;
+        }
+
+        // В один поток файлы не делятся: результат совпадает с последовательным анализом
+        long chunkSize = options.getThreads() == 1 ? Long.MAX_VALUE
+                : Math.max(MIN_CHUNK_SIZE, workBytes / ((long) options.getThreads() * CHUNKS_PER_THREAD));
+
+        // Крупные файлы запускаем первыми, мелкие заполняют хвост
+        List<FileTask> tasks = results.stream()
+                .sorted(Comparator.comparingLong((FileResult result) -> result.workSize).reversed())
+                .map(result -> new FileTask(result, options, chunkSize))
+                .toList();
+
+        ForkJoinPool pool = new ForkJoinPool(options.getThreads());
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    // Объединённая статистика всех успешно разобранных файлов
+    public static Statistics combine(List<FileResult> results, AnalyzeOptions options) {
+        Statistics total = new Statistics(options.isApproximate(), options.getMetrics());
+        for (FileResult result : results) {
+            if (result.statistics != null) {
+                total.combine(result.statistics);
+            }
+        }
+        return total;
+    }
+
+    private static void fail(FileResult result, Exception e) {
+        if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+            result.error = "Анализ прерван";
+            return;
+        }
+        Throwable cause = e instanceof UncheckedIOException ? e.getCause() : e;
+        result.error = cause instanceof VeryLongLine
+                ? cause.getMessage() + ". Обработка файла прекращена"
+                : "Ошибка при чтении файла: " + cause.getMessage();
+    }
+
+    private static long expectedSizeOf(Path file, AnalyzeOptions options) {
+        try {
+            return Analyze.isTimeRegionRead(file, options) ? 0 : Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    // Объём работы по файлу: сжатый лог разбирается в несколько раз дольше, чем читается
+    private static long workSizeOf(Path file) {
+        try {
+            return GzipAnalyzer.isGzip(file) ? GzipAnalyzer.estimateUncompressedSize(file) : Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    // Один файл: gzip распаковывается в потоке пула, обычный файл делится на фрагменты
+    private static final class FileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L; // Задачи пула не сериализуются
+
+        private final FileResult result;
+        private final AnalyzeOptions options;
+        private final long chunkSize;
+
+        FileTask(FileResult result, AnalyzeOptions options, long chunkSize) {
+            this.result = result;
+            this.options = options;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                if (GzipAnalyzer.isGzip(result.path)) {
+                    result.statistics = GzipAnalyzer.analyzeInline(result.path, options);
+                } else {
+                    result.statistics = analyzePlain();
+                }
+            } catch (Exception e) {
+                fail(result, e);
+            }
+        }
+
+        private Statistics analyzePlain() throws IOException {
+            try (FileChannel channel = FileChannel.open(result.path, StandardOpenOption.READ)) {
+                // С интервалом времени делится только часть файла, найденная поиском по времени
+                long start = 0;
+                long end = channel.size();
+                if (options.getTimeRange() != null) {
+                    TimeIndex.Region region = TimeIndex.locate(result.path, channel, options);
+                    start = region.start;
+                    end = region.end;
+                }
+                int chunkCount = (int) Math.max(1, (end - start) / chunkSize);
+                List<Long> bounds = ChunkedAnalyzer.splitIntoChunks(channel, start, end, chunkCount);
+
+                List<ChunkTask> chunks = new ArrayList<>();
+                for (int i = 0; i + 1 < bounds.size(); i++) {
+                    String location = " (файл " + result.path + ", фрагмент с байта " + bounds.get(i) + ")";
+                    chunks.add(new ChunkTask(channel, bounds.get(i), bounds.get(i + 1), options, location));
+                }
+                invokeAll(chunks);
+
+                Statistics statistics = new Statistics(options.isApproximate(), options.getMetrics());
+                for (ChunkTask chunk : chunks) {
+                    Statistics part = chunk.join();
+                    statistics.combine(part);
+                    if (options.getInstrumentation() != null) {
+                        options.getInstrumentation().merged(statistics, part);
+                    }
+                }
+                return statistics;
+            }
+        }
+    }
+
+    // Фрагмент файла [start, end), выровненный по границам строк
+    private static final class ChunkTask extends RecursiveTask<Statistics> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final AnalyzeOptions options;
+        private final String location;
+
+        ChunkTask(FileChannel channel, long start, long end, AnalyzeOptions options, String location) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.options = options;
+            this.location = location;
+        }
+
+        @Override
+        protected Statistics compute() {
+            try {
+                return ChunkedAnalyzer.analyzeRange(channel, start, end, options, location);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
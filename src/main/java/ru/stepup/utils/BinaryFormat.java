@@ -0,0 +1,116 @@
+package ru.stepup.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.zip.CRC32;
+
+// Компактная двоичная запись состояния: целые числа переменной длины (по 7 бит в байте,
+// малые числа занимают 1-2 байта), числа со знаком - в зигзаг-кодировке, строки - длина и UTF-8.
+// Здесь же общая для контрольных точек и индекса времени проверка, что лог тот же
+final class BinaryFormat {
+    private static final int HEAD_CHECKSUM_SIZE = 64 << 10; // Начало файла, по которому узнаём тот же лог
+
+    private BinaryFormat() {
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Повреждённое число в состоянии");
+    }
+
+    static void writeSignedVarLong(DataOutput out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    static long readSignedVarLong(DataInput in) throws IOException {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // Неотрицательное int (счётчики, размеры)
+    static void writeCount(DataOutput out, int value) throws IOException {
+        writeVarLong(out, value);
+    }
+
+    static int readCount(DataInput in) throws IOException {
+        long value = readVarLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Повреждённый счётчик в состоянии: " + value);
+        }
+        return (int) value;
+    }
+
+    // Неотрицательное long (счётчики записей, которые копятся между запусками)
+    static void writeLongCount(DataOutput out, long value) throws IOException {
+        writeVarLong(out, value);
+    }
+
+    static long readLongCount(DataInput in) throws IOException {
+        long value = readVarLong(in);
+        if (value < 0) {
+            throw new IOException("Повреждённый счётчик в состоянии: " + Long.toUnsignedString(value));
+        }
+        return value;
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeCount(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[readCount(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeStrings(DataOutput out, Collection<String> values) throws IOException {
+        writeCount(out, values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    static void readStrings(DataInput in, Collection<String> target) throws IOException {
+        int count = readCount(in);
+        for (int i = 0; i < count; i++) {
+            target.add(readString(in));
+        }
+    }
+
+    // Контрольная сумма начала лога (до HEAD_CHECKSUM_SIZE байт, но не дальше length) для файлов
+    // рядом с логом: у дописанного лога начало то же, и сумма по прежней длине совпадает, а после
+    // ротации или замены файла - нет
+    static long headChecksum(FileChannel channel, long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(HEAD_CHECKSUM_SIZE, length));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.flip());
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,181 @@
+package ru.stepup.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Анализ с контрольными точками: файл разбирается сегментами по границам строк, после сегментов
+// в "<лог>.checkpoint" сохраняются смещение и состояние статистики. Следующий запуск продолжает
+// с сохранённого смещения: после падения не нужно начинать сначала, а ежедневный запуск по
+// растущему логу разбирает только дописанные байты и добавляет их к накопленной статистике.
+// Незаконченная последняя строка (без конца строки) остаётся до следующего запуска.
+// Если лог стал короче контрольной точки или его начало изменилось (ротация), анализ идёт с начала
+class CheckpointedAnalyzer {
+    static final String SUFFIX = ".checkpoint";
+
+    private static final int MAGIC = 0x4C434B50; // "LCKP"
+    private static final int VERSION = 1;
+    private static final long SEGMENT_SIZE = 256L << 20;
+    private static final long CHECKPOINT_INTERVAL_NANOS = 30_000_000_000L; // Не чаще раза в 30 секунд
+
+    static Path checkpointPath(Path source) {
+        return source.resolveSibling(source.getFileName() + SUFFIX);
+    }
+
+    // Сохранённая контрольная точка: обработанные байты [0, offset) и статистика по ним
+    private static final class Checkpoint {
+        private final long offset;
+        private final Statistics statistics;
+
+        Checkpoint(long offset, Statistics statistics) {
+            this.offset = offset;
+            this.statistics = statistics;
+        }
+    }
+
+    static Statistics analyze(Path source, AnalyzeOptions options) throws IOException, InterruptedException {
+        if (GzipAnalyzer.isGzip(source)) {
+            System.err.println("Контрольные точки для сжатых файлов не поддерживаются, файл разбирается целиком");
+            return Analyze.parseStatistics(source.toString(), options);
+        }
+
+        Path checkpointFile = checkpointPath(source);
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            long size = channel.size();
+            Checkpoint checkpoint = load(checkpointFile, channel, options);
+            Statistics statistics = checkpoint != null ? checkpoint.statistics : null;
+            long offset = checkpoint != null ? checkpoint.offset : 0;
+            if (checkpoint != null) {
+                System.err.println("Продолжаем анализ с байта " + offset + " из " + size);
+                if (options.getInstrumentation() != null) {
+                    // Прогресс считается только по оставшейся части файла
+                    options.getInstrumentation().addExpectedBytes(-offset);
+                }
+            }
+
+            long end = lastLineEnd(channel, size);
+            long lastSave = System.nanoTime();
+            while (offset < end) {
+                long segmentEnd = Math.min(end, ChunkedAnalyzer.nextLineStart(channel, offset + SEGMENT_SIZE));
+                Statistics segment = options.getThreads() > 1
+                        ? ChunkedAnalyzer.analyze(channel, offset, segmentEnd, options)
+                        : ChunkedAnalyzer.analyzeRange(channel, offset, segmentEnd, options,
+                        " (фрагмент с байта " + offset + ")");
+                statistics = statistics == null ? segment : statistics.combine(segment);
+                if (options.getInstrumentation() != null) {
+                    options.getInstrumentation().merged(statistics, segment);
+                }
+                offset = segmentEnd;
+
+                if (offset == end || System.nanoTime() - lastSave >= CHECKPOINT_INTERVAL_NANOS) {
+                    save(checkpointFile, channel, offset, statistics);
+                    lastSave = System.nanoTime();
+                }
+            }
+
+            if (statistics == null) {
+                statistics = new Statistics(options.isApproximate(), options.getMetrics());
+                save(checkpointFile, channel, 0, statistics);
+            }
+            if (size > end) {
+                System.err.println("Последняя строка без конца строки (" + (size - end)
+                        + " байт) будет разобрана при следующем запуске");
+            }
+            return statistics;
+        }
+    }
+
+    // Позиция сразу после последнего '\n' файла, 0 - в файле нет ни одного конца строки
+    private static long lastLineEnd(FileChannel channel, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long blockEnd = size;
+        while (blockEnd > 0) {
+            long blockStart = Math.max(0, blockEnd - buffer.capacity());
+            buffer.clear();
+            buffer.limit((int) (blockEnd - blockStart));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, blockStart + buffer.position()) < 0) {
+                    throw new IOException("Файл стал короче во время анализа");
+                }
+            }
+            for (int i = buffer.limit() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return blockStart + i + 1;
+                }
+            }
+            blockEnd = blockStart;
+        }
+        return 0;
+    }
+
+    // Файл контрольной точки: заголовок, смещение, отпечаток начала лога и сжатое состояние статистики.
+    // Пишется во временный файл и заменяет прежний одним переименованием
+    private static void save(Path checkpointFile, FileChannel channel, long offset, Statistics statistics)
+            throws IOException {
+        Path temporary = Files.createTempFile(checkpointFile.toAbsolutePath().getParent(), "checkpoint", ".tmp");
+        try {
+            try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16)) {
+                DataOutputStream header = new DataOutputStream(file);
+                header.writeInt(MAGIC);
+                header.writeShort(VERSION);
+                header.writeLong(offset);
+                header.writeLong(BinaryFormat.headChecksum(channel, offset));
+                header.flush();
+
+                DataOutputStream state = new DataOutputStream(new GZIPOutputStream(file, 1 << 16));
+                statistics.writeTo(state);
+                state.close();
+            }
+            Files.move(temporary, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // Читаем контрольную точку, если она подходит к текущему логу и режиму анализа, иначе null
+    private static Checkpoint load(Path checkpointFile, FileChannel channel, AnalyzeOptions options) {
+        if (!Files.isRegularFile(checkpointFile)) {
+            return null;
+        }
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(checkpointFile), 1 << 16)) {
+            DataInputStream header = new DataInputStream(file);
+            if (header.readInt() != MAGIC || header.readUnsignedShort() != VERSION) {
+                System.err.println("Контрольная точка " + checkpointFile + " в неизвестном формате, анализ с начала");
+                return null;
+            }
+            long offset = header.readLong();
+            long fingerprint = header.readLong();
+            if (offset > channel.size() || fingerprint != BinaryFormat.headChecksum(channel, offset)) {
+                System.err.println("Лог изменился с момента контрольной точки (ротация или перезапись), анализ с начала");
+                return null;
+            }
+
+            Statistics statistics = Statistics.readFrom(new DataInputStream(new GZIPInputStream(file, 1 << 16)));
+            if (statistics.isApproximate() != options.isApproximate()) {
+                System.err.println("Контрольная точка сохранена в другом режиме (--approximate), анализ с начала");
+                return null;
+            }
+            if (!statistics.getMetrics().equals(options.getMetrics())) {
+                System.err.println("Контрольная точка сохранена с другим набором метрик (--metrics), анализ с начала");
+                return null;
+            }
+            return new Checkpoint(offset, statistics);
+        } catch (IOException e) {
+            System.err.println("Не удалось прочитать контрольную точку " + checkpointFile + ": " + e.getMessage()
+                    + ", анализ с начала");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package ru.stepup.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Параллельный анализ файла: файл делится на диапазоны байтов по границам строк,
+// каждый диапазон разбирается отдельным потоком в свою статистику, затем статистики объединяются
+class ChunkedAnalyzer {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    private static final int CHUNKS_PER_THREAD = 4; // Мелкие фрагменты выравнивают нагрузку потоков
+
+    static Statistics analyze(String filePath, AnalyzeOptions options) throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            return analyze(channel, 0, channel.size(), options);
+        }
+    }
+
+    // Параллельный анализ диапазона [start, end), start и end - начала строк
+    static Statistics analyze(FileChannel channel, long start, long end, AnalyzeOptions options)
+            throws IOException, InterruptedException {
+        List<Long> bounds = splitIntoChunks(channel, start, end, options.getThreads() * CHUNKS_PER_THREAD);
+
+        ExecutorService executor = Executors.newFixedThreadPool(options.getThreads());
+        try {
+            List<Future<Statistics>> futures = new ArrayList<>();
+            for (int i = 0; i + 1 < bounds.size(); i++) {
+                long chunkStart = bounds.get(i);
+                long chunkEnd = bounds.get(i + 1);
+                futures.add(executor.submit(() -> analyzeRange(channel, chunkStart, chunkEnd, options,
+                        " (фрагмент с байта " + chunkStart + ")")));
+            }
+
+            Statistics statistics = new Statistics(options.isApproximate(), options.getMetrics());
+            for (Future<Statistics> future : futures) {
+                Statistics part = getResult(future);
+                statistics.combine(part);
+                if (options.getInstrumentation() != null) {
+                    options.getInstrumentation().merged(statistics, part);
+                }
+            }
+            return statistics;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Границы фрагментов: каждая граница стоит сразу после '\n', поэтому строки не разрезаются
+    static List<Long> splitIntoChunks(FileChannel channel, int chunkCount) throws IOException {
+        return splitIntoChunks(channel, 0, channel.size(), chunkCount);
+    }
+
+    static List<Long> splitIntoChunks(FileChannel channel, long start, long end, int chunkCount) throws IOException {
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, (end - start + chunkCount - 1) / chunkCount);
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(start);
+        long next = start + chunkSize;
+        while (next < end) {
+            long boundary = nextLineStart(channel, next);
+            if (boundary >= end) {
+                break;
+            }
+            bounds.add(boundary);
+            next = boundary + chunkSize;
+        }
+        bounds.add(end);
+        return bounds;
+    }
+
+    // Ближайшее начало строки не раньше position
+    static long nextLineStart(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long pos = position - 1;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, pos);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+    }
+
+    // Разбираем строки диапазона [start, end) в новую статистику
+    static Statistics analyzeRange(FileChannel channel, long start, long end, AnalyzeOptions options,
+                                   String location) throws IOException {
+        Statistics statistics = new Statistics(options.isApproximate(), options.getMetrics());
+        LineProcessor processor = new LineProcessor(statistics, options, location);
+        AnalysisMetrics instrumentation = options.getInstrumentation();
+        if (options.isMemoryMapped()) {
+            new MappedLineReader(instrumentation).readLines(channel, start, end, processor::processLine);
+            processor.finish();
+            return statistics;
+        }
+
+        LineSplitter splitter = new LineSplitter(processor::processLine);
+
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long pos = start;
+        while (pos < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(BUFFER_SIZE, end - pos));
+            long readStart = System.nanoTime();
+            int read = channel.read(buffer, pos);
+            if (read < 0) {
+                break;
+            }
+            if (instrumentation != null) {
+                instrumentation.recordRead(read, System.nanoTime() - readStart);
+            }
+            splitter.feed(buffer.array(), 0, read);
+            pos += read;
+        }
+        splitter.finish();
+        processor.finish();
+        return statistics;
+    }
+
+    // Достаём результат потока, пробрасывая исходное исключение. Общий для всех параллельных анализаторов
+    static <T> T getResult(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
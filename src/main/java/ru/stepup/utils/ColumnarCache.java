@@ -0,0 +1,484 @@
+package ru.stepup.utils;
+
+import ru.stepup.model.IpAddress;
+import ru.stepup.model.LogEntry;
+import ru.stepup.model.LogField;
+import ru.stepup.model.LogLine;
+import ru.stepup.model.ParseError;
+import ru.stepup.model.UserAgent;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Колоночный кэш разобранных записей лога: файл "<лог>.colcache" рядом с логом.
+// Первый анализ разбирает текст и сохраняет записи по столбцам: время (секунды эпохи и смещение
+// зоны), код и размер ответа - числами, путь, IP-адрес, referer и User-Agent - номерами в словарях.
+// Следующие анализы читают кэш через отображение в память и не разбирают текст: User-Agent,
+// домен referer и IP-адрес разбираются один раз на каждое уникальное значение словаря.
+// Кэш пересоздаётся, если у лога изменились размер или время изменения
+class ColumnarCache {
+    static final String SUFFIX = ".colcache";
+
+    private static final int MAGIC = 0x4C4F4743; // "LOGC"
+    private static final int VERSION = 2; // 2 - ошибки разбора по причинам после словарей
+    private static final int HEADER_SIZE = 32;
+    private static final int BLOCK_ROWS = 1 << 18; // Строк в одном отображаемом блоке столбцов
+
+    // Столбцы по порядку в файле и размер значения в байтах
+    private static final int EPOCH = 0;
+    private static final int OFFSET = 1;
+    private static final int CODE = 2;
+    private static final int SIZE = 3;
+    private static final int PATH = 4;
+    private static final int IP = 5;
+    private static final int REFERER = 6;
+    private static final int AGENT = 7;
+    private static final int[] WIDTHS = {8, 4, 4, 4, 4, 4, 4, 4};
+    // Поле строки лога для каждого столбца: столбцы полей, не нужных метрикам, не читаются.
+    // Код ответа, как и при разборе текста, есть всегда: по нему считаются ошибки и классы кодов
+    private static final LogField[] COLUMN_FIELDS = {LogField.TIME, LogField.TIME, LogField.RESPONSE_CODE,
+            LogField.RESPONSE_SIZE, LogField.PATH, LogField.IP_ADDRESS, LogField.REFERER, LogField.USER_AGENT};
+
+    static Path cachePath(Path source) {
+        return source.resolveSibling(source.getFileName() + SUFFIX);
+    }
+
+    // Статистика по логу через кэш: готовый кэш читается, иначе создаётся заново.
+    // Если кэш не удалось записать (например, папка только для чтения), лог разбирается как обычно
+    static Statistics analyze(Path source, AnalyzeOptions options) throws IOException, InterruptedException {
+        Path cache = cachePath(source);
+        AnalysisMetrics instrumentation = options.getInstrumentation();
+        boolean built = false;
+        if (!isValid(cache, source)) {
+            try {
+                build(source, cache, options.getQuarantine(), instrumentation);
+                built = true;
+            } catch (IOException e) {
+                System.err.println("Не удалось создать кэш " + cache + ": " + e.getMessage());
+                return Analyze.parseStatistics(source.toString(), options);
+            }
+        }
+        Statistics statistics = read(cache, options);
+        if (!built && instrumentation != null) {
+            // Текст лога не разбирался: в замеры попадают итоги из кэша
+            instrumentation.addBytes(Files.size(source));
+            instrumentation.addLines(statistics.getLineCount(), statistics.getEntryCount());
+        }
+        return statistics;
+    }
+
+    // Кэш существует, создан этой версией программы и соответствует текущему логу
+    static boolean isValid(Path cache, Path source) throws IOException {
+        if (!Files.isRegularFile(cache)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (channel.read(header, 0) != HEADER_SIZE) {
+                return false;
+            }
+            return header.getInt(0) == MAGIC && header.getInt(4) == VERSION
+                    && header.getLong(8) == Files.size(source)
+                    && header.getLong(16) == Files.getLastModifiedTime(source).toMillis();
+        }
+    }
+
+    // Разбираем лог и записываем кэш. Столбцы пишутся во временные файлы по мере разбора,
+    // в памяти остаются только словари; готовый кэш заменяет старый одним переименованием.
+    // Неразобранные строки попадают в карантин только здесь: в кэше их нет, есть только счётчики
+    static void build(Path source, Path cache, QuarantineWriter quarantine, AnalysisMetrics instrumentation)
+            throws IOException {
+        long size = Files.size(source);
+        long modified = Files.getLastModifiedTime(source).toMillis();
+
+        Builder builder = new Builder(cache);
+        try {
+            builder.open();
+            LineProcessor processor = new LineProcessor(builder, new AnalyzeOptions()
+                    .setParserMode(ParserMode.BYTES).setQuarantine(quarantine).setInstrumentation(instrumentation), "");
+            LineSplitter splitter = new LineSplitter(processor::processLine);
+            try (InputStream in = PipelinedAnalyzer.open(source, GzipAnalyzer.isGzip(source), instrumentation)) {
+                byte[] buffer = new byte[1 << 20];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    splitter.feed(buffer, 0, read);
+                }
+            }
+            splitter.finish();
+            processor.finish();
+            builder.write(size, modified);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            builder.deleteTemporaryFiles();
+        }
+    }
+
+    // Накопитель записей для кэша: столбцы во временных файлах, словари в памяти
+    private static final class Builder implements LineProcessor.EntrySink {
+        private final Path cache;
+        private final Path[] columnFiles = new Path[WIDTHS.length];
+        private final DataOutputStream[] columns = new DataOutputStream[WIDTHS.length];
+        private final Dictionary paths = new Dictionary();
+        private final Dictionary ips = new Dictionary();
+        private final Dictionary referers = new Dictionary();
+        private final Dictionary agents = new Dictionary();
+        private int rows;
+        private int parseErrors;
+        private final int[] parseErrorCounts = new int[ParseError.values().length];
+
+        Builder(Path cache) {
+            this.cache = cache;
+        }
+
+        void open() throws IOException {
+            for (int i = 0; i < WIDTHS.length; i++) {
+                columnFiles[i] = Files.createTempFile(cache.toAbsolutePath().getParent(), "column", ".tmp");
+                columns[i] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(columnFiles[i]), 1 << 16));
+            }
+        }
+
+        @Override
+        public void addEntry(LogEntry entry) {
+            int offsetSeconds = (int) (entry.getTime().toEpochSecond(ZoneOffset.UTC) - entry.getEpochSecond());
+            addRow(entry.getEpochSecond(), offsetSeconds, entry.getResponseCode(), (int) entry.getResponseSize(),
+                    entry.getPath(), entry.getIpAddr(), entry.getReferer(), entry.getAgent().getAgent());
+        }
+
+        @Override
+        public void addEntry(LogLine line) {
+            addRow(line.getEpochSecond(), line.getOffsetSeconds(), line.getResponseCode(), (int) line.getResponseSize(),
+                    line.getPath(), line.getIpAddr(), line.getReferer(), line.getAgent().getAgent());
+        }
+
+        @Override
+        public void addParseError(ParseError reason) {
+            parseErrors++;
+            parseErrorCounts[reason.ordinal()]++;
+        }
+
+        private void addRow(long epochSecond, int offsetSeconds, int code, int size, String path, String ip,
+                            String referer, String agent) {
+            if (rows == Integer.MAX_VALUE) {
+                throw new IllegalStateException("Слишком много записей для кэша");
+            }
+            try {
+                columns[EPOCH].writeLong(epochSecond);
+                columns[OFFSET].writeInt(offsetSeconds);
+                columns[CODE].writeInt(code);
+                columns[SIZE].writeInt(size);
+                columns[PATH].writeInt(paths.idOf(path));
+                columns[IP].writeInt(ips.idOf(ip));
+                columns[REFERER].writeInt(referers.idOf(referer));
+                columns[AGENT].writeInt(agents.idOf(agent));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            rows++;
+        }
+
+        // Заголовок, столбцы (каждый выровнен на 8 байт) и словари
+        void write(long sourceSize, long sourceModified) throws IOException {
+            for (DataOutputStream column : columns) {
+                column.close();
+            }
+            Path temporary = Files.createTempFile(cache.toAbsolutePath().getParent(), "cache", ".tmp");
+            try {
+                writeFile(temporary, sourceSize, sourceModified);
+                Files.move(temporary, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+
+        private void writeFile(Path temporary, long sourceSize, long sourceModified) throws IOException {
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putLong(sourceSize).putLong(sourceModified)
+                        .putInt(rows).putInt(parseErrors).flip();
+                out.write(header);
+
+                for (int i = 0; i < WIDTHS.length; i++) {
+                    try (FileChannel column = FileChannel.open(columnFiles[i], StandardOpenOption.READ)) {
+                        long position = 0;
+                        while (position < column.size()) {
+                            position += column.transferTo(position, column.size() - position, out);
+                        }
+                    }
+                    out.write(ByteBuffer.allocate(padding(out.position())));
+                }
+
+                for (Dictionary dictionary : List.of(paths, ips, referers, agents)) {
+                    dictionary.write(out);
+                }
+                writeParseErrors(out);
+            }
+        }
+
+        // Ненулевые счётчики ошибок разбора: словарь имён причин и счётчики в том же порядке
+        private void writeParseErrors(FileChannel out) throws IOException {
+            Dictionary reasons = new Dictionary();
+            ByteBuffer counts = ByteBuffer.allocate(4 * parseErrorCounts.length);
+            for (ParseError reason : ParseError.values()) {
+                if (parseErrorCounts[reason.ordinal()] > 0) {
+                    reasons.idOf(reason.name());
+                    counts.putInt(parseErrorCounts[reason.ordinal()]);
+                }
+            }
+            reasons.write(out);
+            out.write(counts.flip());
+        }
+
+        void deleteTemporaryFiles() throws IOException {
+            for (int i = 0; i < WIDTHS.length; i++) {
+                if (columns[i] != null) {
+                    columns[i].close();
+                }
+                if (columnFiles[i] != null) {
+                    Files.deleteIfExists(columnFiles[i]);
+                }
+            }
+        }
+    }
+
+    // Словарь строк: номер по строке при записи. В файле - число строк, смещения концов строк
+    // в UTF-8 и сами байты строк
+    private static final class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int idOf(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        void write(FileChannel out) throws IOException {
+            List<byte[]> encoded = new ArrayList<>(values.size());
+            ByteBuffer ends = ByteBuffer.allocate(4 + 4 * values.size());
+            ends.putInt(values.size());
+            int end = 0;
+            for (String value : values) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                encoded.add(bytes);
+                end += bytes.length;
+                ends.putInt(end);
+            }
+            out.write(ends.flip());
+            for (byte[] bytes : encoded) {
+                out.write(ByteBuffer.wrap(bytes));
+            }
+        }
+    }
+
+    private static int padding(long position) {
+        return (int) ((8 - position % 8) % 8);
+    }
+
+    // Значения словарей, разобранные один раз на каждое уникальное значение
+    private static final class Dictionaries {
+        private String[] paths;
+        private String[] ips;
+        private IpAddress.Kind[] ipKinds;
+        private long[] ipHigh; // IPv4 хранится в ipLow
+        private long[] ipLow;
+        private String[] refererDomains;
+        private UserAgent[] agents;
+        private int[] parseErrorCounts; // Ошибки разбора по ParseError.ordinal()
+    }
+
+    // Читаем кэш через отображение в память: строки делятся между потоками поровну,
+    // каждый поток копит свою статистику
+    static Statistics read(Path cache, AnalyzeOptions options) throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            int rows = header.getInt(24);
+
+            long[] columnStarts = new long[WIDTHS.length];
+            long position = HEADER_SIZE;
+            for (int i = 0; i < WIDTHS.length; i++) {
+                columnStarts[i] = position;
+                position += (long) rows * WIDTHS[i];
+                position += padding(position);
+            }
+            Set<LogField> fields = Metric.fieldsOf(options.getMetrics());
+            Dictionaries dictionaries = readDictionaries(channel, position, fields);
+
+            int threads = Math.max(1, Math.min(options.getThreads(), rows / BLOCK_ROWS + 1));
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Statistics>> futures = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    int from = (int) ((long) rows * i / threads);
+                    int to = (int) ((long) rows * (i + 1) / threads);
+                    futures.add(executor.submit(
+                            () -> readRows(channel, columnStarts, from, to, dictionaries, fields, options)));
+                }
+
+                // Объединяем в статистику первого потока: с одним потоком результат совпадает
+                // с последовательным разбором и в приблизительном режиме
+                Statistics statistics = ChunkedAnalyzer.getResult(futures.get(0));
+                for (int i = 1; i < futures.size(); i++) {
+                    statistics.combine(ChunkedAnalyzer.getResult(futures.get(i)));
+                }
+                for (ParseError reason : ParseError.values()) {
+                    statistics.addParseErrors(reason, dictionaries.parseErrorCounts[reason.ordinal()]);
+                }
+                return statistics;
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    // Словари читаются целиком (ошибки разбора лежат после них), но разбираются только
+    // значения полей, нужных метрикам
+    private static Dictionaries readDictionaries(FileChannel channel, long start, Set<LogField> fields)
+            throws IOException {
+        if (channel.size() - start > Integer.MAX_VALUE) {
+            throw new IOException("Словари кэша больше 2 ГБ");
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, channel.size() - start);
+
+        Dictionaries dictionaries = new Dictionaries();
+        dictionaries.paths = readStrings(buffer);
+        dictionaries.ips = readStrings(buffer);
+        String[] referers = readStrings(buffer);
+        String[] agents = readStrings(buffer);
+        String[] reasons = readStrings(buffer);
+        dictionaries.parseErrorCounts = new int[ParseError.values().length];
+        for (String reason : reasons) {
+            try {
+                dictionaries.parseErrorCounts[ParseError.valueOf(reason).ordinal()] = buffer.getInt();
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Неизвестная причина ошибки разбора в кэше: " + reason);
+            }
+        }
+
+        if (fields.contains(LogField.IP_ADDRESS)) {
+            parseIps(dictionaries);
+        }
+
+        if (fields.contains(LogField.REFERER)) {
+            dictionaries.refererDomains = new String[referers.length];
+            for (int i = 0; i < referers.length; i++) {
+                dictionaries.refererDomains[i] = RefererDomains.parse(referers[i]);
+            }
+        }
+
+        // User-Agent классифицируется при чтении, поэтому учитываются текущие токены ботов
+        if (fields.contains(LogField.USER_AGENT)) {
+            dictionaries.agents = new UserAgent[agents.length];
+            for (int i = 0; i < agents.length; i++) {
+                dictionaries.agents[i] = UserAgent.of(agents[i]);
+            }
+        }
+        return dictionaries;
+    }
+
+    private static void parseIps(Dictionaries dictionaries) {
+        int ipCount = dictionaries.ips.length;
+        dictionaries.ipKinds = new IpAddress.Kind[ipCount];
+        dictionaries.ipHigh = new long[ipCount];
+        dictionaries.ipLow = new long[ipCount];
+        IpAddress ip = new IpAddress();
+        for (int i = 0; i < ipCount; i++) {
+            String value = dictionaries.ips[i];
+            dictionaries.ipKinds[i] = ip.parse(value, 0, value.length());
+            dictionaries.ipHigh[i] = ip.getHigh();
+            dictionaries.ipLow[i] = ip.getKind() == IpAddress.Kind.IPV4 ? ip.getIpv4() : ip.getLow();
+        }
+    }
+
+    private static String[] readStrings(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        int[] ends = new int[count];
+        for (int i = 0; i < count; i++) {
+            ends[i] = buffer.getInt();
+        }
+        int base = buffer.position();
+        String[] values = new String[count];
+        byte[] bytes = new byte[0];
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            int length = ends[i] - start;
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            buffer.get(base + start, bytes, 0, length);
+            values[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            start = ends[i];
+        }
+        buffer.position(base + start);
+        return values;
+    }
+
+    // Строки [from, to) блоками по BLOCK_ROWS: каждый нужный столбец блока отображается отдельно,
+    // вместо ненужных полей в статистику передаются нули и null
+    private static Statistics readRows(FileChannel channel, long[] columnStarts, int from, int to,
+                                       Dictionaries dictionaries, Set<LogField> fields, AnalyzeOptions options)
+            throws IOException {
+        Statistics statistics = new Statistics(options.isApproximate(), options.getMetrics());
+        IpAddress ip = new IpAddress();
+        ByteBuffer[] columns = new ByteBuffer[WIDTHS.length];
+
+        for (int blockStart = from; blockStart < to; blockStart += BLOCK_ROWS) {
+            int count = Math.min(BLOCK_ROWS, to - blockStart);
+            for (int i = 0; i < WIDTHS.length; i++) {
+                columns[i] = i == CODE || fields.contains(COLUMN_FIELDS[i]) ? channel.map(FileChannel.MapMode.READ_ONLY,
+                        columnStarts[i] + (long) blockStart * WIDTHS[i], (long) count * WIDTHS[i]) : null;
+            }
+            ByteBuffer epochs = columns[EPOCH];
+            ByteBuffer offsets = columns[OFFSET];
+            ByteBuffer codes = columns[CODE];
+            ByteBuffer sizes = columns[SIZE];
+            ByteBuffer paths = columns[PATH];
+            ByteBuffer ips = columns[IP];
+            ByteBuffer referers = columns[REFERER];
+            ByteBuffer agents = columns[AGENT];
+
+            for (int row = 0; row < count; row++) {
+                String ipAddressString = null;
+                if (ips != null) {
+                    int ipId = ips.getInt(row * 4);
+                    ip.restore(dictionaries.ipKinds[ipId], (int) dictionaries.ipLow[ipId],
+                            dictionaries.ipHigh[ipId], dictionaries.ipLow[ipId]);
+                    ipAddressString = dictionaries.ips[ipId];
+                }
+                statistics.addEntry(sizes == null ? 0 : sizes.getInt(row * 4),
+                        epochs == null ? 0 : epochs.getLong(row * 8), offsets == null ? 0 : offsets.getInt(row * 4),
+                        codes.getInt(row * 4),
+                        paths == null ? null : dictionaries.paths[paths.getInt(row * 4)],
+                        referers == null ? null : dictionaries.refererDomains[referers.getInt(row * 4)],
+                        agents == null ? null : dictionaries.agents[agents.getInt(row * 4)],
+                        ip, ipAddressString);
+            }
+        }
+        return statistics;
+    }
+}
@@ -0,0 +1,205 @@
+package ru.stepup.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Разбор аргументов командной строки. Без путей в аргументах программа работает
+// в диалоговом режиме, с путями - анализирует их и завершается (удобно для cron)
+public class CommandLine {
+    public static final String USAGE = String.join("\n",
+            "Использование: java Main [параметры] [путь|папка|шаблон ...]",
+            "  --threads N       число потоков анализа (по умолчанию все ядра)",
+            "  --parser РЕЖИМ    способ разбора строк: CLASSIC, SINGLE_PASS, BYTES",
+            "  --mmap            читать файлы через отображение в память",
+            "  --pipeline        конвейер: чтение и разбор в разных потоках, сводка по этапам",
+            "  --cache           сохранить разобранные записи в <лог>.colcache и читать их оттуда",
+            "  --checkpoint      сохранять состояние в <лог>.checkpoint и продолжать с него",
+            "  --approximate     ограниченная память: уникальные значения и топы приблизительно",
+            "  --metrics СПИСОК  только эти разделы отчёта через запятую (по умолчанию all):",
+            "                    traffic, status, bots, pages, os, browsers, visits, peak,",
+            "                    time-series, referers, users; ненужные поля строк не разбираются",
+            "  --from ВРЕМЯ      только строки не раньше ВРЕМЕНИ, например 2023-10-10T14:00",
+            "  --to ВРЕМЯ        только строки раньше ВРЕМЕНИ; время как в логе, со смещением",
+            "                    (2023-10-10T14:00+03:00) - абсолютное; разбирается только часть файла",
+            "  --time-jitter С   на сколько секунд строки лога могут нарушать порядок (по умолчанию 60)",
+            "  --time-index      сохранять пробы поиска по времени в <лог>.timeindex",
+            "  --per-file        дополнительно вывести сводку по каждому файлу",
+            "  --bots ФАЙЛ       дополнительные токены ботов, по одному в строке",
+            "  --quarantine ФАЙЛ сохранять неразобранные строки с причиной ошибки в ФАЙЛ",
+            "  --quarantine-limit N  не больше N строк карантина на причину (по умолчанию 1000)",
+            "  --jmx             замеры хода анализа в JMX: ru.stepup:type=Analysis и type=StatisticsHeap",
+            "  --progress [С]    строка прогресса в stderr каждые С секунд (по умолчанию 5) и сводка замеров",
+            "  --follow ПУТЬ [С] следить за растущим логом, отчёт каждые С секунд (по умолчанию 10)",
+            "  --help            показать эту справку",
+            "Папки обходятся рекурсивно, шаблон вида 'logs/*/access-*.log' берётся в кавычки");
+
+    private final AnalyzeOptions options = new AnalyzeOptions()
+            .setThreads(Runtime.getRuntime().availableProcessors()); // Используем все ядра
+    private final List<String> paths = new ArrayList<>();
+    private boolean perFile;
+    private boolean help;
+    private String botsFile;
+    private String quarantineFile;
+    private int quarantineLimit = QuarantineWriter.DEFAULT_LIMIT_PER_REASON;
+    private String followPath;
+    private long followIntervalSeconds = 10;
+    private boolean jmx;
+    private long progressIntervalSeconds; // 0 - строка прогресса не выводится
+    private String from; // Границы интервала времени, null - не задана
+    private String to;
+    private Integer timeJitterSeconds; // null - допуск по умолчанию
+
+    // Ошибка в аргументах - IllegalArgumentException с понятным сообщением
+    public static CommandLine parse(String[] args) {
+        CommandLine commandLine = new CommandLine();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--threads" -> {
+                    int threads = parseNumber(arg, value(args, ++i, arg));
+                    if (threads < 1) {
+                        throw new IllegalArgumentException("Число потоков --threads должно быть не меньше 1: " + threads);
+                    }
+                    commandLine.options.setThreads(threads);
+                }
+                case "--parser" -> commandLine.options.setParserMode(parseMode(value(args, ++i, arg)));
+                case "--mmap" -> commandLine.options.setMemoryMapped(true);
+                case "--pipeline" -> commandLine.options.setPipelined(true);
+                case "--cache" -> commandLine.options.setCached(true);
+                case "--checkpoint" -> commandLine.options.setCheckpointed(true);
+                case "--approximate" -> commandLine.options.setApproximate(true);
+                case "--metrics" -> commandLine.options.setMetrics(Metric.parse(value(args, ++i, arg)));
+                case "--from" -> commandLine.from = value(args, ++i, arg);
+                case "--to" -> commandLine.to = value(args, ++i, arg);
+                case "--time-jitter" -> commandLine.timeJitterSeconds = parseNumber(arg, value(args, ++i, arg));
+                case "--time-index" -> commandLine.options.setTimeIndexed(true);
+                case "--per-file" -> commandLine.perFile = true;
+                case "--bots" -> commandLine.botsFile = value(args, ++i, arg);
+                case "--quarantine" -> commandLine.quarantineFile = value(args, ++i, arg);
+                case "--quarantine-limit" -> {
+                    commandLine.quarantineLimit = parseNumber(arg, value(args, ++i, arg));
+                    if (commandLine.quarantineLimit < 1) {
+                        throw new IllegalArgumentException("Лимит карантина должен быть положительным: "
+                                + commandLine.quarantineLimit);
+                    }
+                }
+                case "--follow" -> {
+                    commandLine.followPath = value(args, ++i, arg);
+                    // Необязательный интервал отчёта сразу после пути
+                    if (i + 1 < args.length && args[i + 1].matches("\\d+")) {
+                        commandLine.followIntervalSeconds = parseNumber(arg, args[++i]);
+                        if (commandLine.followIntervalSeconds < 1) {
+                            throw new IllegalArgumentException("Интервал отчёта --follow должен быть положительным: "
+                                    + commandLine.followIntervalSeconds);
+                        }
+                    }
+                }
+                case "--jmx" -> commandLine.jmx = true;
+                case "--progress" -> {
+                    commandLine.progressIntervalSeconds = 5;
+                    // Необязательный интервал в секундах сразу после параметра
+                    if (i + 1 < args.length && args[i + 1].matches("\\d+")) {
+                        commandLine.progressIntervalSeconds = parseNumber(arg, args[++i]);
+                        if (commandLine.progressIntervalSeconds < 1) {
+                            throw new IllegalArgumentException("Интервал прогресса должен быть положительным: "
+                                    + commandLine.progressIntervalSeconds);
+                        }
+                    }
+                }
+                case "--help", "-h" -> commandLine.help = true;
+                default -> {
+                    if (arg.startsWith("--")) {
+                        throw new IllegalArgumentException("Неизвестный параметр: " + arg);
+                    }
+                    commandLine.paths.add(arg);
+                }
+            }
+        }
+        if (commandLine.followPath != null && !commandLine.paths.isEmpty()) {
+            throw new IllegalArgumentException("--follow нельзя совмещать с анализом файлов");
+        }
+        if (commandLine.from != null || commandLine.to != null) {
+            // Кэш и контрольная точка хранят итоги по всему логу, слежение - по новым строкам
+            if (commandLine.options.isCached() || commandLine.options.isCheckpointed()
+                    || commandLine.followPath != null) {
+                throw new IllegalArgumentException("--from и --to нельзя совмещать с --cache, --checkpoint и --follow");
+            }
+            commandLine.options.setTimeRange(TimeRange.parse(commandLine.from, commandLine.to,
+                    commandLine.timeJitterSeconds != null ? commandLine.timeJitterSeconds
+                            : TimeRange.DEFAULT_JITTER_SECONDS));
+        } else if (commandLine.timeJitterSeconds != null || commandLine.options.isTimeIndexed()) {
+            throw new IllegalArgumentException("--time-jitter и --time-index используются только с --from или --to");
+        }
+        return commandLine;
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Не указано значение параметра " + option);
+        }
+        return args[index];
+    }
+
+    private static int parseNumber(String option, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Неверное число в параметре " + option + ": " + value);
+        }
+    }
+
+    private static ParserMode parseMode(String value) {
+        try {
+            return ParserMode.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неизвестный способ разбора: " + value);
+        }
+    }
+
+    public AnalyzeOptions getOptions() {
+        return options;
+    }
+
+    // Пути, папки и шаблоны для пакетного анализа; пусто - диалоговый режим
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    public boolean isPerFile() {
+        return perFile;
+    }
+
+    public boolean isHelp() {
+        return help;
+    }
+
+    public String getBotsFile() {
+        return botsFile;
+    }
+
+    // Файл карантина неразобранных строк, null - строки не сохраняются
+    public String getQuarantineFile() {
+        return quarantineFile;
+    }
+
+    public int getQuarantineLimit() {
+        return quarantineLimit;
+    }
+
+    public String getFollowPath() {
+        return followPath;
+    }
+
+    public long getFollowIntervalSeconds() {
+        return followIntervalSeconds;
+    }
+
+    public boolean isJmx() {
+        return jmx;
+    }
+
+    // Интервал строки прогресса в секундах, 0 - без прогресса
+    public long getProgressIntervalSeconds() {
+        return progressIntervalSeconds;
+    }
+}
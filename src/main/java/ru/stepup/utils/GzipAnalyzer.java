@@ -0,0 +1,331 @@
+package ru.stepup.utils;
+
+import ru.stepup.exceptions.VeryLongLine;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+// Анализ сжатых gzip логов без распаковки во временный файл. Формат определяется по сигнатуре.
+// Один поток: распаковка идёт в отдельном потоке и передаёт блоки разбору через очередь,
+// так что распаковка и разбор идут одновременно. Несколько потоков: многочленный архив
+// (склеенные .gz, pigz, bgzip) делится на группы членов, которые распаковываются и разбираются
+// параллельно; строки на стыке групп собираются после. Если члены не удалось разделить
+// (например, архив из одного члена), используется последовательная распаковка
+class GzipAnalyzer {
+    private static final int BLOCK_SIZE = 1 << 20;
+    private static final int QUEUED_BLOCKS = 4; // Распаковка опережает разбор не больше чем на 4 МБ
+    private static final long MIN_GROUP_SIZE = 4 << 20; // Минимум сжатых байтов на группу
+    private static final int SCAN_SIZE = 1 << 16;
+    private static final int TYPICAL_RATIO = 10; // Во сколько раз обычно сжимается текстовый лог
+
+    // Файл начинается с сигнатуры gzip
+    static boolean isGzip(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return in.read() == 0x1f && in.read() == 0x8b;
+        }
+    }
+
+    // Оценка размера распакованных данных по полю ISIZE в последних 4 байтах: это размер последнего
+    // члена по модулю 2^32. Если он меньше сжатого размера (многочленный архив или больше 4 ГБ),
+    // берём сжатый размер с типичной для логов степенью сжатия
+    static long estimateUncompressedSize(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 18) { // Заголовок и трейлер члена
+                return size;
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (trailer.hasRemaining()) {
+                if (channel.read(trailer, size - 4 + trailer.position()) < 0) {
+                    return size * TYPICAL_RATIO;
+                }
+            }
+            long isize = Integer.toUnsignedLong(trailer.getInt(0));
+            return isize >= size ? isize : size * TYPICAL_RATIO;
+        }
+    }
+
+    static Statistics analyze(Path path, AnalyzeOptions options) throws IOException, InterruptedException {
+        if (options.getThreads() > 1) {
+            Statistics statistics = analyzeMembers(path, options);
+            if (statistics != null) {
+                return statistics;
+            }
+        }
+        return analyzeStream(path, options);
+    }
+
+    // Блок распакованных данных; length == -1 - конец потока
+    private static final class Block {
+        private final byte[] data;
+        private final int length;
+
+        Block(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    // Последовательная распаковка в отдельном потоке с передачей блоков разбору
+    static Statistics analyzeStream(Path path, AnalyzeOptions options) throws IOException, InterruptedException {
+        BlockingQueue<Block> filled = new ArrayBlockingQueue<>(QUEUED_BLOCKS + 1);
+        BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(QUEUED_BLOCKS + 2);
+        for (int i = 0; i < QUEUED_BLOCKS + 2; i++) {
+            free.add(new byte[BLOCK_SIZE]);
+        }
+        Throwable[] failure = new Throwable[1];
+
+        Thread decompressor = new Thread(() -> {
+            try (InputStream in = open(path, options)) {
+                while (true) {
+                    byte[] buffer = free.take();
+                    int length = in.readNBytes(buffer, 0, buffer.length);
+                    if (length == 0) {
+                        break;
+                    }
+                    filled.put(new Block(buffer, length));
+                }
+            } catch (InterruptedException e) {
+                return; // Разбор прекращён
+            } catch (Throwable e) {
+                // Любая ошибка, не только IOException, передаётся разбору вместе с концом потока,
+                // иначе разбор ждал бы следующего блока вечно
+                failure[0] = e;
+            }
+            try {
+                filled.put(new Block(null, -1));
+            } catch (InterruptedException ignored) {
+                // Разбор прекращён
+            }
+        }, "gzip-decompressor");
+        decompressor.setDaemon(true);
+        decompressor.start();
+
+        Statistics statistics = new Statistics(options.isApproximate(), options.getMetrics());
+        LineProcessor processor = new LineProcessor(statistics, options, "");
+        LineSplitter splitter = new LineSplitter(processor::processLine);
+        try {
+            while (true) {
+                Block block = filled.take();
+                if (block.length == -1) {
+                    break;
+                }
+                splitter.feed(block.data, 0, block.length);
+                free.put(block.data);
+            }
+        } finally {
+            decompressor.interrupt();
+        }
+        decompressor.join();
+        if (failure[0] instanceof IOException) {
+            throw (IOException) failure[0];
+        } else if (failure[0] instanceof RuntimeException) {
+            throw (RuntimeException) failure[0];
+        } else if (failure[0] instanceof Error) {
+            throw (Error) failure[0];
+        }
+        splitter.finish();
+        processor.finish();
+        return statistics;
+    }
+
+    // Распаковка и разбор в вызывающем потоке. Для пула BatchAnalyzer, где параллельно идут разные файлы:
+    // поток пула занят делом, а не ждёт очереди, и не заводит для каждого файла поток распаковки
+    static Statistics analyzeInline(Path path, AnalyzeOptions options) throws IOException {
+        Statistics statistics = new Statistics(options.isApproximate(), options.getMetrics());
+        LineProcessor processor = new LineProcessor(statistics, options, "");
+        LineSplitter splitter = new LineSplitter(processor::processLine);
+        byte[] buffer = new byte[BLOCK_SIZE];
+        try (InputStream in = open(path, options)) {
+            int length;
+            while ((length = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+                splitter.feed(buffer, 0, length);
+            }
+        }
+        splitter.finish();
+        processor.finish();
+        return statistics;
+    }
+
+    // Распакованные данные файла; с замерами считаются прочитанные сжатые байты
+    private static InputStream open(Path path, AnalyzeOptions options) throws IOException {
+        return new GZIPInputStream(new BufferedInputStream(InstrumentedInputStream.wrap(
+                Files.newInputStream(path), options.getInstrumentation()), 1 << 16), 1 << 16);
+    }
+
+    // Результат группы членов: статистика, начало первой строки группы (до первого конца строки)
+    // и разделитель строк, в котором осталась незаконченная последняя строка группы
+    private static final class Group {
+        private final long start;
+        private final long limit;
+        private final Statistics statistics;
+        private final LineProcessor processor;
+        private final LineSplitter splitter;
+        private final byte[] head = new byte[LineSplitter.MAX_LINE_BYTES + 2];
+        private int headLength;
+        private boolean headComplete; // Встретился конец строки
+        private long end; // Где закончился последний член группы
+
+        Group(long start, long limit, AnalyzeOptions options) {
+            this.start = start;
+            this.limit = limit;
+            this.statistics = new Statistics(options.isApproximate(), options.getMetrics());
+            this.processor = new LineProcessor(statistics, options, " (сжатый фрагмент с байта " + start + ")");
+            this.splitter = new LineSplitter(processor::processLine);
+        }
+
+        // Первая группа начинается с начала строки, в остальных начало до конца строки
+        // откладывается: это продолжение строки из предыдущей группы
+        void accept(byte[] buffer, int offset, int length) {
+            if (start == 0 || headComplete) {
+                splitter.feed(buffer, offset, length);
+                return;
+            }
+            int pos = offset;
+            int end = offset + length;
+            while (pos < end && !headComplete) {
+                byte b = buffer[pos++];
+                if (headLength == head.length) {
+                    throw new VeryLongLine("Длина строки превышает 1024 символа");
+                }
+                head[headLength++] = b;
+                if (b == '\n' || b == '\r') {
+                    headComplete = true;
+                    if (b == '\r') {
+                        splitter.skipNextLineFeed();
+                    }
+                }
+            }
+            if (pos < end) {
+                splitter.feed(buffer, pos, end - pos);
+            }
+        }
+    }
+
+    // Параллельный разбор групп членов. null, если архив нельзя разделить на группы
+    private static Statistics analyzeMembers(Path path, AnalyzeOptions options) throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<Long> starts = findGroupStarts(channel, options.getThreads() * 4);
+            if (starts.size() < 2) {
+                return null;
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(options.getThreads());
+            try {
+                List<Future<Group>> futures = new ArrayList<>();
+                for (int i = 0; i < starts.size(); i++) {
+                    long start = starts.get(i);
+                    long limit = i + 1 < starts.size() ? starts.get(i + 1) : Long.MAX_VALUE;
+                    futures.add(executor.submit(() -> {
+                        Group group = new Group(start, limit, options);
+                        try (GzipMemberReader reader = new GzipMemberReader(channel)) {
+                            group.end = reader.inflateMembers(start, limit, group::accept);
+                        }
+                        if (options.getInstrumentation() != null) {
+                            // Чтение, распаковка и разбор группы идут вперемешку, поэтому
+                            // задержка чтения не замеряется, учитываются только сжатые байты
+                            options.getInstrumentation().addBytes(group.end - start);
+                        }
+                        return group;
+                    }));
+                }
+
+                List<Group> groups = new ArrayList<>();
+                for (Future<Group> future : futures) {
+                    Group group;
+                    try {
+                        group = future.get();
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof ZipException) {
+                            return null; // Найденная граница оказалась ложной
+                        }
+                        if (e.getCause() instanceof RuntimeException) {
+                            throw (RuntimeException) e.getCause();
+                        }
+                        throw new IOException(e.getCause());
+                    }
+                    // Члены групп должны стыковаться без пропусков и наложений
+                    if (group.limit != Long.MAX_VALUE && group.end != group.limit) {
+                        return null;
+                    }
+                    groups.add(group);
+                }
+
+                // Дописываем строки на стыках: незаконченная строка продолжается в начале следующей группы
+                LineSplitter current = groups.get(0).splitter;
+                Statistics statistics = new Statistics(options.isApproximate(), options.getMetrics());
+                for (int i = 1; i < groups.size(); i++) {
+                    Group group = groups.get(i);
+                    current.feed(group.head, 0, group.headLength);
+                    if (group.headComplete) {
+                        current = group.splitter;
+                    }
+                }
+                current.finish();
+                for (Group group : groups) {
+                    group.processor.finish();
+                    statistics.combine(group.statistics);
+                    if (options.getInstrumentation() != null) {
+                        options.getInstrumentation().merged(statistics, group.statistics);
+                    }
+                }
+                return statistics;
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    // Начала групп: от равномерно расставленных точек ищем ближайший следующий заголовок члена
+    private static List<Long> findGroupStarts(FileChannel channel, int groupCount) throws IOException {
+        long size = channel.size();
+        long step = Math.max(MIN_GROUP_SIZE, size / groupCount);
+        TreeSet<Long> starts = new TreeSet<>();
+        starts.add(0L);
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_SIZE + 10);
+        for (long target = step; target < size; target += step) {
+            long found = findMemberStart(channel, buffer, target, Math.min(size, target + step));
+            if (found != -1) {
+                starts.add(found);
+            }
+        }
+        return new ArrayList<>(starts);
+    }
+
+    // Первый похожий на заголовок члена gzip байт в [from, to) или -1
+    private static long findMemberStart(FileChannel channel, ByteBuffer buffer, long from, long to) throws IOException {
+        for (long pos = from; pos < to; pos += SCAN_SIZE) {
+            buffer.clear();
+            int read = channel.read(buffer, pos);
+            if (read <= 0) {
+                return -1;
+            }
+            buffer.flip();
+            int scanEnd = (int) Math.min(Math.min(read, SCAN_SIZE), to - pos);
+            for (int i = 0; i < scanEnd; i++) {
+                if (buffer.get(i) == 0x1f && GzipMemberReader.isMemberStart(buffer, i)) {
+                    return pos + i;
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,185 @@
+package ru.stepup.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+// Чтение подряд идущих членов gzip (RFC 1952) из произвольного места файла.
+// В отличие от GZIPInputStream начинает с заданного смещения и сообщает, где закончился
+// последний прочитанный член, поэтому несколько экземпляров могут распаковывать разные
+// части многочленного архива параллельно. Как и GZIPInputStream, закрывается, чтобы сразу освободить
+// память zlib: иначе её вернёт только Cleaner после сборки мусора
+class GzipMemberReader implements Closeable {
+    private static final int INPUT_SIZE = 1 << 18;
+    private static final int OUTPUT_SIZE = 1 << 20;
+
+    // Флаги заголовка
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    // Получатель распакованных байтов
+    interface Sink {
+        void accept(byte[] buffer, int offset, int length);
+    }
+
+    private final FileChannel channel;
+    private final long size;
+    private final ByteBuffer input = ByteBuffer.allocate(INPUT_SIZE);
+    private long inputStart; // Позиция в файле первого байта input
+    private final byte[] output = new byte[OUTPUT_SIZE];
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+
+    GzipMemberReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        input.limit(0);
+    }
+
+    // Канал не закрываем: он общий для всех групп архива
+    @Override
+    public void close() {
+        inflater.end();
+    }
+
+    // Похоже ли на начало члена gzip: сигнатура, метод deflate, допустимые флаги, XFL и OS.
+    // Случайное совпадение внутри сжатых данных практически исключено, но не невозможно,
+    // поэтому вызывающий код всё равно проверяет, что члены стыкуются
+    static boolean isMemberStart(ByteBuffer buffer, int pos) {
+        if (pos + 10 > buffer.limit()) {
+            return false;
+        }
+        int xfl = buffer.get(pos + 8) & 0xFF;
+        int os = buffer.get(pos + 9) & 0xFF;
+        return (buffer.get(pos) & 0xFF) == 0x1f && (buffer.get(pos + 1) & 0xFF) == 0x8b
+                && buffer.get(pos + 2) == 8 && (buffer.get(pos + 3) & 0xE0) == 0
+                && (xfl == 0 || xfl == 2 || xfl == 4) && (os <= 13 || os == 255);
+    }
+
+    // Распаковываем члены, начиная с позиции start, пока очередной член не начнётся на limit
+    // или дальше (или не кончится файл). Возвращаем позицию сразу после последнего члена.
+    // Байты после последнего члена, не похожие на заголовок, игнорируются, как в GZIPInputStream
+    long inflateMembers(long start, long limit, Sink sink) throws IOException {
+        long pos = start;
+        boolean first = true;
+        while (pos < limit && pos < size) {
+            long dataStart = readHeader(pos, first);
+            if (dataStart == -1) {
+                break;
+            }
+            pos = inflateMember(dataStart, sink);
+            first = false;
+        }
+        return pos;
+    }
+
+    // Разбираем заголовок, возвращаем начало сжатых данных или -1, если заголовка нет
+    private long readHeader(long pos, boolean required) throws IOException {
+        if (!fill(pos, 10) || !isMemberStart(input, (int) (pos - inputStart))) {
+            if (required) {
+                throw new ZipException("Нет заголовка gzip на позиции " + pos);
+            }
+            return -1;
+        }
+        int flags = byteAt(pos + 3);
+        long next = pos + 10;
+        if ((flags & FEXTRA) != 0) {
+            next += 2 + (byteAt(next) | byteAt(next + 1) << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            next = skipZeroTerminated(next);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            next = skipZeroTerminated(next);
+        }
+        if ((flags & FHCRC) != 0) {
+            next += 2;
+        }
+        return next;
+    }
+
+    // Распаковываем один член, проверяем CRC32 и длину, возвращаем позицию после него
+    private long inflateMember(long dataStart, Sink sink) throws IOException {
+        inflater.reset();
+        crc.reset();
+        long inflated = 0;
+
+        long pos = dataStart;
+        fill(pos, 1);
+        int offset = (int) (pos - inputStart);
+        inflater.setInput(input.array(), offset, input.limit() - offset);
+        try {
+            while (!inflater.finished()) {
+                int count = inflater.inflate(output);
+                if (count > 0) {
+                    crc.update(output, 0, count);
+                    inflated += count;
+                    sink.accept(output, 0, count);
+                } else if (inflater.needsInput()) {
+                    long next = inputStart + input.limit();
+                    if (!fill(next, 1)) {
+                        throw new ZipException("Неожиданный конец файла gzip");
+                    }
+                    inflater.setInput(input.array(), (int) (next - inputStart), (int) (inputStart + input.limit() - next));
+                } else if (inflater.needsDictionary()) {
+                    throw new ZipException("Неподдерживаемый поток deflate со словарём");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Повреждённые данные gzip: " + e.getMessage());
+        }
+
+        long trailer = inputStart + input.limit() - inflater.getRemaining();
+        if (!fill(trailer, 8)) {
+            throw new ZipException("Неожиданный конец файла gzip");
+        }
+        long expectedCrc = readInt(trailer);
+        long expectedSize = readInt(trailer + 4);
+        if (expectedCrc != crc.getValue() || expectedSize != (inflated & 0xFFFFFFFFL)) {
+            throw new ZipException("Ошибка контрольной суммы gzip");
+        }
+        return trailer + 8;
+    }
+
+    private long skipZeroTerminated(long pos) throws IOException {
+        while (byteAt(pos) != 0) {
+            pos++;
+        }
+        return pos + 1;
+    }
+
+    private long readInt(long pos) throws IOException {
+        return (long) byteAt(pos) | (long) byteAt(pos + 1) << 8 | (long) byteAt(pos + 2) << 16 | (long) byteAt(pos + 3) << 24;
+    }
+
+    private int byteAt(long pos) throws IOException {
+        if (!fill(pos, 1)) {
+            throw new ZipException("Неожиданный конец файла gzip");
+        }
+        return input.get((int) (pos - inputStart)) & 0xFF;
+    }
+
+    // Добиваемся, чтобы input содержал байты [pos, pos + count). false, если файл кончился раньше
+    private boolean fill(long pos, int count) throws IOException {
+        if (pos >= inputStart && pos + count <= inputStart + input.limit()) {
+            return true;
+        }
+        input.clear();
+        inputStart = pos;
+        while (input.hasRemaining()) {
+            int read = channel.read(input, inputStart + input.position());
+            if (read <= 0) {
+                break;
+            }
+        }
+        input.flip();
+        return input.limit() >= count;
+    }
+}
@@ -0,0 +1,57 @@
+package ru.stepup.utils;
+
+import java.util.Collection;
+
+// Оценка памяти, занятой структурами статистики, для 64-битной JVM со сжатыми ссылками:
+// заголовок объекта 12 байт, массива 16 байт, ссылка 4 байта, выравнивание по 8 байт.
+// Строки считаются в Latin-1 (байт на символ), как большинство строк access-логов
+final class HeapEstimate {
+    static final int OBJECT_HEADER = 12;
+    static final int ARRAY_HEADER = 16;
+    static final int REFERENCE = 4;
+    private static final int HASH_MAP = 48; // Сам объект HashMap без таблицы
+    private static final int HASH_MAP_NODE = 32; // hash, key, value, next
+    private static final int STRING = 24; // Объект String без массива символов
+    private static final int INTEGER = 16;
+
+    private HeapEstimate() {
+    }
+
+    static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    static long array(int elementBytes, int length) {
+        return align(ARRAY_HEADER + (long) elementBytes * length);
+    }
+
+    static long string(String value) {
+        return STRING + array(1, value.length());
+    }
+
+    // Память всех строк коллекции
+    static long strings(Collection<String> values) {
+        long bytes = 0;
+        for (String value : values) {
+            bytes += string(value);
+        }
+        return bytes;
+    }
+
+    // HashSet из size строк, stringBytes - память самих строк: HashSet поверх HashMap, значения - общий объект
+    static long stringSet(int size, long stringBytes) {
+        return align(OBJECT_HEADER + REFERENCE) + hashMap(size) + stringBytes;
+    }
+
+    // HashMap строка -> счётчик из size ключей, keyBytes - память ключей; маленькие Integer общие,
+    // но счётчики посещений обычно больше
+    static long stringIntMap(int size, long keyBytes) {
+        return hashMap(size) + (long) INTEGER * size + keyBytes;
+    }
+
+    // Таблица и узлы HashMap без ключей и значений: таблица растёт степенями двойки при заполнении 0.75
+    static long hashMap(int size) {
+        int capacity = Integer.highestOneBit(Math.max(1, (int) Math.ceil(size / 0.75) - 1)) << 1;
+        return HASH_MAP + array(REFERENCE, capacity) + (long) HASH_MAP_NODE * size;
+    }
+}
@@ -0,0 +1,139 @@
+package ru.stepup.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Оценка числа уникальных элементов (HyperLogLog) в фиксированной памяти:
+// 2^precision регистров по одному байту. Стандартная ошибка оценки 1.04 / sqrt(2^precision),
+// для precision = 14 это 16 КБ памяти и около 0.8% ошибки при любом числе элементов.
+// Оценки можно объединять: объединение равно оценке по объединённым данным
+class HyperLogLog {
+    static final int DEFAULT_PRECISION = 14;
+
+    private final int precision;
+    private final byte[] registers;
+
+    HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("Точность HyperLogLog должна быть от 4 до 18: " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    void add(CharSequence value) {
+        addHash(hash(value));
+    }
+
+    void add(long value) {
+        addHash(mix(value));
+    }
+
+    void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // Позиция первой единицы в оставшихся битах; добавленная единица ограничивает ранг
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+
+        // Поправка для малых значений: линейный подсчёт по пустым регистрам
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Нельзя объединить HyperLogLog разной точности");
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    // Очищаем регистры для повторного использования
+    void clear() {
+        Arrays.fill(registers, (byte) 0);
+    }
+
+    int getPrecision() {
+        return precision;
+    }
+
+    // Двоичное состояние: точность и регистры
+    void writeTo(DataOutput out) throws IOException {
+        out.writeByte(precision);
+        out.write(registers);
+    }
+
+    static HyperLogLog readFrom(DataInput in) throws IOException {
+        HyperLogLog result;
+        try {
+            result = new HyperLogLog(in.readUnsignedByte());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Повреждённое состояние HyperLogLog: " + e.getMessage());
+        }
+        in.readFully(result.registers);
+        return result;
+    }
+
+    // Память оценки: объект и массив регистров
+    long estimateHeapBytes() {
+        return HeapEstimate.align(HeapEstimate.OBJECT_HEADER + 4 + HeapEstimate.REFERENCE)
+                + HeapEstimate.array(1, registers.length);
+    }
+
+    // Стандартная относительная ошибка оценки
+    double standardError() {
+        return standardError(precision);
+    }
+
+    static double standardError(int precision) {
+        return 1.04 / Math.sqrt(1 << precision);
+    }
+
+    // 64-битный хеш строки: FNV-1a по символам с финальным перемешиванием
+    static long hash(CharSequence value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    // Финальное перемешивание MurmurHash3
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,45 @@
+package ru.stepup.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Поток байтов файла, который сообщает замерам каждый вызов чтения: сколько байтов прочитано
+// и за какое время. Оборачивает сам файл (для gzip - сжатые байты), поэтому прогресс
+// считается по размеру файла на диске
+class InstrumentedInputStream extends FilterInputStream {
+    private final AnalysisMetrics instrumentation;
+
+    InstrumentedInputStream(InputStream in, AnalysisMetrics instrumentation) {
+        super(in);
+        this.instrumentation = instrumentation;
+    }
+
+    // Файл без обёртки, если замеры выключены
+    static InputStream wrap(InputStream in, AnalysisMetrics instrumentation) {
+        return instrumentation == null ? in : new InstrumentedInputStream(in, instrumentation);
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        int b = in.read();
+        instrumentation.recordRead(b < 0 ? 0 : 1, System.nanoTime() - start);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        long start = System.nanoTime();
+        int read = in.read(buffer, offset, length);
+        instrumentation.recordRead(Math.max(0, read), System.nanoTime() - start);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(n);
+        instrumentation.addBytes(skipped);
+        return skipped;
+    }
+}
@@ -0,0 +1,111 @@
+package ru.stepup.utils;
+
+// Счётчики int -> int на открытой адресации без упаковки ключей и значений (например, IPv4 -> посещения).
+// Значения - положительные счётчики, поэтому нулевое значение означает пустую ячейку
+class IntIntHashMap {
+    private static final int INITIAL_CAPACITY = 16;
+
+    interface Consumer {
+        void accept(int key, int value);
+    }
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    IntIntHashMap() {
+        keys = new int[INITIAL_CAPACITY];
+        values = new int[INITIAL_CAPACITY];
+        mask = INITIAL_CAPACITY - 1;
+    }
+
+    // Прибавляем delta (> 0) к счётчику ключа, возвращаем новое значение
+    int add(int key, int delta) {
+        int index = indexOf(key);
+        if (values[index] == 0) {
+            keys[index] = key;
+            values[index] = delta;
+            if (++size > (mask + 1) * 3 / 4) {
+                grow();
+            }
+            return delta;
+        }
+        return values[index] += delta;
+    }
+
+    int increment(int key) {
+        return add(key, 1);
+    }
+
+    int get(int key) {
+        return values[indexOf(key)];
+    }
+
+    // Память карты: объект и два массива
+    long estimateHeapBytes() {
+        return HeapEstimate.align(HeapEstimate.OBJECT_HEADER + 2 * HeapEstimate.REFERENCE + 8)
+                + HeapEstimate.array(4, keys.length) + HeapEstimate.array(4, values.length);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Максимальное значение, 0 для пустой карты
+    int maxValue() {
+        int max = 0;
+        for (int value : values) {
+            if (value > max) {
+                max = value;
+            }
+        }
+        return max;
+    }
+
+    void forEach(Consumer consumer) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != 0) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    // Прибавляем все счётчики другой карты
+    void addAll(IntIntHashMap other) {
+        other.forEach(this::add);
+    }
+
+    // Ячейка с ключом или первая пустая ячейка на пути поиска
+    private int indexOf(int key) {
+        int index = hash(key) & mask;
+        while (values[index] != 0 && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != 0) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package ru.stepup.utils;
+
+import ru.stepup.exceptions.VeryLongLine;
+import ru.stepup.model.LogEntry;
+import ru.stepup.model.LogField;
+import ru.stepup.model.LogLine;
+import ru.stepup.model.ParseError;
+import ru.stepup.model.ParseFailure;
+import ru.stepup.model.TimestampDecoder;
+
+import java.nio.charset.Charset;
+import java.time.ZoneOffset;
+import java.util.Set;
+import java.util.function.Supplier;
+
+// Обработка строк лога одним потоком: проверка длины, разбор и добавление в статистику.
+// У каждого потока свой экземпляр со своей статистикой. С замерами строки считаются локально
+// и передаются в AnalysisMetrics пачками; после последней строки нужно вызвать finish().
+// Путь строки с замерами и без один и тот же: замеры добавляют только проверки instrumentation.
+// С интервалом времени строки вне интервала отбрасываются: они не считаются ни записями, ни ошибками.
+// Строка с ошибкой разбора относится к интервалу по своей собственной метке времени, а строка без
+// читаемой метки - не относится: так итог не зависит от того, прочитан файл целиком (gzip, конвейер)
+// или только часть, найденная поиском по времени, и от деления на фрагменты.
+// Строка длиннее MAX_LINE_LENGTH прерывает анализ (VeryLongLine), а с setSkipLongLines - считается
+// ошибкой разбора LINE_TOO_LONG: так слежение за логом не останавливается из-за одной строки
+class LineProcessor {
+    static final int MAX_LINE_LENGTH = 1024;
+    private static final int FLUSH_LINES = 4096; // Строк в пачке счётчиков замеров
+
+    // Получатель разобранных строк: статистика или построитель колоночного кэша
+    interface EntrySink {
+        void addEntry(LogEntry entry);
+
+        void addEntry(LogLine line);
+
+        void addParseError(ParseError reason);
+    }
+
+    private final EntrySink statistics;
+    private final ParserMode parserMode;
+    private final Charset charset = Charset.defaultCharset(); // Та же кодировка, что у FileReader
+    private final String location; // Описание части файла для записей карантина
+    private final QuarantineWriter quarantine; // null - неразобранные строки не сохраняются
+    private final ParseFailure failure = new ParseFailure(); // Причина последней ошибки разбора
+    private final Set<LogField> fields; // Поля, нужные выбранным метрикам
+    private final AnalysisMetrics instrumentation; // null - без замеров
+    private final TimeRange timeRange; // null - все строки
+    private boolean skipLongLines;
+    private int lineNumber;
+    private int pendingLines; // Ещё не переданы в замеры
+    private int pendingEntries;
+    private long lastHeapUpdate = System.nanoTime();
+
+    LineProcessor(EntrySink statistics, AnalyzeOptions options, String location) {
+        this.statistics = statistics;
+        this.parserMode = options.getParserMode();
+        this.location = location;
+        this.quarantine = options.getQuarantine();
+        this.fields = Metric.fieldsOf(options.getMetrics());
+        this.instrumentation = options.getInstrumentation();
+        this.timeRange = options.getTimeRange();
+        if (timeRange != null) {
+            fields.add(LogField.TIME); // Время записи нужно для проверки интервала
+        }
+    }
+
+    LineProcessor setSkipLongLines(boolean skipLongLines) {
+        this.skipLongLines = skipLongLines;
+        return this;
+    }
+
+    // Обрабатываем строку, прочитанную как байты (без символов конца строки)
+    void processLine(byte[] buffer, int offset, int length) {
+        if (parserMode != ParserMode.BYTES) {
+            processLine(new String(buffer, offset, length, charset));
+            return;
+        }
+
+        lineNumber++;
+
+        // Символов не больше, чем байтов, поэтому декодируем только подозрительно длинные строки
+        if (length > MAX_LINE_LENGTH && new String(buffer, offset, length, charset).length() > MAX_LINE_LENGTH) {
+            tooLong(() -> new String(buffer, offset, length, charset));
+            return;
+        }
+
+        boolean sampled = isSampled();
+        long start = sampled ? System.nanoTime() : 0;
+        LogLine parsed = LogLine.tryParse(buffer, offset, length, failure);
+        if (parsed != null) {
+            if (inRange(parsed)) {
+                long parsedAt = sampled ? System.nanoTime() : 0;
+                statistics.addEntry(parsed);
+                countEntry(sampled, start, parsedAt);
+            }
+            return;
+        }
+        if (timeRange != null && !inRange(LogLine.tryParseTime(buffer, offset, length))) {
+            return;
+        }
+        if (reportParseError()) {
+            quarantine.add(failure.getReason(), lineLocation(), new String(buffer, offset, length, charset));
+        }
+    }
+
+    void processLine(String line) {
+        lineNumber++;
+
+        // Проверка на слишком длинную строку
+        if (line.length() > MAX_LINE_LENGTH) {
+            tooLong(() -> line);
+            return;
+        }
+
+        boolean sampled = isSampled();
+        long start = sampled ? System.nanoTime() : 0;
+        if (parserMode != ParserMode.CLASSIC) {
+            // Разбираем строку за один проход и добавляем в статистику
+            LogLine parsed = LogLine.tryParse(line, failure);
+            if (parsed != null) {
+                if (inRange(parsed)) {
+                    long parsedAt = sampled ? System.nanoTime() : 0;
+                    statistics.addEntry(parsed);
+                    countEntry(sampled, start, parsedAt);
+                }
+                return;
+            }
+        } else {
+            // Создаем объект ru.stepup.model.LogEntry и добавляем запись в статистику
+            LogEntry entry = LogEntry.tryParse(line, fields, failure);
+            if (entry != null) {
+                if (inRange(entry)) {
+                    long parsedAt = sampled ? System.nanoTime() : 0;
+                    statistics.addEntry(entry);
+                    countEntry(sampled, start, parsedAt);
+                }
+                return;
+            }
+        }
+        if (timeRange != null && !inRange(LogLine.tryParseTime(line))) {
+            return;
+        }
+        if (reportParseError()) {
+            quarantine.add(failure.getReason(), lineLocation(), line);
+        }
+    }
+
+    // С замерами у каждой 64-й строки засекаем разбор и добавление в статистику
+    private boolean isSampled() {
+        return instrumentation != null && (lineNumber & AnalysisMetrics.SAMPLE_MASK) == 0;
+    }
+
+    // Запись добавлена в статистику: передаём в замеры задержки замеренной строки и счётчики
+    private void countEntry(boolean sampled, long start, long parsedAt) {
+        if (instrumentation == null) {
+            return;
+        }
+        if (sampled) {
+            instrumentation.recordParse(parsedAt - start);
+            instrumentation.recordAggregate(System.nanoTime() - parsedAt);
+        }
+        countLine(true);
+    }
+
+    private void countLine(boolean parsed) {
+        pendingLines++;
+        if (parsed) {
+            pendingEntries++;
+        }
+        if (pendingLines == FLUSH_LINES) {
+            flush(false);
+        }
+    }
+
+    // Передаём накопленные счётчики в замеры; раз в секунду (и в конце) - и оценку памяти
+    // статистики этого обработчика
+    private void flush(boolean last) {
+        instrumentation.addLines(pendingLines, pendingEntries);
+        pendingLines = 0;
+        pendingEntries = 0;
+        long now = System.nanoTime();
+        if ((last || now - lastHeapUpdate >= AnalysisMetrics.HEAP_UPDATE_NANOS) && statistics instanceof Statistics) {
+            instrumentation.updateHeap((Statistics) statistics);
+            lastHeapUpdate = now;
+        }
+    }
+
+    // Строка не поместилась в буфер LineSplitter: есть только её начало, сама строка пропущена
+    void processLongLine(byte[] buffer, int offset, int length) {
+        lineNumber++;
+        tooLong(() -> new String(buffer, offset, length, charset));
+    }
+
+    private void tooLong(Supplier<String> line) {
+        if (!skipLongLines) {
+            throw new VeryLongLine("Длина строки превышает 1024 символа");
+        }
+        statistics.addParseError(ParseError.LINE_TOO_LONG);
+        if (quarantine != null && quarantine.accepts(ParseError.LINE_TOO_LONG)) {
+            quarantine.add(ParseError.LINE_TOO_LONG, lineLocation(), line.get());
+        }
+        if (instrumentation != null) {
+            countLine(false);
+        }
+    }
+
+    // Строки закончились: передаём в замеры остаток счётчиков
+    void finish() {
+        if (instrumentation != null) {
+            flush(true);
+        }
+    }
+
+    // Строка в интервале времени или интервал не задан
+    private boolean inRange(LogLine line) {
+        return timeRange == null
+                || timeRange.contains(line.getEpochSecond(), line.getEpochSecond() + line.getOffsetSeconds());
+    }
+
+    private boolean inRange(LogEntry entry) {
+        return timeRange == null
+                || timeRange.contains(entry.getEpochSecond(), entry.getTime().toEpochSecond(ZoneOffset.UTC));
+    }
+
+    // Строка с ошибкой разбора в интервале: epochSecond - её метка времени (LogLine.tryParseTime)
+    private boolean inRange(long epochSecond) {
+        return epochSecond != TimestampDecoder.INVALID && timeRange.contains(epochSecond,
+                epochSecond + TimestampDecoder.forCurrentThread().getLastOffsetSeconds());
+    }
+
+    // Пропускаем строку с неверным форматом: считаем её по причине ошибки без исключения
+    // и вывода на каждую строку. true - строку нужно сохранить в карантин
+    private boolean reportParseError() {
+        statistics.addParseError(failure.getReason());
+        if (instrumentation != null) {
+            countLine(false);
+        }
+        return quarantine != null && quarantine.accepts(failure.getReason());
+    }
+
+    private String lineLocation() {
+        return "строка " + lineNumber + location;
+    }
+}
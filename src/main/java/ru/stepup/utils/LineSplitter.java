@@ -0,0 +1,127 @@
+package ru.stepup.utils;
+
+import ru.stepup.exceptions.VeryLongLine;
+
+// Делит поток байтов на строки так же, как BufferedReader.readLine:
+// концом строки считаются '\n', '\r' и "\r\n". Байты подаются блоками любого размера,
+// строка, разрезанная границей блока, собирается во внутреннем буфере. Строка длиннее MAX_LINE_BYTES -
+// исключение VeryLongLine, а с получателем длинных строк - его вызов с началом строки и пропуск остатка
+class LineSplitter {
+    // В строке длиннее этого числа байтов заведомо больше 1024 символов (до 4 байтов на символ)
+    static final int MAX_LINE_BYTES = LineProcessor.MAX_LINE_LENGTH * 4;
+
+    // Получатель строк: байты строки без символов конца строки
+    interface Handler {
+        void handleLine(byte[] buffer, int offset, int length);
+    }
+
+    private final Handler handler;
+    private final Handler longLineHandler; // null - длинная строка прерывает разбор
+    private final byte[] carry = new byte[MAX_LINE_BYTES];
+    private int carryLength;
+    private boolean skipLineFeed; // Предыдущий блок закончился на '\r'
+    private boolean skipLine; // Пропускаем остаток длинной строки до конца строки
+
+    LineSplitter(Handler handler) {
+        this(handler, null);
+    }
+
+    LineSplitter(Handler handler, Handler longLineHandler) {
+        this.handler = handler;
+        this.longLineHandler = longLineHandler;
+    }
+
+    void feed(byte[] block, int offset, int length) {
+        int end = offset + length;
+        int pos = offset;
+
+        if (skipLineFeed && pos < end) {
+            if (block[pos] == '\n') {
+                pos++;
+            }
+            skipLineFeed = false;
+        }
+
+        int lineStart = pos;
+        while (pos < end) {
+            byte b = block[pos];
+            if (b == '\n' || b == '\r') {
+                if (skipLine) {
+                    skipLine = false;
+                } else {
+                    emit(block, lineStart, pos);
+                }
+                pos++;
+                if (b == '\r') {
+                    if (pos == end) {
+                        skipLineFeed = true;
+                    } else if (block[pos] == '\n') {
+                        pos++;
+                    }
+                }
+                lineStart = pos;
+            } else {
+                pos++;
+            }
+        }
+
+        // Остаток без конца строки откладываем до следующего блока
+        int rest = end - lineStart;
+        if (rest > 0 && !skipLine) {
+            if (carryLength + rest > MAX_LINE_BYTES) {
+                longLine(block, lineStart);
+                skipLine = true;
+                return;
+            }
+            System.arraycopy(block, lineStart, carry, carryLength, rest);
+            carryLength += rest;
+        }
+    }
+
+    // Конец данных: последняя строка может быть без символа конца строки
+    void finish() {
+        skipLine = false;
+        if (carryLength > 0) {
+            handler.handleLine(carry, 0, carryLength);
+            carryLength = 0;
+        }
+        skipLineFeed = false;
+    }
+
+    // Следующий '\n' в начале данных относится к "\r\n", начатому до этих данных
+    void skipNextLineFeed() {
+        skipLineFeed = true;
+    }
+
+    // Отбрасываем недочитанную строку (например, после усечения файла)
+    void reset() {
+        carryLength = 0;
+        skipLineFeed = false;
+        skipLine = false;
+    }
+
+    private void emit(byte[] block, int start, int end) {
+        if (carryLength == 0) {
+            handler.handleLine(block, start, end - start);
+            return;
+        }
+        int length = end - start;
+        if (carryLength + length > MAX_LINE_BYTES) {
+            longLine(block, start);
+            return;
+        }
+        System.arraycopy(block, start, carry, carryLength, length);
+        handler.handleLine(carry, 0, carryLength + length);
+        carryLength = 0;
+    }
+
+    // Строка не помещается в буфер: отдаём получателю длинных строк первые MAX_LINE_BYTES байтов
+    private void longLine(byte[] block, int start) {
+        if (longLineHandler == null) {
+            throw new VeryLongLine("Длина строки превышает 1024 символа");
+        }
+        System.arraycopy(block, start, carry, carryLength, MAX_LINE_BYTES - carryLength);
+        longLineHandler.handleLine(carry, 0, MAX_LINE_BYTES);
+        carryLength = 0;
+    }
+}
@@ -0,0 +1,163 @@
+package ru.stepup.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+// Режим слежения за растущим логом, как tail -F: файл читается с начала, затем дописанные байты
+// подхватываются каждые POLL_INTERVAL_MS и добавляются в одну долгоживущую статистику.
+// Отчёт печатается с заданным интервалом. Отслеживается ротация:
+// усечение файла (copytruncate) и переименование с созданием нового файла под тем же именем.
+// Слишком длинные строки считаются ошибками разбора и слежение не прерывают
+public class LogFollower {
+    private static final long POLL_INTERVAL_MS = 100; // Задержка появления строки в статистике
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int HEAD_SIZE = 4096; // Начало файла, по которому замечаем перезапись
+
+    private final Path path;
+    private final long reportIntervalMs;
+    private final Statistics statistics;
+    private final LineProcessor processor;
+    private final LineSplitter splitter;
+    private final AnalysisMetrics instrumentation;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final ByteBuffer head = ByteBuffer.allocate(HEAD_SIZE);
+
+    private FileChannel channel;
+    private Object fileKey; // Идентификатор файла (inode), по нему замечаем переименование
+    private long position;
+    private int headLength; // Сколько байтов начала файла учтено в headChecksum
+    private long headChecksum;
+
+    public LogFollower(String filePath, AnalyzeOptions options, long reportIntervalMs) {
+        if (reportIntervalMs <= 0) {
+            throw new IllegalArgumentException("Интервал отчёта должен быть положительным: " + reportIntervalMs);
+        }
+        this.path = Path.of(filePath);
+        this.reportIntervalMs = reportIntervalMs;
+        this.statistics = new Statistics(options.isApproximate(), options.getMetrics());
+        this.processor = new LineProcessor(statistics, options, "").setSkipLongLines(true);
+        this.instrumentation = options.getInstrumentation();
+        this.splitter = new LineSplitter(processor::processLine, processor::processLongLine);
+    }
+
+    // Следим за файлом, пока поток не прерван
+    public void run() throws IOException {
+        long nextReport = System.currentTimeMillis() + reportIntervalMs;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                poll();
+
+                long now = System.currentTimeMillis();
+                if (now >= nextReport) {
+                    System.out.println("\n" + "=".repeat(20) + " Отчёт на " + LocalDateTime.now() + " " + "=".repeat(20));
+                    Analyze.printResults(statistics);
+                    nextReport = now + reportIntervalMs;
+                }
+
+                try {
+                    Thread.sleep(POLL_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        } finally {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    // Один шаг слежения: проверяем ротацию и дочитываем новые байты
+    void poll() throws IOException {
+        Object currentKey = currentFileKey();
+
+        if (channel == null) {
+            if (currentKey == null) {
+                return; // Файла пока нет
+            }
+            open(currentKey);
+        } else if (currentKey != null && !Objects.equals(currentKey, fileKey)) {
+            // Файл переименован и создан заново: дочитываем старый и переходим на новый
+            readAvailable();
+            splitter.finish();
+            channel.close();
+            System.err.println("Файл " + path + " заменён новым, продолжаем чтение с начала");
+            open(currentKey);
+        } else if (channel.size() < position || headLength > 0 && headChecksum(headLength) != headChecksum) {
+            // Файл усечён на месте: недочитанный хвост старого содержимого отбрасываем. Если после усечения
+            // успели дописать больше прочитанного, размер этого не покажет, но изменилось начало файла
+            System.err.println("Файл " + path + " усечён, продолжаем чтение с начала");
+            splitter.reset();
+            position = 0;
+            headLength = 0;
+        }
+
+        readAvailable();
+        if (headLength < HEAD_SIZE && position > headLength) {
+            headLength = (int) Math.min(HEAD_SIZE, position);
+            headChecksum = headChecksum(headLength);
+        }
+    }
+
+    private void open(Object key) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        fileKey = key;
+        position = 0;
+        headLength = 0;
+    }
+
+    // Контрольная сумма первых length байтов файла, -1 - файл стал короче
+    private long headChecksum(int length) throws IOException {
+        head.clear().limit(length);
+        while (head.hasRemaining()) {
+            if (channel.read(head, head.position()) < 0) {
+                return -1;
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(head.flip());
+        return crc.getValue();
+    }
+
+    private void readAvailable() throws IOException {
+        while (true) {
+            buffer.clear();
+            long readStart = System.nanoTime();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                // Всё дописанное разобрано: передаём счётчики в замеры
+                processor.finish();
+                return;
+            }
+            if (instrumentation != null) {
+                instrumentation.recordRead(read, System.nanoTime() - readStart);
+            }
+            splitter.feed(buffer.array(), 0, read);
+            position += read;
+        }
+    }
+
+    // Идентификатор файла по имени, null если файла сейчас нет
+    private Object currentFileKey() throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            // Если файловая система не даёт fileKey, отличаем файлы по времени создания
+            return attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package ru.stepup.utils;
+
+// Счётчики (long, long) -> int на открытой адресации, например IPv6 -> посещения.
+// Значения - положительные счётчики, поэтому нулевое значение означает пустую ячейку
+class LongPairIntHashMap {
+    private static final int INITIAL_CAPACITY = 16;
+
+    interface Consumer {
+        void accept(long high, long low, int value);
+    }
+
+    private long[] highs;
+    private long[] lows;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    LongPairIntHashMap() {
+        highs = new long[INITIAL_CAPACITY];
+        lows = new long[INITIAL_CAPACITY];
+        values = new int[INITIAL_CAPACITY];
+        mask = INITIAL_CAPACITY - 1;
+    }
+
+    // Прибавляем delta (> 0) к счётчику ключа, возвращаем новое значение
+    int add(long high, long low, int delta) {
+        int index = indexOf(high, low);
+        if (values[index] == 0) {
+            highs[index] = high;
+            lows[index] = low;
+            values[index] = delta;
+            if (++size > (mask + 1) * 3 / 4) {
+                grow();
+            }
+            return delta;
+        }
+        return values[index] += delta;
+    }
+
+    int increment(long high, long low) {
+        return add(high, low, 1);
+    }
+
+    int get(long high, long low) {
+        return values[indexOf(high, low)];
+    }
+
+    // Память карты: объект и три массива
+    long estimateHeapBytes() {
+        return HeapEstimate.align(HeapEstimate.OBJECT_HEADER + 3 * HeapEstimate.REFERENCE + 8)
+                + HeapEstimate.array(8, highs.length) + HeapEstimate.array(8, lows.length)
+                + HeapEstimate.array(4, values.length);
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Максимальное значение, 0 для пустой карты
+    int maxValue() {
+        int max = 0;
+        for (int value : values) {
+            if (value > max) {
+                max = value;
+            }
+        }
+        return max;
+    }
+
+    void forEach(Consumer consumer) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != 0) {
+                consumer.accept(highs[i], lows[i], values[i]);
+            }
+        }
+    }
+
+    // Прибавляем все счётчики другой карты
+    void addAll(LongPairIntHashMap other) {
+        other.forEach(this::add);
+    }
+
+    // Ячейка с ключом или первая пустая ячейка на пути поиска
+    private int indexOf(long high, long low) {
+        int index = hash(high, low) & mask;
+        while (values[index] != 0 && (highs[index] != high || lows[index] != low)) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private static int hash(long high, long low) {
+        long h = (high * 0x9E3779B97F4A7C15L + low) * 0xC2B2AE3D27D4EB4FL;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void grow() {
+        long[] oldHighs = highs;
+        long[] oldLows = lows;
+        int[] oldValues = values;
+        highs = new long[oldHighs.length * 2];
+        lows = new long[oldLows.length * 2];
+        values = new int[oldValues.length * 2];
+        mask = values.length - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != 0) {
+                int index = indexOf(oldHighs[i], oldLows[i]);
+                highs[index] = oldHighs[i];
+                lows[index] = oldLows[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package ru.stepup.utils;
+
+import ru.stepup.exceptions.VeryLongLine;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Чтение строк из файла, отображённого в память через FileChannel.map.
+// Строки ищутся прямо в отображённых байтах без декодирования в char[].
+// Одно отображение ограничено 2 ГБ, поэтому большой файл отображается частями:
+// каждая следующая часть начинается с первой незавершённой строки предыдущей
+class MappedLineReader {
+    static final long MAX_MAPPING_SIZE = 1L << 30;
+    private static final int REPORT_BYTES = 1 << 20; // С замерами прочитанные байты передаются по мегабайту
+
+    private final long mappingSize;
+    private final AnalysisMetrics instrumentation; // null - без замеров
+    private final byte[] line = new byte[LineSplitter.MAX_LINE_BYTES];
+
+    MappedLineReader() {
+        this(MAX_MAPPING_SIZE, null);
+    }
+
+    MappedLineReader(AnalysisMetrics instrumentation) {
+        this(MAX_MAPPING_SIZE, instrumentation);
+    }
+
+    MappedLineReader(long mappingSize, AnalysisMetrics instrumentation) {
+        this.mappingSize = mappingSize;
+        this.instrumentation = instrumentation;
+    }
+
+    // Передаём обработчику все строки диапазона [start, end). Концы строк те же, что у BufferedReader
+    void readLines(FileChannel channel, long start, long end, LineSplitter.Handler handler) throws IOException {
+        long position = start;
+        while (position < end) {
+            long size = Math.min(mappingSize, end - position);
+            boolean last = position + size == end;
+            long mapStart = System.nanoTime();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            if (instrumentation != null) {
+                // Сами байты читаются при разборе (подкачка страниц), замеряется только отображение
+                instrumentation.recordRead(0, System.nanoTime() - mapStart);
+            }
+            int consumed = readMapping(buffer, (int) size, last, handler);
+            if (consumed == 0) {
+                // Во всём отображении нет ни одного конца строки
+                throw new VeryLongLine("Длина строки превышает 1024 символа");
+            }
+            position += consumed;
+        }
+    }
+
+    // Разбираем одно отображение, возвращаем число байтов полностью обработанных строк
+    private int readMapping(MappedByteBuffer buffer, int size, boolean last, LineSplitter.Handler handler) {
+        int lineStart = 0;
+        int pos = 0;
+        int reported = 0; // Байты, уже переданные в замеры
+        while (pos < size) {
+            byte b = buffer.get(pos);
+            if (b != '\n' && b != '\r') {
+                pos++;
+                continue;
+            }
+            if (b == '\r' && pos + 1 == size && !last) {
+                // "\r\n" может быть разрезан границей отображения, строку дочитаем в следующем
+                break;
+            }
+            emit(buffer, lineStart, pos, handler);
+            pos++;
+            if (b == '\r' && pos < size && buffer.get(pos) == '\n') {
+                pos++;
+            }
+            lineStart = pos;
+            if (instrumentation != null && lineStart - reported >= REPORT_BYTES) {
+                instrumentation.addBytes(lineStart - reported);
+                reported = lineStart;
+            }
+        }
+
+        if (last && lineStart < size) {
+            // Последняя строка файла без символа конца строки
+            emit(buffer, lineStart, size, handler);
+        }
+        int consumed = last ? size : lineStart;
+        if (instrumentation != null) {
+            instrumentation.addBytes(consumed - reported);
+        }
+        return consumed;
+    }
+
+    private void emit(MappedByteBuffer buffer, int start, int end, LineSplitter.Handler handler) {
+        int length = end - start;
+        if (length > line.length) {
+            throw new VeryLongLine("Длина строки превышает 1024 символа");
+        }
+        buffer.get(start, line, 0, length);
+        handler.handleLine(line, 0, length);
+    }
+}
@@ -0,0 +1,87 @@
+package ru.stepup.utils;
+
+import ru.stepup.model.LogField;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+// Метрики отчёта: каждая - раздел отчёта и поля строки, которые для неё нужны.
+// Выбранный набор метрик передаётся до разбора: извлекаются только нужные поля,
+// а статистика создаёт только структуры выбранных метрик. Число строк, разобранных
+// записей и ошибок разбора считается всегда
+public enum Metric {
+    TRAFFIC("объём трафика, период и трафик в час", LogField.RESPONSE_SIZE, LogField.TIME),
+    STATUS("число запросов по классам кодов ответа", LogField.RESPONSE_CODE),
+    BOTS("запросы поисковых ботов и их доли", LogField.USER_AGENT),
+    PAGES("страницы с кодами 200 и 404", LogField.RESPONSE_CODE, LogField.PATH),
+    OS("операционные системы", LogField.USER_AGENT),
+    BROWSERS("браузеры", LogField.USER_AGENT),
+    VISITS("посещения и ошибочные запросы в час, посещения на пользователя",
+            LogField.TIME, LogField.RESPONSE_CODE, LogField.USER_AGENT, LogField.IP_ADDRESS),
+    PEAK("пиковая посещаемость за секунду", LogField.TIME, LogField.USER_AGENT),
+    TIME_SERIES("динамика по минутам и часам", LogField.TIME, LogField.RESPONSE_SIZE, LogField.RESPONSE_CODE,
+            LogField.USER_AGENT, LogField.IP_ADDRESS),
+    REFERERS("сайты-рефереры", LogField.REFERER),
+    USERS("максимальное посещение одним пользователем", LogField.USER_AGENT, LogField.IP_ADDRESS);
+
+    private final String description;
+    private final Set<LogField> fields;
+
+    Metric(String description, LogField... fields) {
+        this.description = description;
+        this.fields = Collections.unmodifiableSet(EnumSet.copyOf(Arrays.asList(fields)));
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    // Поля строки, без которых метрику не посчитать
+    public Set<LogField> getFields() {
+        return fields;
+    }
+
+    // Полный отчёт
+    public static Set<Metric> all() {
+        return EnumSet.allOf(Metric.class);
+    }
+
+    // Поля, нужные хотя бы одной из метрик
+    public static Set<LogField> fieldsOf(Set<Metric> metrics) {
+        Set<LogField> fields = EnumSet.noneOf(LogField.class);
+        for (Metric metric : metrics) {
+            fields.addAll(metric.fields);
+        }
+        return fields;
+    }
+
+    // Набор метрик из списка через запятую без учёта регистра, "all" - все метрики.
+    // Ошибка в списке - IllegalArgumentException с понятным сообщением
+    public static Set<Metric> parse(String list) {
+        Set<Metric> metrics = EnumSet.noneOf(Metric.class);
+        for (String name : list.split(",")) {
+            String trimmed = name.trim().replace('-', '_').toUpperCase();
+            if (trimmed.equals("ALL")) {
+                metrics.addAll(all());
+                continue;
+            }
+            try {
+                metrics.add(Metric.valueOf(trimmed));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Неизвестная метрика: " + name.trim() + ". Доступны: all, "
+                        + String.join(", ", Arrays.stream(values()).map(Metric::getOptionName).toList()));
+            }
+        }
+        if (metrics.isEmpty()) {
+            throw new IllegalArgumentException("Не указано ни одной метрики");
+        }
+        return metrics;
+    }
+
+    // Имя в параметре --metrics
+    public String getOptionName() {
+        return name().toLowerCase().replace('_', '-');
+    }
+}
@@ -0,0 +1,8 @@
+package ru.stepup.utils;
+
+// Способ разбора строк лога
+public enum ParserMode {
+    CLASSIC, // Конструктор LogEntry: каждое поле ищется отдельным проходом по строке
+    SINGLE_PASS, // LogLine: один проход по строке, строки полей создаются по требованию
+    BYTES // LogLine прямо из байтов файла: строка лога не декодируется в String целиком
+}
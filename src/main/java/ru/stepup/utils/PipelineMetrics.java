@@ -0,0 +1,174 @@
+package ru.stepup.utils;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Метрики конвейера чтение -> разбор -> объединение. Ожидание чтения на заполненной очереди
+// означает, что не успевает разбор; ожидание разбора на пустой очереди - что не успевает чтение.
+// Значения можно читать во время работы конвейера
+public final class PipelineMetrics {
+    private final int workers;
+    private final int queueCapacity;
+    private volatile BlockingQueue<?> queue;
+
+    // Чтение
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder batchesRead = new LongAdder();
+    private final LongAdder readNanos = new LongAdder();
+    private final LongAdder readerBlockedNanos = new LongAdder(); // Очередь заполнена
+
+    // Очередь: глубина замеряется при каждой постановке пакета
+    private final LongAdder depthSum = new LongAdder();
+    private final LongAdder depthSamples = new LongAdder();
+    private final AtomicLong maxDepth = new AtomicLong();
+
+    // Разбор (суммарно по всем потокам)
+    private final LongAdder bytesParsed = new LongAdder();
+    private final LongAdder batchesParsed = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final LongAdder parserStarvedNanos = new LongAdder(); // Очередь пуста
+
+    // Объединение
+    private volatile long mergeNanos;
+    private volatile long startNanos;
+    private volatile long wallNanos;
+
+    PipelineMetrics(int workers, int queueCapacity) {
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+    }
+
+    void start(BlockingQueue<?> queue) {
+        this.queue = queue;
+        this.startNanos = System.nanoTime();
+    }
+
+    void finish(long mergeNanos) {
+        this.mergeNanos = mergeNanos;
+        this.wallNanos = System.nanoTime() - startNanos;
+        this.queue = null;
+    }
+
+    void recordRead(long bytes, long nanos) {
+        bytesRead.add(bytes);
+        readNanos.add(nanos);
+    }
+
+    void recordEnqueue(int depth, long blockedNanos) {
+        batchesRead.increment();
+        readerBlockedNanos.add(blockedNanos);
+        depthSum.add(depth);
+        depthSamples.increment();
+        maxDepth.accumulateAndGet(depth, Math::max);
+    }
+
+    void recordParse(long bytes, long nanos, long starvedNanos) {
+        batchesParsed.increment();
+        bytesParsed.add(bytes);
+        parseNanos.add(nanos);
+        parserStarvedNanos.add(starvedNanos);
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    // Текущая глубина очереди пакетов, 0 вне работы конвейера
+    public int getQueueDepth() {
+        BlockingQueue<?> current = queue;
+        return current == null ? 0 : current.size();
+    }
+
+    public long getMaxQueueDepth() {
+        return maxDepth.get();
+    }
+
+    public double getAverageQueueDepth() {
+        long samples = depthSamples.sum();
+        return samples == 0 ? 0 : (double) depthSum.sum() / samples;
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getBatchesRead() {
+        return batchesRead.sum();
+    }
+
+    public long getBytesParsed() {
+        return bytesParsed.sum();
+    }
+
+    public long getBatchesParsed() {
+        return batchesParsed.sum();
+    }
+
+    // Скорость чтения без учёта ожидания очереди, МБ/с
+    public double getReadThroughput() {
+        return megabytesPerSecond(bytesRead.sum(), readNanos.sum());
+    }
+
+    // Скорость разбора одного потока, МБ/с
+    public double getParseThroughputPerWorker() {
+        return megabytesPerSecond(bytesParsed.sum(), parseNanos.sum());
+    }
+
+    // Скорость всего конвейера, МБ/с
+    public double getOverallThroughput() {
+        long elapsed = wallNanos != 0 ? wallNanos : System.nanoTime() - startNanos;
+        return megabytesPerSecond(bytesParsed.sum(), elapsed);
+    }
+
+    public long getReaderBlockedMillis() {
+        return readerBlockedNanos.sum() / 1_000_000;
+    }
+
+    public long getParserStarvedMillis() {
+        return parserStarvedNanos.sum() / 1_000_000;
+    }
+
+    public long getMergeMillis() {
+        return mergeNanos / 1_000_000;
+    }
+
+    public long getWallMillis() {
+        return wallNanos / 1_000_000;
+    }
+
+    // Какой этап сдерживает конвейер
+    public String getBottleneck() {
+        // Простой разбора считаем на один поток, чтобы сравнивать с единственным потоком чтения
+        long starved = parserStarvedNanos.sum() / Math.max(1, workers);
+        long blocked = readerBlockedNanos.sum();
+        if (blocked == 0 && starved == 0) {
+            return "не определено";
+        }
+        return blocked >= starved ? "разбор" : "чтение";
+    }
+
+    // Сводка для вывода после анализа
+    public String describe() {
+        return String.join("\n",
+                "══════════════ КОНВЕЙЕР ══════════════",
+                String.format("Потоков разбора: %d, пакетов: %d, прочитано: %.1f МБ за %d мс (%.1f МБ/с)",
+                        workers, getBatchesRead(), getBytesRead() / 1048576.0, getWallMillis(), getOverallThroughput()),
+                String.format("Чтение: %.1f МБ/с, ожидание места в очереди %d мс",
+                        getReadThroughput(), getReaderBlockedMillis()),
+                String.format("Очередь: ёмкость %d, средняя глубина %.1f, максимальная %d",
+                        queueCapacity, getAverageQueueDepth(), getMaxQueueDepth()),
+                String.format("Разбор: %.1f МБ/с на поток, ожидание пакетов %d мс (суммарно)",
+                        getParseThroughputPerWorker(), getParserStarvedMillis()),
+                "Объединение статистик: " + getMergeMillis() + " мс",
+                "Узкое место: " + getBottleneck());
+    }
+
+    private static double megabytesPerSecond(long bytes, long nanos) {
+        return nanos == 0 ? 0 : bytes / 1048576.0 / (nanos / 1e9);
+    }
+}
@@ -0,0 +1,182 @@
+package ru.stepup.utils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+// Конвейерный анализ: поток чтения нарезает файл на пакеты целых строк (сотни килобайт,
+// тысячи строк) и передаёт их через ограниченную очередь потокам разбора. Каждый поток
+// разбора копит свою статистику, в конце статистики объединяются. Чтение не ждёт разбора,
+// пока в очереди есть место, а разбор не ждёт чтения, пока в очереди есть пакеты.
+// В отличие от деления на фрагменты, файл читается последовательно, поэтому так же
+// работают сжатые gzip логи
+class PipelinedAnalyzer {
+    private static final int BATCH_SIZE = 512 << 10;
+    private static final int QUEUED_BATCHES_PER_WORKER = 2;
+
+    private final AnalyzeOptions options;
+    private final PipelineMetrics metrics;
+
+    PipelinedAnalyzer(AnalyzeOptions options) {
+        this.options = options;
+        this.metrics = new PipelineMetrics(options.getThreads(), options.getThreads() * QUEUED_BATCHES_PER_WORKER);
+    }
+
+    PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Пакет строк: байты [0, length) буфера, start - смещение пакета в (распакованном) файле;
+    // length == -1 - конец данных
+    private static final class Batch {
+        private final byte[] data;
+        private final int length;
+        private final long start;
+
+        Batch(byte[] data, int length, long start) {
+            this.data = data;
+            this.length = length;
+            this.start = start;
+        }
+    }
+
+    private static final Batch END = new Batch(null, -1, -1);
+
+    Statistics analyze(Path path) throws IOException, InterruptedException {
+        int workers = options.getThreads();
+        BlockingQueue<Batch> filled = new ArrayBlockingQueue<>(metrics.getQueueCapacity());
+        // Буферов хватает на заполненную очередь, пакеты в разборе и пакет в чтении
+        BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(metrics.getQueueCapacity() + workers + 2);
+        for (int i = 0; i < metrics.getQueueCapacity() + workers + 2; i++) {
+            free.add(new byte[BATCH_SIZE]);
+        }
+        boolean gzip = GzipAnalyzer.isGzip(path);
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers + 1);
+        metrics.start(filled);
+        try {
+            Future<?> reader = executor.submit(() -> {
+                try (InputStream in = open(path, gzip, options.getInstrumentation())) {
+                    read(in, filled, free);
+                } finally {
+                    filled.put(END);
+                }
+                return null;
+            });
+            CompletionService<Statistics> parsers = new ExecutorCompletionService<>(executor);
+            for (int i = 0; i < workers; i++) {
+                parsers.submit(() -> parse(filled, free));
+            }
+
+            // Результаты забираем по мере готовности: ошибка любого потока сразу прекращает анализ
+            List<Statistics> results = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                results.add(ChunkedAnalyzer.getResult(parsers.take()));
+            }
+            ChunkedAnalyzer.getResult(reader);
+
+            long mergeStart = System.nanoTime();
+            Statistics statistics = results.get(0);
+            for (int i = 1; i < results.size(); i++) {
+                statistics.combine(results.get(i));
+                if (options.getInstrumentation() != null) {
+                    options.getInstrumentation().merged(statistics, results.get(i));
+                }
+            }
+            metrics.finish(System.nanoTime() - mergeStart);
+            return statistics;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Байты файла; сжатый gzip файл распаковывается на лету. С замерами считаются байты файла на диске
+    static InputStream open(Path path, boolean gzip, AnalysisMetrics instrumentation) throws IOException {
+        InputStream in = InstrumentedInputStream.wrap(Files.newInputStream(path), instrumentation);
+        return gzip ? new GZIPInputStream(new BufferedInputStream(in, 1 << 16), 1 << 16) : in;
+    }
+
+    // Этап чтения: пакет обрезается по последнему концу строки, остаток переносится в следующий пакет
+    private void read(InputStream in, BlockingQueue<Batch> filled, BlockingQueue<byte[]> free)
+            throws IOException, InterruptedException {
+        byte[] buffer = free.take();
+        int carry = 0;
+        long position = 0;
+        while (true) {
+            long readStart = System.nanoTime();
+            int read = in.readNBytes(buffer, carry, buffer.length - carry);
+            metrics.recordRead(read, System.nanoTime() - readStart);
+            int length = carry + read;
+            if (length == 0) {
+                free.put(buffer);
+                return;
+            }
+
+            // Конец данных или строка длиннее пакета: отдаём всё (длинную строку отвергнет разбор)
+            int cut = read == 0 ? length : lastLineEnd(buffer, length);
+            if (cut == 0) {
+                cut = length;
+            }
+            byte[] next = free.take();
+            carry = length - cut;
+            System.arraycopy(buffer, cut, next, 0, carry);
+
+            long putStart = System.nanoTime();
+            filled.put(new Batch(buffer, cut, position));
+            metrics.recordEnqueue(filled.size(), System.nanoTime() - putStart);
+
+            position += cut;
+            buffer = next;
+            if (read == 0) {
+                free.put(buffer);
+                return;
+            }
+        }
+    }
+
+    // Позиция сразу после последнего конца строки, 0 - конца строки нет.
+    // '\r' в самом конце пропускаем: следующий байт может оказаться '\n' той же пары "\r\n"
+    private static int lastLineEnd(byte[] buffer, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            byte b = buffer[i];
+            if (b == '\n' || (b == '\r' && i < length - 1)) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    // Этап разбора: пакеты разбираются в статистику потока до маркера конца данных
+    private Statistics parse(BlockingQueue<Batch> filled, BlockingQueue<byte[]> free) throws InterruptedException {
+        Statistics statistics = new Statistics(options.isApproximate(), options.getMetrics());
+        while (true) {
+            long takeStart = System.nanoTime();
+            Batch batch = filled.take();
+            long parseStart = System.nanoTime();
+            if (batch == END) {
+                filled.put(END); // Маркер нужен и остальным потокам разбора
+                return statistics;
+            }
+
+            LineProcessor processor = new LineProcessor(statistics, options, " (фрагмент с байта " + batch.start + ")");
+            LineSplitter splitter = new LineSplitter(processor::processLine);
+            splitter.feed(batch.data, 0, batch.length);
+            splitter.finish();
+            processor.finish();
+            free.put(batch.data);
+            metrics.recordParse(batch.length, System.nanoTime() - parseStart, parseStart - takeStart);
+        }
+    }
+}
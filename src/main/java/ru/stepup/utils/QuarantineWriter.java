@@ -0,0 +1,181 @@
+package ru.stepup.utils;
+
+import ru.stepup.model.ParseError;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Карантин неразобранных строк: файл, куда попадают строки, которые не удалось разобрать,
+// вместе с причиной и местом в логе ("причина<TAB>место<TAB>строка"). Потоки разбора только
+// кладут запись в очередь, в файл её пишет отдельный поток через буфер, поэтому лог из мусора
+// не упирается в запись на диск. Для каждой причины сохраняется не больше limitPerReason строк:
+// для разбора ошибок хватает примеров, а все ошибки считаются в статистике по причинам
+public final class QuarantineWriter implements Closeable {
+    public static final int DEFAULT_LIMIT_PER_REASON = 1000;
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final ParseError[] REASONS = ParseError.values();
+    private static final Record END = new Record(null, null, null); // Маркер конца очереди
+
+    // Запись карантина; строка записи собирается уже в потоке записи
+    private static final class Record {
+        private final ParseError reason;
+        private final String location;
+        private final String line;
+
+        Record(ParseError reason, String location, String line) {
+            this.reason = reason;
+            this.location = location;
+            this.line = line;
+        }
+    }
+
+    private final Path path;
+    private final int limitPerReason;
+    // Строк по причинам. long: на многогигабайтном логе из мусора int переполнился бы
+    private final AtomicLongArray offered = new AtomicLongArray(REASONS.length);
+    private final BlockingQueue<Record> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Writer out;
+    private final Thread writer;
+    private volatile IOException failure;
+    private boolean closed;
+
+    private QuarantineWriter(Path path, int limitPerReason, Writer out) {
+        this.path = path;
+        this.limitPerReason = limitPerReason;
+        this.out = out;
+        this.writer = new Thread(this::writeRecords, "quarantine-writer");
+        this.writer.setDaemon(true);
+    }
+
+    // Создаём (перезаписываем) файл карантина и запускаем поток записи
+    public static QuarantineWriter open(Path path, int limitPerReason) throws IOException {
+        if (limitPerReason < 1) {
+            throw new IllegalArgumentException("Лимит строк карантина должен быть положительным: " + limitPerReason);
+        }
+        Writer out = new BufferedWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8), 1 << 16);
+        QuarantineWriter quarantine = new QuarantineWriter(path, limitPerReason, out);
+        quarantine.writer.start();
+        return quarantine;
+    }
+
+    // Учитываем строку с ошибкой и решаем, сохранять ли её: true - лимит причины ещё не набран,
+    // строку нужно передать в add. Так строка из байтов декодируется только для сохраняемых строк
+    boolean accepts(ParseError reason) {
+        return offered.getAndIncrement(reason.ordinal()) < limitPerReason;
+    }
+
+    // Ставим строку в очередь на запись. Ждём, только если поток записи отстал на всю очередь
+    void add(ParseError reason, String location, String line) {
+        try {
+            queue.put(new Record(reason, location, line));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Поток записи: забираем записи пачками, после каждой пачки сбрасываем буфер,
+    // чтобы при слежении за логом файл карантина не отставал
+    private void writeRecords() {
+        List<Record> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                for (Record record : batch) {
+                    if (record == END) {
+                        flush();
+                        return;
+                    }
+                    write(record);
+                }
+                batch.clear();
+                flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // После ошибки записи очередь продолжает разбираться, чтобы не останавливать потоки разбора
+    private void write(Record record) {
+        if (failure != null) {
+            return;
+        }
+        try {
+            out.write(record.reason.name());
+            out.write('\t');
+            out.write(record.location);
+            out.write('\t');
+            out.write(record.line);
+            out.write('\n');
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    private void flush() {
+        if (failure != null) {
+            return;
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    // Сколько строк записано в карантин
+    public long getWrittenCount() {
+        long written = 0;
+        for (int i = 0; i < REASONS.length; i++) {
+            written += Math.min(offered.get(i), limitPerReason);
+        }
+        return written;
+    }
+
+    // Сколько строк с ошибками не записано сверх лимита
+    public long getSkippedCount() {
+        long skipped = 0;
+        for (int i = 0; i < REASONS.length; i++) {
+            skipped += Math.max(0, offered.get(i) - limitPerReason);
+        }
+        return skipped;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    // Дописываем очередь, закрываем файл и сообщаем, сколько строк сохранено
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            out.close();
+        }
+        if (failure != null) {
+            throw new IOException("Не удалось записать карантин " + path + ": " + failure.getMessage(), failure);
+        }
+        long skipped = getSkippedCount();
+        System.err.println("В карантин " + path + " записано строк: " + getWrittenCount()
+                + (skipped > 0 ? ", ещё " + skipped + " не записаны сверх лимита " + limitPerReason + " на причину" : ""));
+    }
+}
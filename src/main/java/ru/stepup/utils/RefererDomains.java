@@ -0,0 +1,259 @@
+package ru.stepup.utils;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+// Домен из referer без "www.". Обычный адрес вида http(s)://host[:port][/путь][?запрос][#якорь]
+// разбирается одним проходом без создания URI и без исключений. Если в таком адресе после хоста
+// есть символ, который URI не принимает нигде (пробел, '|', '{', битая %-последовательность),
+// домен сразу извлекается вручную - ровно то, что сделал бы parseWithUri после исключения.
+// Всё остальное (IP-адреса, userinfo, не-ASCII символы) идёт прежним путём через URI, поэтому
+// результат для любой строки тот же, что у parseWithUri.
+// Referer в логе сильно повторяются (поисковики, свои страницы), поэтому результаты хранятся
+// в общем кэше: повторный referer стоит одного сравнения строк и даёт тот же объект домена.
+// Класс публичный для сравнения способов разбора в бенчмарках; статистика пользуется только of
+public final class RefererDomains {
+    private static final int CACHE_SIZE = 4096; // Степень двойки
+    private static final int MAX_CACHED_LENGTH = 256; // Более длинные referer не кэшируем
+
+    private static final int NOT_SIMPLE = -1; // Адрес не обычный: разбирает URI
+    private static final int REJECTED = -2; // Обычный хост, но URI бросит исключение на остатке
+
+    // Символы, допустимые URI в пути, запросе и якоре (кроме '%' и '#', их проверяем отдельно)
+    private static final boolean[] URI_CHARS = new boolean[128];
+    // ASCII-символы, которые URI не принимает ни в пути, ни в запросе, ни в якоре
+    private static final boolean[] REJECTED_CHARS = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            URI_CHARS[c] = true;
+            URI_CHARS[Character.toUpperCase(c)] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            URI_CHARS[c] = true;
+        }
+        for (char c : "-_.!~*'();/?:@&=+$,".toCharArray()) {
+            URI_CHARS[c] = true;
+        }
+        for (char c = 0; c <= ' '; c++) {
+            REJECTED_CHARS[c] = true;
+        }
+        REJECTED_CHARS[0x7F] = true;
+        for (char c : "\"<>\\^`{|}".toCharArray()) {
+            REJECTED_CHARS[c] = true;
+        }
+    }
+
+    // Кэш с прямым отображением: referer попадает в одну ячейку по хешу и вытесняет прежний.
+    // Блокировок нет: запись ссылки атомарна, а Entry неизменяем, поэтому при гонке потоков
+    // теряется только одна запись кэша
+    private static final Entry[] CACHE = new Entry[CACHE_SIZE];
+
+    private static final class Entry {
+        private final String referer;
+        private final String domain;
+
+        Entry(String referer, String domain) {
+            this.referer = referer;
+            this.domain = domain;
+        }
+    }
+
+    private RefererDomains() {
+    }
+
+    // Домен из кэша или разобранный заново, null - домен не найден
+    public static String of(String referer) {
+        if (referer == null || referer.length() > MAX_CACHED_LENGTH) {
+            return parse(referer);
+        }
+        int hash = referer.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        Entry entry = CACHE[slot];
+        if (entry != null && entry.referer.equals(referer)) {
+            return entry.domain;
+        }
+        String domain = parse(referer);
+        CACHE[slot] = new Entry(referer, domain);
+        return domain;
+    }
+
+    // Домен без кэша: быстрый разбор обычного адреса, иначе через URI
+    public static String parse(String referer) {
+        if (referer == null || referer.isEmpty() || referer.equals("-")) {
+            return null;
+        }
+        int hostEnd = scanSimple(referer);
+        if (hostEnd == REJECTED) {
+            return extractDomainManually(referer);
+        }
+        if (hostEnd == NOT_SIMPLE) {
+            return parseWithUri(referer);
+        }
+        String host = referer.substring(hostStart(referer), hostEnd);
+        return host.startsWith("www.") ? host.substring(4) : host;
+    }
+
+    // Хост обычного адреса - ровно то, что вернул бы URI.getHost(); null - адрес не такой
+    // или URI его не примет
+    static String simpleHost(String referer) {
+        int hostEnd = scanSimple(referer);
+        return hostEnd < 0 ? null : referer.substring(hostStart(referer), hostEnd);
+    }
+
+    private static int hostStart(String referer) {
+        return referer.startsWith("https://") ? 8 : 7;
+    }
+
+    // Конец хоста обычного адреса http(s)://host[:port][/?#...]. Берём только адреса, которые URI
+    // заведомо разбирает так же: метки из латинских букв, цифр и '-' (не на краях) через одну точку,
+    // первая и последняя метки начинаются с буквы (иначе URI пробует IPv4), порт до 5 цифр, дальше
+    // только допустимые для URI символы. REJECTED - хост такой, но дальше символ, на котором URI
+    // бросит исключение; NOT_SIMPLE - адрес не такой, его разбирает parseWithUri
+    private static int scanSimple(String referer) {
+        int hostStart;
+        if (referer.startsWith("http://")) {
+            hostStart = 7;
+        } else if (referer.startsWith("https://")) {
+            hostStart = 8;
+        } else {
+            return NOT_SIMPLE;
+        }
+
+        int n = referer.length();
+        int pos = hostStart;
+        int lastLabel = -1;
+        while (pos < n && isLetterOrDigit(referer.charAt(pos))) {
+            lastLabel = pos;
+            pos++;
+            while (pos < n && (isLetterOrDigit(referer.charAt(pos)) || referer.charAt(pos) == '-')) {
+                pos++;
+            }
+            if (referer.charAt(pos - 1) == '-') {
+                return NOT_SIMPLE;
+            }
+            if (pos == n || referer.charAt(pos) != '.') {
+                break;
+            }
+            pos++; // Точка после метки; точка в конце остаётся частью хоста, как у URI
+        }
+        if (lastLabel < 0 || !isLetter(referer.charAt(hostStart)) || !isLetter(referer.charAt(lastLabel))) {
+            return NOT_SIMPLE;
+        }
+        int hostEnd = pos;
+
+        if (pos < n && referer.charAt(pos) == ':') {
+            int portStart = ++pos;
+            while (pos < n && referer.charAt(pos) >= '0' && referer.charAt(pos) <= '9') {
+                pos++;
+            }
+            if (pos - portStart > 5) {
+                return NOT_SIMPLE;
+            }
+        }
+        if (pos < n && "/?#".indexOf(referer.charAt(pos)) < 0) {
+            return NOT_SIMPLE;
+        }
+
+        // Остаток должен быть допустим для URI. Битая %-последовательность, второй '#' и символы
+        // REJECTED_CHARS URI не принимает нигде: домен извлекается вручную, в нижнем регистре.
+        // Прочие символы ('[', ']', не-ASCII) допустимы в части адреса, пусть решает URI
+        boolean fragment = false;
+        int result = hostEnd;
+        for (; pos < n; pos++) {
+            char c = referer.charAt(pos);
+            if (c == '%') {
+                if (pos + 2 >= n || !isHexDigit(referer.charAt(pos + 1)) || !isHexDigit(referer.charAt(pos + 2))) {
+                    return REJECTED;
+                }
+                pos += 2;
+            } else if (c == '#') {
+                if (fragment) {
+                    return REJECTED;
+                }
+                fragment = true;
+            } else if (c >= URI_CHARS.length) {
+                result = NOT_SIMPLE;
+            } else if (!URI_CHARS[c]) {
+                if (REJECTED_CHARS[c]) {
+                    return REJECTED;
+                }
+                result = NOT_SIMPLE;
+            }
+        }
+        return result;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isLetterOrDigit(char c) {
+        return isLetter(c) || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isHexDigit(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    // Разбор через URI, а при ошибке - ручное извлечение. Работает для любых строк, но медленно:
+    // URI создаётся на каждый вызов, а некорректный адрес стоит исключения
+    public static String parseWithUri(String referer) {
+        if (referer == null || referer.isEmpty() || referer.equals("-")) {
+            return null;
+        }
+
+        try {
+            // Пытаемся создать URI из referer
+            URI uri = new URI(referer);
+            String host = uri.getHost();
+
+            if (host != null && !host.isEmpty()) {
+                // Убираем www. если есть
+                if (host.startsWith("www.")) {
+                    host = host.substring(4);
+                }
+                return host;
+            }
+            return null;
+        } catch (URISyntaxException e) {
+            // Если не удалось распарсить как URI, попробуем извлечь домен вручную
+            return extractDomainManually(referer);
+        }
+    }
+
+    // Вспомогательный метод для ручного извлечения домена
+    private static String extractDomainManually(String referer) {
+        try {
+            // Убираем протокол если есть
+            String url = referer.toLowerCase();
+            if (url.startsWith("http://")) {
+                url = url.substring(7);
+            } else if (url.startsWith("https://")) {
+                url = url.substring(8);
+            }
+
+            // Убираем www. если есть
+            if (url.startsWith("www.")) {
+                url = url.substring(4);
+            }
+
+            // Берем часть до первого / или конца строки
+            int slashIndex = url.indexOf('/');
+            if (slashIndex > 0) {
+                url = url.substring(0, slashIndex);
+            }
+
+            // Убираем порт если есть
+            int colonIndex = url.indexOf(':');
+            if (colonIndex > 0) {
+                url = url.substring(0, colonIndex);
+            }
+
+            return url.isEmpty() ? null : url;
+        } catch (Exception e) {
+            // Игнорируем некорректные referer
+            return null;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package ru.stepup.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Пик событий в секунду в фиксированной памяти: счётчики хранятся не больше чем для 4 * edge секунд.
+// Когда секунд становится больше, остаются edge самых ранних и edge самых поздних, а счётчики
+// остальных учитываются только в максимуме вытесненных. Крайние секунды нужны для объединения:
+// секунда на границе двух соседних частей лога (фрагментов, файлов, дней) складывается из обеих.
+// Пик точен, если строки опаздывают меньше чем на edge разных секунд и части объединяются
+// с соседними; иначе секунда может вернуться после вытеснения и пик окажется занижен
+class SecondPeak {
+    static final int DEFAULT_EDGE = 1024;
+
+    private final int edge;
+    private LongIntHashMap counts = new LongIntHashMap();
+    private int evictedPeak; // Наибольший счётчик среди вытесненных секунд
+
+    SecondPeak() {
+        this(DEFAULT_EDGE);
+    }
+
+    SecondPeak(int edge) {
+        if (edge < 1) {
+            throw new IllegalArgumentException("Число крайних секунд должно быть положительным: " + edge);
+        }
+        this.edge = edge;
+    }
+
+    void increment(long second) {
+        add(second, 1);
+    }
+
+    void add(long second, int count) {
+        counts.add(second, count);
+        if (counts.size() > 4 * edge) {
+            compact();
+        }
+    }
+
+    // Объединяем с пиком другой части лога
+    void merge(SecondPeak other) {
+        evictedPeak = Math.max(evictedPeak, other.evictedPeak);
+        other.counts.forEach(this::add);
+    }
+
+    // Наибольшее число событий за одну секунду, 0 - событий не было
+    int peak() {
+        return Math.max(evictedPeak, counts.maxValue());
+    }
+
+    // Память: объект и карта счётчиков, ограниченная 4 * edge секундами
+    long estimateHeapBytes() {
+        return HeapEstimate.align(HeapEstimate.OBJECT_HEADER + 2 * 4 + HeapEstimate.REFERENCE)
+                + counts.estimateHeapBytes();
+    }
+
+    // Оставляем edge самых ранних и edge самых поздних секунд, остальные вытесняем в evictedPeak
+    private void compact() {
+        long[] seconds = new long[counts.size()];
+        int[] index = {0};
+        counts.forEach((second, count) -> seconds[index[0]++] = second);
+        Arrays.sort(seconds);
+        LongIntHashMap kept = new LongIntHashMap();
+        for (int i = 0; i < seconds.length; i++) {
+            int count = counts.get(seconds[i]);
+            if (i < edge || i >= seconds.length - edge) {
+                kept.add(seconds[i], count);
+            } else if (count > evictedPeak) {
+                evictedPeak = count;
+            }
+        }
+        counts = kept;
+    }
+
+    // Двоичное состояние: максимум вытесненных и хранимые секунды по возрастанию разностями
+    void writeTo(DataOutput out) throws IOException {
+        BinaryFormat.writeCount(out, evictedPeak);
+        long[] seconds = new long[counts.size()];
+        int[] index = {0};
+        counts.forEach((second, count) -> seconds[index[0]++] = second);
+        Arrays.sort(seconds);
+        BinaryFormat.writeCount(out, seconds.length);
+        long previous = 0;
+        for (long second : seconds) {
+            BinaryFormat.writeSignedVarLong(out, second - previous);
+            BinaryFormat.writeCount(out, counts.get(second));
+            previous = second;
+        }
+    }
+
+    void readFrom(DataInput in) throws IOException {
+        evictedPeak = Math.max(evictedPeak, BinaryFormat.readCount(in));
+        readSecondCounts(in);
+    }
+
+    // Счётчики по секундам без максимума вытесненных (состояние до версии 6, все секунды периода)
+    void readSecondCounts(DataInput in) throws IOException {
+        int size = BinaryFormat.readCount(in);
+        long second = 0;
+        for (int i = 0; i < size; i++) {
+            second += BinaryFormat.readSignedVarLong(in);
+            add(second, BinaryFormat.readCount(in));
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package ru.stepup.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Самые частые элементы потока (алгоритм Space-Saving) в фиксированной памяти на capacity счётчиков.
+// Любой элемент с частотой больше total / capacity гарантированно попадает в список,
+// а счётчик каждого элемента завышен не больше чем на total / capacity (точнее - на его error)
+class SpaceSaving<K> {
+    static final int DEFAULT_CAPACITY = 1000;
+
+    // Счётчик элемента: count - оценка сверху, count - error - оценка снизу
+    static final class Counter<K> {
+        private K key;
+        private long count;
+        private long error;
+        private int heapIndex;
+
+        K getKey() {
+            return key;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        long getError() {
+            return error;
+        }
+    }
+
+    private final int capacity;
+    private final Map<K, Counter<K>> counters;
+    private final List<Counter<K>> heap; // Минимальная куча по count
+    private long total;
+
+    SpaceSaving() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Размер Space-Saving должен быть положительным: " + capacity);
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+        this.heap = new ArrayList<>(capacity);
+    }
+
+    void add(K key) {
+        add(key, 1, 0);
+    }
+
+    private void add(K key, long count, long error) {
+        total += count;
+        Counter<K> counter = counters.get(key);
+        if (counter != null) {
+            counter.count += count;
+            counter.error += error;
+            siftDown(counter.heapIndex);
+            return;
+        }
+
+        if (heap.size() < capacity) {
+            counter = new Counter<>();
+            counter.key = key;
+            counter.count = count;
+            counter.error = error;
+            counter.heapIndex = heap.size();
+            heap.add(counter);
+            counters.put(key, counter);
+            siftUp(counter.heapIndex);
+            return;
+        }
+
+        // Вытесняем элемент с минимальным счётчиком: новый наследует его счётчик как ошибку
+        Counter<K> min = heap.get(0);
+        counters.remove(min.key);
+        min.key = key;
+        min.error = min.count + error;
+        min.count += count;
+        counters.put(key, min);
+        siftDown(0);
+    }
+
+    // Объединяем с другой сводкой. Ошибка счётчиков складывается, граница total / capacity сохраняется
+    void merge(SpaceSaving<K> other) {
+        long otherMin = other.heap.size() < other.capacity ? 0 : other.heap.get(0).count;
+        long thisMin = heap.size() < capacity ? 0 : heap.get(0).count;
+
+        Map<K, long[]> merged = new HashMap<>();
+        for (Counter<K> counter : heap) {
+            Counter<K> otherCounter = other.counters.get(counter.key);
+            long count = counter.count + (otherCounter != null ? otherCounter.count : otherMin);
+            long error = counter.error + (otherCounter != null ? otherCounter.error : otherMin);
+            merged.put(counter.key, new long[]{count, error});
+        }
+        for (Counter<K> counter : other.heap) {
+            if (!counters.containsKey(counter.key)) {
+                merged.put(counter.key, new long[]{counter.count + thisMin, counter.error + thisMin});
+            }
+        }
+
+        long mergedTotal = total + other.total;
+        counters.clear();
+        heap.clear();
+        total = 0;
+        merged.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<K, long[]> e) -> e.getValue()[0]).reversed())
+                .limit(capacity)
+                .forEach(e -> add(e.getKey(), e.getValue()[0], e.getValue()[1]));
+        total = mergedTotal;
+    }
+
+    // Элементы по убыванию счётчика. При равных счётчиках сначала более точные, затем по ключу:
+    // порядок не зависит от расположения в куче, которое меняется при объединении сводок
+    List<Counter<K>> top() {
+        List<Counter<K>> result = new ArrayList<>(heap);
+        result.sort(Comparator.comparingLong((Counter<K> c) -> c.count).reversed()
+                .thenComparingLong(c -> c.error)
+                .thenComparing(c -> String.valueOf(c.key)));
+        return result;
+    }
+
+    // Двоичное состояние сводки со строковыми ключами. Счётчики пишутся в порядке кучи,
+    // поэтому после чтения куча и дальнейшие вытеснения те же, что у исходной сводки
+    static void writeTo(SpaceSaving<String> summary, DataOutput out) throws IOException {
+        BinaryFormat.writeCount(out, summary.capacity);
+        BinaryFormat.writeVarLong(out, summary.total);
+        BinaryFormat.writeCount(out, summary.heap.size());
+        for (Counter<String> counter : summary.heap) {
+            BinaryFormat.writeString(out, counter.key);
+            BinaryFormat.writeVarLong(out, counter.count);
+            BinaryFormat.writeVarLong(out, counter.error);
+        }
+    }
+
+    static SpaceSaving<String> readFrom(DataInput in) throws IOException {
+        int capacity = BinaryFormat.readCount(in);
+        long total = BinaryFormat.readVarLong(in);
+        int size = BinaryFormat.readCount(in);
+        if (capacity < 1 || size > capacity) {
+            throw new IOException("Повреждённое состояние Space-Saving");
+        }
+        SpaceSaving<String> summary = new SpaceSaving<>(capacity);
+        for (int i = 0; i < size; i++) {
+            summary.add(BinaryFormat.readString(in), BinaryFormat.readVarLong(in), BinaryFormat.readVarLong(in));
+        }
+        summary.total = total;
+        return summary;
+    }
+
+    // Память сводки: карта и куча счётчиков и сами счётчики, строковые ключи - вместе с содержимым
+    long estimateHeapBytes() {
+        long counter = HeapEstimate.align(HeapEstimate.OBJECT_HEADER + HeapEstimate.REFERENCE + 8 + 8 + 4);
+        long bytes = HeapEstimate.align(HeapEstimate.OBJECT_HEADER + 4 + 2 * HeapEstimate.REFERENCE + 8)
+                + HeapEstimate.hashMap(Math.max(counters.size(), capacity * 3 / 2))
+                + HeapEstimate.align(HeapEstimate.OBJECT_HEADER + 8 + HeapEstimate.REFERENCE)
+                + HeapEstimate.array(HeapEstimate.REFERENCE, capacity)
+                + counter * counters.size();
+        for (K key : counters.keySet()) {
+            if (key instanceof String value) {
+                bytes += HeapEstimate.string(value);
+            }
+        }
+        return bytes;
+    }
+
+    // Наибольший счётчик (оценка сверху), 0 для пустой сводки
+    long maxCount() {
+        long max = 0;
+        for (Counter<K> counter : heap) {
+            max = Math.max(max, counter.count);
+        }
+        return max;
+    }
+
+    long getTotal() {
+        return total;
+    }
+
+    // Гарантированная граница завышения счётчиков
+    long errorBound() {
+        return total / capacity;
+    }
+
+    private void siftUp(int index) {
+        Counter<K> counter = heap.get(index);
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            Counter<K> parentCounter = heap.get(parent);
+            if (parentCounter.count <= counter.count) {
+                break;
+            }
+            place(parentCounter, index);
+            index = parent;
+        }
+        place(counter, index);
+    }
+
+    private void siftDown(int index) {
+        Counter<K> counter = heap.get(index);
+        int size = heap.size();
+        while (true) {
+            int child = index * 2 + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap.get(child + 1).count < heap.get(child).count) {
+                child++;
+            }
+            Counter<K> childCounter = heap.get(child);
+            if (childCounter.count >= counter.count) {
+                break;
+            }
+            place(childCounter, index);
+            index = child;
+        }
+        place(counter, index);
+    }
+
+    private void place(Counter<K> counter, int index) {
+        heap.set(index, counter);
+        counter.heapIndex = index;
+    }
+}
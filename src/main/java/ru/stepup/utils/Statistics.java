@@ -1,227 +1,843 @@
 package ru.stepup.utils;
 
+import ru.stepup.model.BrowserType;
+import ru.stepup.model.IpAddress;
+import ru.stepup.model.LogField;
 import ru.stepup.model.LogEntry;
+import ru.stepup.model.LogLine;
+import ru.stepup.model.OsType;
+import ru.stepup.model.ParseError;
+import ru.stepup.model.SearchBot;
 import ru.stepup.model.UserAgent;
 
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collector;
 
-class Statistics {
+public class Statistics implements LineProcessor.EntrySink {
+    private static final OsType[] OS_TYPES = OsType.values();
+    private static final BrowserType[] BROWSER_TYPES = BrowserType.values();
+    private static final ParseError[] PARSE_ERRORS = ParseError.values();
+    private static final int STATE_MAGIC = 0x4C535441; // "LSTA"
+    // 2 - добавлены временные ряды по минутам и часам, 3 - ошибки разбора по причинам,
+    // 4 - набор метрик и классы кодов ответа, структуры только выбранных метрик,
+    // 5 - счётчики записей и запросов long: накопленное за месяцы продолжений состояние больше 2^31,
+    // 6 - пик посещений в приблизительном режиме в ограниченной памяти (SecondPeak)
+    private static final int STATE_VERSION = 6;
 
     private long totalTraffic;
-    private LocalDateTime minTime;
-    private LocalDateTime maxTime;
-    private int entryCount;
+    private long minLocalSecond; // Минимальное время записи (как в логе, без учёта зоны), секунды
+    private long maxLocalSecond; // Максимальное время записи (как в логе, без учёта зоны), секунды
+    private long entryCount;
+    private long parseErrorCount; // Количество строк, которые не удалось разобрать
+    private long[] parseErrorCounts; // Счетчики ошибок разбора по ParseError.ordinal()
+    private long yandexBotCount; // Запросы от YandexBot
+    private long googleBotCount; // Запросы от Googlebot
     private Set<String> existingPages; // Множество существующих страниц (код ответа 200)
     private Set<String> nonExistingPages; // Множество существующих страниц (код ответа 404)
-    private Map<String, Integer> osCounts; // Счетчики операционных систем
-    private Map<String, Integer> browserCounts; // Счетчики браузеров
-    private int humanVisitsCount; // Количество посещений реальными пользователями (не ботами)
-    private int errorRequestsCount; // Количество ошибочных запросов (4xx или 5xx)
-    private Set<String> uniqueHumanIPs; // Уникальные IP-адреса реальных пользователей
-    private Map<Long, Integer> visitsPerSecond; // Посещения по секундам (только реальные пользователи)
+    private long[] osCounts; // Счетчики операционных систем по OsType.ordinal()
+    private long[] browserCounts; // Счетчики браузеров по BrowserType.ordinal()
+    private long humanVisitsCount; // Количество посещений реальными пользователями (не ботами)
+    private long errorRequestsCount; // Количество ошибочных запросов (4xx или 5xx)
+    private long[] statusClassCounts; // Запросы по классам кодов ответа: 1-5 - 1xx-5xx, 0 - прочие коды
+    private LongIntHashMap visitsPerSecond; // Посещения по секундам (только реальные пользователи)
+    private SecondPeak peakVisits; // Пик посещений в секунду в приблизительном режиме
     private Set<String> refererDomains; // Сайты ссылающиеся на текущий
-    private Map<String, Integer> visitsPerHumanUser; // Посещения по каждому пользователю (IP)
+    // Посещения по каждому реальному пользователю (IP). Ключи этих карт - уникальные IP-адреса
+    private IntIntHashMap visitsPerHumanIpv4; // IPv4 как int
+    private LongPairIntHashMap visitsPerHumanIpv6; // IPv6 как два long
+    private Map<String, Integer> visitsPerHumanUser; // Остальные адреса строкой
+    // Память строк в множествах и ключах карты (HeapEstimate.string), копится при добавлении,
+    // чтобы оценка памяти не обходила все строки
+    private long existingPagesBytes;
+    private long nonExistingPagesBytes;
+    private long refererDomainsBytes;
+    private long visitsPerHumanUserBytes;
+    private final IpAddress ipAddress = new IpAddress(); // Переиспользуемый разбор IP-адреса
+    // Динамика по времени в фиксированной памяти: последние сутки по минутам и последний месяц
+    // по часам. В отличие от средних за весь период показывает всплески и последние минуты
+    private TimeSeries minuteSeries;
+    private TimeSeries hourSeries;
+
+    // Выбранные метрики и нужные им поля строки. Структуры невыбранных метрик не создаются (null),
+    // а поля, которые не нужны ни одной метрике, не запрашиваются у записи
+    private final Set<Metric> metrics;
+    private final Set<LogField> fields;
+    private final boolean needTime;
+    private final boolean needAgent;
+    private final boolean needIp;
+    private final boolean needReferer;
+    private final boolean needPath;
+
+    // Приблизительный режим с ограниченной памятью: вместо множеств выше число уникальных
+    // значений оценивает HyperLogLog (16 КБ, ошибка около 0.8%), а самые частые значения
+    // ищет Space-Saving на 1000 счётчиков (счётчик завышен не больше чем на N / 1000).
+    // Пик посещений в секунду считает SecondPeak по крайним секундам, а не карта всех секунд периода,
+    // поэтому память не зависит от объёма и длительности лога
+    private final boolean approximate;
+    private HyperLogLog existingPagesDistinct;
+    private HyperLogLog nonExistingPagesDistinct;
+    private HyperLogLog refererDomainsDistinct;
+    private HyperLogLog humanIpDistinct;
+    private SpaceSaving<String> topExistingPages;
+    private SpaceSaving<String> topNonExistingPages;
+    private SpaceSaving<String> topRefererDomains;
+    private SpaceSaving<String> topHumanIps;
 
     public Statistics() {
+        this(false);
+    }
+
+    public Statistics(boolean approximate) {
+        this(approximate, Metric.all());
+    }
+
+    public Statistics(boolean approximate, Set<Metric> metrics) {
+        this.approximate = approximate;
+        this.metrics = Collections.unmodifiableSet(metrics.isEmpty()
+                ? EnumSet.noneOf(Metric.class) : EnumSet.copyOf(metrics));
+        this.fields = Metric.fieldsOf(metrics);
+        this.needTime = fields.contains(LogField.TIME);
+        this.needAgent = fields.contains(LogField.USER_AGENT);
+        this.needIp = fields.contains(LogField.IP_ADDRESS);
+        this.needReferer = metrics.contains(Metric.REFERERS);
+        this.needPath = metrics.contains(Metric.PAGES);
+        boolean humanIps = metrics.contains(Metric.VISITS) || metrics.contains(Metric.USERS);
         this.totalTraffic = 0;
-        this.minTime = null;
-        this.maxTime = null;
+        this.minLocalSecond = Long.MAX_VALUE;
+        this.maxLocalSecond = Long.MIN_VALUE;
         this.entryCount = 0;
-        this.existingPages = new HashSet<>();
-        this.osCounts = new HashMap<>();
-        this.nonExistingPages = new HashSet<>();
-        this.browserCounts = new HashMap<>();
+        this.parseErrorCount = 0;
+        this.parseErrorCounts = new long[PARSE_ERRORS.length];
+        this.yandexBotCount = 0;
+        this.googleBotCount = 0;
+        this.osCounts = new long[OS_TYPES.length];
+        this.browserCounts = new long[BROWSER_TYPES.length];
         this.humanVisitsCount = 0;
         this.errorRequestsCount = 0;
-        this.uniqueHumanIPs = new HashSet<>();
-        this.visitsPerSecond=new HashMap<>();
-        this.refererDomains=new HashSet<>();
-        this.visitsPerHumanUser=new HashMap<>();
+        this.statusClassCounts = new long[6];
+        if (metrics.contains(Metric.PEAK)) {
+            if (approximate) {
+                this.peakVisits = new SecondPeak();
+            } else {
+                this.visitsPerSecond = new LongIntHashMap();
+            }
+        }
+        if (metrics.contains(Metric.TIME_SERIES)) {
+            this.minuteSeries = new TimeSeries(60, 24 * 60, 8);
+            this.hourSeries = new TimeSeries(3600, 31 * 24, 10);
+        }
+        if (approximate) {
+            if (needPath) {
+                this.existingPagesDistinct = new HyperLogLog();
+                this.nonExistingPagesDistinct = new HyperLogLog();
+                this.topExistingPages = new SpaceSaving<>();
+                this.topNonExistingPages = new SpaceSaving<>();
+            }
+            if (needReferer) {
+                this.refererDomainsDistinct = new HyperLogLog();
+                this.topRefererDomains = new SpaceSaving<>();
+            }
+            if (humanIps) {
+                this.humanIpDistinct = new HyperLogLog();
+                this.topHumanIps = new SpaceSaving<>();
+            }
+        } else {
+            if (needPath) {
+                this.existingPages = new HashSet<>();
+                this.nonExistingPages = new HashSet<>();
+            }
+            if (needReferer) {
+                this.refererDomains = new HashSet<>();
+            }
+            if (humanIps) {
+                this.visitsPerHumanIpv4 = new IntIntHashMap();
+                this.visitsPerHumanIpv6 = new LongPairIntHashMap();
+                this.visitsPerHumanUser = new HashMap<>();
+            }
+        }
     }
 
-    // Метод для добавления записи лога
+    // Метод для добавления записи лога. Запись должна содержать поля getFields()
     public void addEntry(LogEntry entry) {
-        // Добавляем трафик
-        this.totalTraffic += entry.getResponseSize();
+        UserAgent agent = needAgent ? entry.getAgent() : null;
+        boolean human = agent != null && !agent.isBot();
+        int responseCode = entry.getResponseCode();
+        long localSecond = needTime ? entry.getTime().toEpochSecond(ZoneOffset.UTC) : 0;
+        String ipAddressString = null;
+        if (needIp) {
+            entry.decodeIpAddr(ipAddress);
+            ipAddressString = entry.getIpAddr();
+        }
+        addCommonFields(entry.getResponseSize(), localSecond, responseCode, agent, human, ipAddress, ipAddressString);
+        if (needReferer) {
+            processRefererDomain(entry.getReferer());
+        }
 
-        // Обновляем minTime и maxTime
-        LocalDateTime entryTime = entry.getTime();
+        // Путь нужен только для кодов 200 и 404
+        if (needPath && (responseCode == 200 || responseCode == 404)) {
+            addPage(responseCode, entry.getPath());
+        }
 
-        if (this.minTime == null || entryTime.isBefore(this.minTime)) {
-            this.minTime = entryTime;
+        // Проверка, является ли запрос от реального пользователя (не бота)
+        if (human) {
+            if (approximate || ipAddress.getKind() == IpAddress.Kind.OTHER) {
+                addHumanVisit(ipAddress, ipAddressString, entry.getEpochSecond());
+            } else {
+                addHumanVisit(ipAddress, null, entry.getEpochSecond());
+            }
         }
+    }
 
-        if (this.maxTime == null || entryTime.isAfter(this.maxTime)) {
-            this.maxTime = entryTime;
+    // Метод для добавления строки, разобранной за один проход: поля запрашиваются
+    // только тогда, когда они действительно нужны выбранным метрикам
+    public void addEntry(LogLine line) {
+        UserAgent agent = needAgent ? line.getAgent() : null;
+        boolean human = agent != null && !agent.isBot();
+        int responseCode = line.getResponseCode();
+        long localSecond = line.getEpochSecond() + line.getOffsetSeconds();
+        // Строка IP-адреса создаётся, только если адрес не удалось представить числом
+        // (в приблизительном режиме строка нужна для каждого реального пользователя)
+        String ipAddressString = null;
+        if (needIp && (line.decodeIpAddr(ipAddress) == IpAddress.Kind.OTHER
+                || (approximate && human))) {
+            ipAddressString = line.getIpAddr();
+        }
+        addCommonFields(line.getResponseSize(), localSecond, responseCode, agent, human, ipAddress, ipAddressString);
+        if (needReferer) {
+            processRefererDomain(line.getReferer());
         }
 
-        // Добавляем страницу в список существующих, если код ответа 200
-        if (entry.getResponseCode() == 200) {
-            existingPages.add(entry.getPath());
+        if (needPath && (responseCode == 200 || responseCode == 404)) {
+            addPage(responseCode, line.getPath());
         }
 
-        // Добавляем страницу в список несуществующих, если код ответа 404
-        if (entry.getResponseCode() == 404) {
-            nonExistingPages.add(entry.getPath());
+        if (human) {
+            addHumanVisit(ipAddress, ipAddressString, line.getEpochSecond());
         }
+    }
 
-        // Подсчет ошибочных запросов (4xx или 5xx)
-        int responseCode = entry.getResponseCode();
-        if (responseCode >= 400 && responseCode < 600) {
-            errorRequestsCount++;
+    // Метод для добавления записи из колоночного кэша: домен referer, User-Agent и IP-адрес
+    // разобраны заранее, один раз на каждое уникальное значение, поэтому текст не разбирается.
+    // refererDomain == null - у записи нет домена referer. Поля, не нужные выбранным
+    // метрикам, не читаются из кэша и передаются как null
+    void addEntry(long responseSize, long epochSecond, int offsetSeconds, int responseCode, String path,
+                  String refererDomain, UserAgent agent, IpAddress ip, String ipAddressString) {
+        boolean human = agent != null && !agent.isBot();
+        addCommonFields(responseSize, epochSecond + offsetSeconds, responseCode, agent, human, ip, ipAddressString);
+        if (refererDomain != null) {
+            addRefererDomain(refererDomain);
         }
 
-        // Проверка, является ли запрос от реального пользователя (не бота)
-        UserAgent agent = entry.getAgent();
-        boolean isHuman = !agent.isBot();
+        if (needPath && (responseCode == 200 || responseCode == 404)) {
+            addPage(responseCode, path);
+        }
 
-        // Обработка referer для получения домена
-        processRefererDomain(entry.getReferer());
+        if (human) {
+            addHumanVisit(ip, ipAddressString, epochSecond);
+        }
+    }
 
-        if (isHuman) {
-            // Увеличиваем счетчик посещений реальными пользователями
-            humanVisitsCount++;
+    // Учитываем поля, которые нужны для каждой записи. agent == null - User-Agent не нужен метрикам,
+    // тогда human == false; ip нужен только временным рядам и уже разобран, если они выбраны
+    private void addCommonFields(long responseSize, long localSecond, int responseCode, UserAgent agent,
+                                 boolean human, IpAddress ip, String ipAddressString) {
+        // Добавляем трафик
+        this.totalTraffic += responseSize;
 
-            // Добавляем IP-адрес в множество уникальных IP-адресов реальных пользователей
-            uniqueHumanIPs.add(entry.getIpAddr());
+        // Обновляем минимальное и максимальное время
+        if (needTime) {
+            if (localSecond < this.minLocalSecond) {
+                this.minLocalSecond = localSecond;
+            }
 
-            // Подсчет посещений по секундам (только для реальных пользователей)
-            updateVisitsPerSecond(entryTime);
+            if (localSecond > this.maxLocalSecond) {
+                this.maxLocalSecond = localSecond;
+            }
+        }
 
-            // Подсчет посещений по каждому пользователю (IP)
-            updateVisitsPerUser(entry.getIpAddr());
+        // Подсчет ошибочных запросов (4xx или 5xx)
+        boolean error = responseCode >= 400 && responseCode < 600;
+        if (error) {
+            errorRequestsCount++;
         }
+        statusClassCounts[responseCode >= 100 && responseCode < 600 ? responseCode / 100 : 0]++;
 
-        // Подсчитываем операционные системы
-        String osType = entry.getAgent().getOsType();
-        osCounts.put(osType, osCounts.getOrDefault(osType, 0) + 1);
+        // Корзины минуты и часа записи
+        if (minuteSeries != null) {
+            long ipHash = ipHash(ip, ipAddressString);
+            minuteSeries.add(localSecond, responseSize, error, human, ipHash);
+            hourSeries.add(localSecond, responseSize, error, human, ipHash);
+        }
+
+        if (agent != null) {
+            // Подсчитываем запросы поисковых ботов: классификация уже есть в UserAgent
+            SearchBot searchBot = agent.getSearchBot();
+            if (searchBot == SearchBot.YANDEX) {
+                yandexBotCount++;
+            } else if (searchBot == SearchBot.GOOGLE) {
+                googleBotCount++;
+            }
 
-        // Подсчитываем браузеры
-        String browserType = entry.getAgent().getBrowserType();
-        browserCounts.put(browserType, browserCounts.getOrDefault(browserType, 0) + 1);
+            // Подсчитываем операционные системы
+            osCounts[agent.getOs().ordinal()]++;
+
+            // Подсчитываем браузеры
+            browserCounts[agent.getBrowser().ordinal()]++;
+        }
 
         this.entryCount++;
     }
 
-    // Вспомогательный метод для обновления посещений по секундам
-    private void updateVisitsPerSecond(LocalDateTime entryTime) {
-        // Преобразуем время в секунды с эпохи (Unix timestamp)
-        long seconds = entryTime.toEpochSecond(java.time.ZoneOffset.UTC);
+    // Хеш IP-адреса для оценки уникальных адресов во временных рядах: один и тот же адрес даёт
+    // один хеш при любом способе разбора. Строка нужна только для адресов, не представимых числом
+    private static long ipHash(IpAddress ip, String ipAddressString) {
+        return switch (ip.getKind()) {
+            case IPV4 -> HyperLogLog.mix(Integer.toUnsignedLong(ip.getIpv4()));
+            case IPV6 -> HyperLogLog.mix(ip.getHigh() ^ HyperLogLog.mix(ip.getLow()));
+            default -> HyperLogLog.hash(ipAddressString);
+        };
+    }
 
-        // Увеличиваем счетчик для этой секунды
-        visitsPerSecond.put(seconds, visitsPerSecond.getOrDefault(seconds, 0) + 1);
+    // Учитываем строку, которую не удалось разобрать
+    public void addParseError(ParseError reason) {
+        parseErrorCount++;
+        parseErrorCounts[reason.ordinal()]++;
     }
 
-    // Вспомогательный метод для обновления посещений по пользователю
-    private void updateVisitsPerUser(String ipAddress) {
-        visitsPerHumanUser.put(ipAddress, visitsPerHumanUser.getOrDefault(ipAddress, 0) + 1);
+    // Учитываем сразу count строк с одной причиной ошибки (счётчики из колоночного кэша)
+    void addParseErrors(ParseError reason, int count) {
+        parseErrorCount += count;
+        parseErrorCounts[reason.ordinal()] += count;
     }
 
-    // Вспомогательный метод для обработки referer и извлечения домена
-    private void processRefererDomain(String referer) {
-        if (referer == null || referer.isEmpty() || referer.equals("-")) {
-            return;
+    // Объединяем с другой статистикой, собранной по другой части данных (другой поток, файл, день).
+    // Результат тот же, как если бы все записи добавлялись в одну статистику, поэтому операция
+    // ассоциативна и порядок объединения не важен. Данные other копируются, other не меняется.
+    // В приблизительном режиме оценки объединяются с теми же границами ошибки.
+    // Возвращаем this, чтобы метод подходил как combiner для Collector
+    public Statistics combine(Statistics other) {
+        if (this.approximate != other.approximate) {
+            throw new IllegalArgumentException("Нельзя объединить точную и приблизительную статистику");
+        }
+        if (!this.metrics.equals(other.metrics)) {
+            throw new IllegalArgumentException("Нельзя объединить статистику с разными наборами метрик");
+        }
+        this.totalTraffic += other.totalTraffic;
+        this.minLocalSecond = Math.min(this.minLocalSecond, other.minLocalSecond);
+        this.maxLocalSecond = Math.max(this.maxLocalSecond, other.maxLocalSecond);
+        this.entryCount += other.entryCount;
+        this.parseErrorCount += other.parseErrorCount;
+        for (int i = 0; i < parseErrorCounts.length; i++) {
+            parseErrorCounts[i] += other.parseErrorCounts[i];
+        }
+        this.yandexBotCount += other.yandexBotCount;
+        this.googleBotCount += other.googleBotCount;
+        for (int i = 0; i < osCounts.length; i++) {
+            osCounts[i] += other.osCounts[i];
+        }
+        for (int i = 0; i < browserCounts.length; i++) {
+            browserCounts[i] += other.browserCounts[i];
+        }
+        this.humanVisitsCount += other.humanVisitsCount;
+        this.errorRequestsCount += other.errorRequestsCount;
+        for (int i = 0; i < statusClassCounts.length; i++) {
+            statusClassCounts[i] += other.statusClassCounts[i];
+        }
+        // Набор метрик одинаков, поэтому у обеих статистик созданы одни и те же структуры
+        if (visitsPerSecond != null) {
+            this.visitsPerSecond.addAll(other.visitsPerSecond);
+        }
+        if (peakVisits != null) {
+            this.peakVisits.merge(other.peakVisits);
+        }
+        if (minuteSeries != null) {
+            this.minuteSeries.merge(other.minuteSeries);
+            this.hourSeries.merge(other.hourSeries);
+        }
+        if (approximate) {
+            if (existingPagesDistinct != null) {
+                this.existingPagesDistinct.merge(other.existingPagesDistinct);
+                this.nonExistingPagesDistinct.merge(other.nonExistingPagesDistinct);
+                this.topExistingPages.merge(other.topExistingPages);
+                this.topNonExistingPages.merge(other.topNonExistingPages);
+            }
+            if (refererDomainsDistinct != null) {
+                this.refererDomainsDistinct.merge(other.refererDomainsDistinct);
+                this.topRefererDomains.merge(other.topRefererDomains);
+            }
+            if (humanIpDistinct != null) {
+                this.humanIpDistinct.merge(other.humanIpDistinct);
+                this.topHumanIps.merge(other.topHumanIps);
+            }
+        } else {
+            if (existingPages != null) {
+                this.existingPagesBytes += addAll(this.existingPages, other.existingPages);
+                this.nonExistingPagesBytes += addAll(this.nonExistingPages, other.nonExistingPages);
+            }
+            if (refererDomains != null) {
+                this.refererDomainsBytes += addAll(this.refererDomains, other.refererDomains);
+            }
+            if (visitsPerHumanIpv4 != null) {
+                this.visitsPerHumanIpv4.addAll(other.visitsPerHumanIpv4);
+                this.visitsPerHumanIpv6.addAll(other.visitsPerHumanIpv6);
+                for (Map.Entry<String, Integer> entry : other.visitsPerHumanUser.entrySet()) {
+                    addUserVisits(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return this;
+    }
+
+    // Двоичное состояние статистики для контрольных точек и продолжения анализа.
+    // Формат версионный: заголовок, режим, счётчики числами переменной длины, множества и карты.
+    // Ключи числовых карт пишутся по возрастанию разностями, поэтому секунды и IPv4 занимают 1-3 байта
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(STATE_MAGIC);
+        out.writeShort(STATE_VERSION);
+        out.writeBoolean(approximate);
+        BinaryFormat.writeCount(out, metrics.size());
+        for (Metric metric : metrics) {
+            BinaryFormat.writeString(out, metric.name());
         }
 
-        try {
-            // Пытаемся создать URI из referer
-            URI uri = new URI(referer);
-            String host = uri.getHost();
+        BinaryFormat.writeSignedVarLong(out, totalTraffic);
+        BinaryFormat.writeSignedVarLong(out, minLocalSecond);
+        BinaryFormat.writeSignedVarLong(out, maxLocalSecond);
+        BinaryFormat.writeLongCount(out, entryCount);
+        BinaryFormat.writeLongCount(out, parseErrorCount);
+        BinaryFormat.writeLongCount(out, yandexBotCount);
+        BinaryFormat.writeLongCount(out, googleBotCount);
+        BinaryFormat.writeLongCount(out, humanVisitsCount);
+        BinaryFormat.writeLongCount(out, errorRequestsCount);
+        writeEnumCounts(out, OS_TYPES, osCounts);
+        writeEnumCounts(out, BROWSER_TYPES, browserCounts);
+        if (visitsPerSecond != null) {
+            writeSecondCounts(out, visitsPerSecond);
+        }
+        if (peakVisits != null) {
+            peakVisits.writeTo(out);
+        }
+        if (minuteSeries != null) {
+            minuteSeries.writeTo(out);
+            hourSeries.writeTo(out);
+        }
+        writeEnumCounts(out, PARSE_ERRORS, parseErrorCounts);
+        for (long count : statusClassCounts) {
+            BinaryFormat.writeLongCount(out, count);
+        }
 
-            if (host != null && !host.isEmpty()) {
-                // Убираем www. если есть
-                if (host.startsWith("www.")) {
-                    host = host.substring(4);
+        // Структуры пишутся в одном порядке для всех версий, отсутствующие пропускаются
+        if (approximate) {
+            for (HyperLogLog distinct : Arrays.asList(existingPagesDistinct, nonExistingPagesDistinct,
+                    refererDomainsDistinct, humanIpDistinct)) {
+                if (distinct != null) {
+                    distinct.writeTo(out);
+                }
+            }
+            for (SpaceSaving<String> top : Arrays.asList(topExistingPages, topNonExistingPages,
+                    topRefererDomains, topHumanIps)) {
+                if (top != null) {
+                    SpaceSaving.writeTo(top, out);
+                }
+            }
+        } else {
+            if (existingPages != null) {
+                BinaryFormat.writeStrings(out, existingPages);
+                BinaryFormat.writeStrings(out, nonExistingPages);
+            }
+            if (refererDomains != null) {
+                BinaryFormat.writeStrings(out, refererDomains);
+            }
+            if (visitsPerHumanIpv4 != null) {
+                writeIpv4Counts(out, visitsPerHumanIpv4);
+                writeIpv6Counts(out, visitsPerHumanIpv6);
+                BinaryFormat.writeCount(out, visitsPerHumanUser.size());
+                for (Map.Entry<String, Integer> entry : visitsPerHumanUser.entrySet()) {
+                    BinaryFormat.writeString(out, entry.getKey());
+                    BinaryFormat.writeCount(out, entry.getValue());
                 }
-                refererDomains.add(host);
             }
-        } catch (URISyntaxException e) {
-            // Если не удалось распарсить как URI, попробуем извлечь домен вручную
-            extractDomainManually(referer);
         }
     }
 
-    // Вспомогательный метод для ручного извлечения домена
-    private void extractDomainManually(String referer) {
-        try {
-            // Убираем протокол если есть
-            String url = referer.toLowerCase();
-            if (url.startsWith("http://")) {
-                url = url.substring(7);
-            } else if (url.startsWith("https://")) {
-                url = url.substring(8);
+    // Читаем состояние, записанное writeTo. IOException - не наш формат, неизвестная версия
+    // или повреждённые данные
+    public static Statistics readFrom(DataInput in) throws IOException {
+        if (in.readInt() != STATE_MAGIC) {
+            throw new IOException("Это не сохранённое состояние статистики");
+        }
+        // Состояние версии 1 читается без временных рядов: они копятся заново с продолжения анализа.
+        // В состоянии до версии 3 ошибки разбора есть только общим числом, без причин,
+        // до версии 4 - все метрики и без классов кодов ответа. Счётчики до версии 5 записаны
+        // так же, числами переменной длины, только не больше Integer.MAX_VALUE
+        int version = in.readUnsignedShort();
+        if (version < 1 || version > STATE_VERSION) {
+            throw new IOException("Неподдерживаемая версия состояния статистики: " + version);
+        }
+        boolean approximate = in.readBoolean();
+        // До версии 4 собирались все метрики, кроме классов кодов ответа
+        Set<Metric> metrics = Metric.all();
+        metrics.remove(Metric.STATUS);
+        if (version >= 4) {
+            metrics.clear();
+            int count = BinaryFormat.readCount(in);
+            for (int i = 0; i < count; i++) {
+                String name = BinaryFormat.readString(in);
+                try {
+                    metrics.add(Metric.valueOf(name));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Неизвестная метрика в состоянии: " + name);
+                }
             }
+        }
+        Statistics statistics = new Statistics(approximate, metrics);
 
-            // Убираем www. если есть
-            if (url.startsWith("www.")) {
-                url = url.substring(4);
+        statistics.totalTraffic = BinaryFormat.readSignedVarLong(in);
+        statistics.minLocalSecond = BinaryFormat.readSignedVarLong(in);
+        statistics.maxLocalSecond = BinaryFormat.readSignedVarLong(in);
+        statistics.entryCount = BinaryFormat.readLongCount(in);
+        statistics.parseErrorCount = BinaryFormat.readLongCount(in);
+        statistics.yandexBotCount = BinaryFormat.readLongCount(in);
+        statistics.googleBotCount = BinaryFormat.readLongCount(in);
+        statistics.humanVisitsCount = BinaryFormat.readLongCount(in);
+        statistics.errorRequestsCount = BinaryFormat.readLongCount(in);
+        readEnumCounts(in, OS_TYPES, statistics.osCounts);
+        readEnumCounts(in, BROWSER_TYPES, statistics.browserCounts);
+        if (statistics.visitsPerSecond != null) {
+            readSecondCounts(in, statistics.visitsPerSecond);
+        }
+        if (statistics.peakVisits != null) {
+            // До версии 6 приблизительный режим тоже хранил все секунды: лишние вытесняются при чтении
+            if (version >= 6) {
+                statistics.peakVisits.readFrom(in);
+            } else {
+                statistics.peakVisits.readSecondCounts(in);
             }
+        }
+        if (version >= 2 && statistics.minuteSeries != null) {
+            statistics.minuteSeries.readFrom(in);
+            statistics.hourSeries.readFrom(in);
+        }
+        if (version >= 3) {
+            readEnumCounts(in, PARSE_ERRORS, statistics.parseErrorCounts);
+        }
+        if (version >= 4) {
+            for (int i = 0; i < statistics.statusClassCounts.length; i++) {
+                statistics.statusClassCounts[i] = BinaryFormat.readLongCount(in);
+            }
+        }
 
-            // Берем часть до первого / или конца строки
-            int slashIndex = url.indexOf('/');
-            if (slashIndex > 0) {
-                url = url.substring(0, slashIndex);
+        if (statistics.approximate) {
+            if (statistics.existingPagesDistinct != null) {
+                statistics.existingPagesDistinct = HyperLogLog.readFrom(in);
+                statistics.nonExistingPagesDistinct = HyperLogLog.readFrom(in);
+            }
+            if (statistics.refererDomainsDistinct != null) {
+                statistics.refererDomainsDistinct = HyperLogLog.readFrom(in);
+            }
+            if (statistics.humanIpDistinct != null) {
+                statistics.humanIpDistinct = HyperLogLog.readFrom(in);
+            }
+            if (statistics.topExistingPages != null) {
+                statistics.topExistingPages = SpaceSaving.readFrom(in);
+                statistics.topNonExistingPages = SpaceSaving.readFrom(in);
             }
+            if (statistics.topRefererDomains != null) {
+                statistics.topRefererDomains = SpaceSaving.readFrom(in);
+            }
+            if (statistics.topHumanIps != null) {
+                statistics.topHumanIps = SpaceSaving.readFrom(in);
+            }
+        } else {
+            if (statistics.existingPages != null) {
+                BinaryFormat.readStrings(in, statistics.existingPages);
+                BinaryFormat.readStrings(in, statistics.nonExistingPages);
+                statistics.existingPagesBytes = HeapEstimate.strings(statistics.existingPages);
+                statistics.nonExistingPagesBytes = HeapEstimate.strings(statistics.nonExistingPages);
+            }
+            if (statistics.refererDomains != null) {
+                BinaryFormat.readStrings(in, statistics.refererDomains);
+                statistics.refererDomainsBytes = HeapEstimate.strings(statistics.refererDomains);
+            }
+            if (statistics.visitsPerHumanIpv4 != null) {
+                readIpv4Counts(in, statistics.visitsPerHumanIpv4);
+                readIpv6Counts(in, statistics.visitsPerHumanIpv6);
+                int users = BinaryFormat.readCount(in);
+                for (int i = 0; i < users; i++) {
+                    statistics.addUserVisits(BinaryFormat.readString(in), BinaryFormat.readCount(in));
+                }
+            }
+        }
+        return statistics;
+    }
+
+    // Счётчики по значениям перечисления пишутся с именами: состояние читается и после
+    // добавления новых значений перечисления
+    private static void writeEnumCounts(DataOutput out, Enum<?>[] values, long[] counts) throws IOException {
+        BinaryFormat.writeCount(out, values.length);
+        for (Enum<?> value : values) {
+            BinaryFormat.writeString(out, value.name());
+            BinaryFormat.writeLongCount(out, counts[value.ordinal()]);
+        }
+    }
+
+    private static void readEnumCounts(DataInput in, Enum<?>[] values, long[] counts) throws IOException {
+        int size = BinaryFormat.readCount(in);
+        for (int i = 0; i < size; i++) {
+            String name = BinaryFormat.readString(in);
+            long count = BinaryFormat.readLongCount(in);
+            Enum<?> value = Arrays.stream(values).filter(v -> v.name().equals(name)).findFirst()
+                    .orElseThrow(() -> new IOException("Неизвестное значение в состоянии: " + name));
+            counts[value.ordinal()] = count;
+        }
+    }
+
+    private static void writeSecondCounts(DataOutput out, LongIntHashMap counts) throws IOException {
+        long[] keys = new long[counts.size()];
+        int[] index = {0};
+        counts.forEach((key, value) -> keys[index[0]++] = key);
+        Arrays.sort(keys);
+        BinaryFormat.writeCount(out, keys.length);
+        long previous = 0;
+        for (long key : keys) {
+            BinaryFormat.writeSignedVarLong(out, key - previous);
+            BinaryFormat.writeCount(out, counts.get(key));
+            previous = key;
+        }
+    }
+
+    private static void readSecondCounts(DataInput in, LongIntHashMap counts) throws IOException {
+        int size = BinaryFormat.readCount(in);
+        long key = 0;
+        for (int i = 0; i < size; i++) {
+            key += BinaryFormat.readSignedVarLong(in);
+            counts.add(key, BinaryFormat.readCount(in));
+        }
+    }
+
+    // IPv4 как беззнаковые числа по возрастанию
+    private static void writeIpv4Counts(DataOutput out, IntIntHashMap counts) throws IOException {
+        long[] keys = new long[counts.size()];
+        int[] index = {0};
+        counts.forEach((key, value) -> keys[index[0]++] = Integer.toUnsignedLong(key));
+        Arrays.sort(keys);
+        BinaryFormat.writeCount(out, keys.length);
+        long previous = 0;
+        for (long key : keys) {
+            BinaryFormat.writeVarLong(out, key - previous);
+            BinaryFormat.writeCount(out, counts.get((int) key));
+            previous = key;
+        }
+    }
 
-            // Убираем порт если есть
-            int colonIndex = url.indexOf(':');
-            if (colonIndex > 0) {
-                url = url.substring(0, colonIndex);
+    private static void readIpv4Counts(DataInput in, IntIntHashMap counts) throws IOException {
+        int size = BinaryFormat.readCount(in);
+        long key = 0;
+        for (int i = 0; i < size; i++) {
+            key += BinaryFormat.readVarLong(in);
+            counts.add((int) key, BinaryFormat.readCount(in));
+        }
+    }
+
+    private static void writeIpv6Counts(DataOutput out, LongPairIntHashMap counts) throws IOException {
+        BinaryFormat.writeCount(out, counts.size());
+        IOException[] failure = new IOException[1];
+        counts.forEach((high, low, value) -> {
+            try {
+                out.writeLong(high);
+                out.writeLong(low);
+                BinaryFormat.writeCount(out, value);
+            } catch (IOException e) {
+                failure[0] = e;
             }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
 
-            if (!url.isEmpty()) {
-                refererDomains.add(url);
+    private static void readIpv6Counts(DataInput in, LongPairIntHashMap counts) throws IOException {
+        int size = BinaryFormat.readCount(in);
+        for (int i = 0; i < size; i++) {
+            counts.add(in.readLong(), in.readLong(), BinaryFormat.readCount(in));
+        }
+    }
+
+    // Collector для сбора статистики из Stream<LogEntry>, в том числе параллельного:
+    // каждый поток копит свою статистику, затем они объединяются через combine
+    public static Collector<LogEntry, ?, Statistics> collector() {
+        return Collector.of(Statistics::new, Statistics::addEntry, Statistics::combine,
+                Collector.Characteristics.UNORDERED);
+    }
+
+    // Добавляем страницу в список существующих (код 200) или несуществующих (код 404)
+    private void addPage(int responseCode, String path) {
+        if (approximate) {
+            if (responseCode == 200) {
+                existingPagesDistinct.add(path);
+                topExistingPages.add(path);
+            } else {
+                nonExistingPagesDistinct.add(path);
+                topNonExistingPages.add(path);
+            }
+        } else if (responseCode == 200) {
+            if (existingPages.add(path)) {
+                existingPagesBytes += HeapEstimate.string(path);
             }
-        } catch (Exception e) {
-            // Игнорируем некорректные referer
+        } else if (nonExistingPages.add(path)) {
+            nonExistingPagesBytes += HeapEstimate.string(path);
         }
     }
 
-    // Метод расчёта пиковой посещаемости сайта (в секунду)
-    public int getPeakVisitsPerSecond() {
-        if (visitsPerSecond.isEmpty()) {
-            return 0;
+    // Добавляем все строки source в target, результат - память добавленных строк
+    private static long addAll(Set<String> target, Set<String> source) {
+        long bytes = 0;
+        for (String value : source) {
+            if (target.add(value)) {
+                bytes += HeapEstimate.string(value);
+            }
+        }
+        return bytes;
+    }
+
+    // Учитываем посещение реальным пользователем. Адрес уже разобран в ip,
+    // строка ipAddressString нужна только для адресов, не представимых числом
+    private void addHumanVisit(IpAddress ip, String ipAddressString, long epochSecond) {
+        // Увеличиваем счетчик посещений реальными пользователями
+        humanVisitsCount++;
+
+        // Подсчет посещений по секундам (только для реальных пользователей)
+        if (visitsPerSecond != null || peakVisits != null) {
+            updateVisitsPerSecond(epochSecond);
         }
 
+        // Подсчет посещений по каждому пользователю (IP)
+        if (humanIpDistinct != null || visitsPerHumanIpv4 != null) {
+            updateVisitsPerUser(ip, ipAddressString);
+        }
+    }
+
+    // Вспомогательный метод для обновления посещений по секундам
+    private void updateVisitsPerSecond(long epochSecond) {
+        // Увеличиваем счетчик для этой секунды (Unix timestamp с учётом зоны)
+        if (approximate) {
+            peakVisits.increment(epochSecond);
+        } else {
+            visitsPerSecond.increment(epochSecond);
+        }
+    }
+
+    // Вспомогательный метод для обновления посещений по пользователю
+    private void updateVisitsPerUser(IpAddress ip, String ipAddressString) {
+        if (approximate) {
+            humanIpDistinct.add(ipAddressString);
+            topHumanIps.add(ipAddressString);
+            return;
+        }
+
+        // IPv4 и IPv6 храним числами, остальные адреса - строкой
+        switch (ip.getKind()) {
+            case IPV4 -> visitsPerHumanIpv4.increment(ip.getIpv4());
+            case IPV6 -> visitsPerHumanIpv6.increment(ip.getHigh(), ip.getLow());
+            default -> addUserVisits(ipAddressString, 1);
+        }
+    }
+
+    // Посещения адреса, не представимого числом; новый адрес добавляет память ключа
+    private void addUserVisits(String ipAddressString, int count) {
+        if (visitsPerHumanUser.merge(ipAddressString, count, Integer::sum) == count) {
+            visitsPerHumanUserBytes += HeapEstimate.string(ipAddressString);
+        }
+    }
+
+    // Вспомогательный метод для обработки referer и извлечения домена
+    private void processRefererDomain(String referer) {
+        String domain = RefererDomains.of(referer);
+        if (domain != null) {
+            addRefererDomain(domain);
+        }
+    }
+
+    private void addRefererDomain(String domain) {
+        if (approximate) {
+            refererDomainsDistinct.add(domain);
+            topRefererDomains.add(domain);
+        } else {
+            if (refererDomains.add(domain)) {
+                refererDomainsBytes += HeapEstimate.string(domain);
+            }
+        }
+    }
+
+    // Метод расчёта пиковой посещаемости сайта (в секунду)
+    public int getPeakVisitsPerSecond() {
         // Находим максимальное значение в мапе
-        return visitsPerSecond.values().stream()
-                .max(Integer::compareTo)
-                .orElse(0);
+        if (peakVisits != null) {
+            return peakVisits.peak();
+        }
+        return visitsPerSecond == null ? 0 : visitsPerSecond.maxValue();
     }
 
     // Метод, возвращающий список сайтов, со страниц которых есть ссылки на текущий сайт
+    // (в приблизительном режиме - только самые частые)
     public Set<String> getRefererDomains() {
+        if (approximate) {
+            return getTopRefererDomains().keySet();
+        }
         // Возвращаем копию для защиты данных
-        return new HashSet<>(refererDomains);
+        return refererDomains == null ? new HashSet<>() : new HashSet<>(refererDomains);
+    }
+
+    // Ряд по минутам за последние сутки лога: окна вида "ошибок в минуту за последние 15 минут".
+    // null - метрика TIME_SERIES не выбрана
+    public TimeSeries getMinuteSeries() {
+        return minuteSeries;
+    }
+
+    // Ряд по часам за последний месяц лога
+    public TimeSeries getHourSeries() {
+        return hourSeries;
     }
 
     // Метод расчёта максимальной посещаемости одним пользователем
+    // (в приблизительном режиме - оценка сверху с ошибкой не больше getApproximationErrorBound)
     public int getMaxVisitsBySingleUser() {
-        if (visitsPerHumanUser.isEmpty()) {
+        if (approximate) {
+            return topHumanIps == null ? 0 : (int) topHumanIps.maxCount();
+        }
+        if (visitsPerHumanIpv4 == null) {
             return 0;
         }
-
-        // Находим максимальное значение в мапе
-        return visitsPerHumanUser.values().stream()
-                .max(Integer::compareTo)
-                .orElse(0);
+        // Находим максимальное значение среди IPv4, IPv6 и остальных адресов
+        int max = Math.max(visitsPerHumanIpv4.maxValue(), visitsPerHumanIpv6.maxValue());
+        for (int visits : visitsPerHumanUser.values()) {
+            max = Math.max(max, visits);
+        }
+        return max;
     }
 
     // Метод подсчёта среднего количества посещений сайта за час (только реальные пользователи)
     public double getAverageVisitsPerHour() {
-        if (minTime == null || maxTime == null || humanVisitsCount == 0) {
+        if (getMinTime() == null || humanVisitsCount == 0) {
             return 0.0;
         }
 
         // Вычисляем разницу во времени в часах
-        long hoursBetween = ChronoUnit.HOURS.between(minTime, maxTime);
+        long hoursBetween = ChronoUnit.HOURS.between(getMinTime(), getMaxTime());
 
         // Если временной интервал меньше часа, считаем его как 1 час для избежания деления на 0
         if (hoursBetween == 0) {
@@ -234,12 +850,12 @@ class Statistics {
 
     // Метод подсчёта среднего количества ошибочных запросов в час
     public double getAverageErrorRequestsPerHour() {
-        if (minTime == null || maxTime == null || errorRequestsCount == 0) {
+        if (getMinTime() == null || errorRequestsCount == 0) {
             return 0.0;
         }
 
         // Вычисляем разницу во времени в часах
-        long hoursBetween = ChronoUnit.HOURS.between(minTime, maxTime);
+        long hoursBetween = ChronoUnit.HOURS.between(getMinTime(), getMaxTime());
 
         // Если временной интервал меньше часа, считаем его как 1 час для избежания деления на 0
         if (hoursBetween == 0) {
@@ -252,22 +868,23 @@ class Statistics {
 
     // Метод расчёта средней посещаемости одним пользователем
     public double getAverageVisitsPerUser() {
-        if (humanVisitsCount == 0 || uniqueHumanIPs.isEmpty()) {
+        int uniqueHumanIPs = getUniqueHumanIpCount();
+        if (humanVisitsCount == 0 || uniqueHumanIPs == 0) {
             return 0.0;
         }
 
         // Делим общее количество посещений реальными пользователями на число уникальных IP-адресов
-        return (double) humanVisitsCount / uniqueHumanIPs.size();
+        return (double) humanVisitsCount / uniqueHumanIPs;
     }
 
     // Метод для расчета среднего объема трафика за час
     public double getTrafficRate() {
-        if (minTime == null || maxTime == null || totalTraffic == 0) {
+        if (getMinTime() == null || totalTraffic == 0) {
             return 0.0;
         }
 
         // Вычисляем разницу во времени в часах
-        long hoursBetween = ChronoUnit.HOURS.between(minTime, maxTime);
+        long hoursBetween = ChronoUnit.HOURS.between(getMinTime(), getMaxTime());
 
         // Если временной интервал меньше часа, считаем его как 1 час для избежания деления на 0
         if (hoursBetween == 0) {
@@ -279,15 +896,23 @@ class Statistics {
     }
 
     // Метод для возвращения списка всех существующих страниц сайта (код ответа 200)
+    // (в приблизительном режиме - только самые частые)
     public Set<String> getExistingPages() {
+        if (approximate) {
+            return getTopExistingPages().keySet();
+        }
         // Возвращаем копию множества, чтобы защитить исходные данные
-        return new HashSet<>(existingPages);
+        return existingPages == null ? new HashSet<>() : new HashSet<>(existingPages);
     }
 
     // Метод для возвращения списка всех несуществующих страниц сайта (код ответа 404)
+    // (в приблизительном режиме - только самые частые)
     public Set<String> getNonExistingPages() {
+        if (approximate) {
+            return getTopNonExistingPages().keySet();
+        }
         // Возвращаем копию множества, чтобы защитить исходные данные
-        return new HashSet<>(nonExistingPages);
+        return nonExistingPages == null ? new HashSet<>() : new HashSet<>(nonExistingPages);
     }
 
     // Метод для возвращения статистики операционных систем (доли от 0 до 1)
@@ -296,10 +921,12 @@ class Statistics {
         if (entryCount == 0) {
             return osStatistics; // Возвращаем пустую карту, если нет записей
         }
-        // Рассчитываем долю для каждой операционной системы
-        for (Map.Entry<String, Integer> entry : osCounts.entrySet()) {
-            double share = (double) entry.getValue() / entryCount;
-            osStatistics.put(entry.getKey(), share);
+        // Рассчитываем долю для каждой встретившейся операционной системы
+        for (OsType os : OS_TYPES) {
+            long count = osCounts[os.ordinal()];
+            if (count > 0) {
+                osStatistics.put(os.getDisplayName(), (double) count / entryCount);
+            }
         }
         return osStatistics;
     }
@@ -312,20 +939,134 @@ class Statistics {
             return browserStatistics; // Возвращаем пустую карту, если нет записей
         }
 
-        // Рассчитываем долю для каждого браузера
-        for (Map.Entry<String, Integer> entry : browserCounts.entrySet()) {
-            double share = (double) entry.getValue() / entryCount;
-            browserStatistics.put(entry.getKey(), share);
+        // Рассчитываем долю для каждого встретившегося браузера
+        for (BrowserType browser : BROWSER_TYPES) {
+            long count = browserCounts[browser.ordinal()];
+            if (count > 0) {
+                browserStatistics.put(browser.getDisplayName(), (double) count / entryCount);
+            }
         }
         return browserStatistics;
     }
 
+    // Количество уникальных IP-адресов реальных пользователей
+    public int getUniqueHumanIpCount() {
+        if (approximate) {
+            return humanIpDistinct == null ? 0 : (int) humanIpDistinct.estimate();
+        }
+        if (visitsPerHumanIpv4 == null) {
+            return 0;
+        }
+        return visitsPerHumanIpv4.size() + visitsPerHumanIpv6.size() + visitsPerHumanUser.size();
+    }
+
     public int getExistingPagesCount() { // возвращаем количество существующих страниц
-        return existingPages.size();
+        if (!needPath) {
+            return 0;
+        }
+        return approximate ? (int) existingPagesDistinct.estimate() : existingPages.size();
     }
 
     public int getNonExistingPagesCount() { // возвращаем количество существующих страниц
-        return nonExistingPages.size();
+        if (!needPath) {
+            return 0;
+        }
+        return approximate ? (int) nonExistingPagesDistinct.estimate() : nonExistingPages.size();
+    }
+
+    public int getRefererDomainsCount() {
+        if (!needReferer) {
+            return 0;
+        }
+        return approximate ? (int) refererDomainsDistinct.estimate() : refererDomains.size();
+    }
+
+    public boolean isApproximate() {
+        return approximate;
+    }
+
+    // Оценка памяти, занятой структурами статистики, в байтах по именам полей (только созданные
+    // структуры). Память строк множеств копится при добавлении, поэтому оценка не обходит строки,
+    // но вызывать её стоит из потока, который наполняет статистику, или после анализа
+    public Map<String, Long> estimateHeapBytes() {
+        Map<String, Long> bytes = new LinkedHashMap<>();
+        bytes.put("counters", HeapEstimate.array(8, parseErrorCounts.length) + HeapEstimate.array(8, osCounts.length)
+                + HeapEstimate.array(8, browserCounts.length) + HeapEstimate.array(8, statusClassCounts.length));
+        if (visitsPerSecond != null) {
+            bytes.put("visitsPerSecond", visitsPerSecond.estimateHeapBytes());
+        }
+        if (peakVisits != null) {
+            bytes.put("peakVisits", peakVisits.estimateHeapBytes());
+        }
+        if (minuteSeries != null) {
+            bytes.put("minuteSeries", minuteSeries.estimateHeapBytes());
+            bytes.put("hourSeries", hourSeries.estimateHeapBytes());
+        }
+        if (existingPages != null) {
+            bytes.put("existingPages", HeapEstimate.stringSet(existingPages.size(), existingPagesBytes));
+            bytes.put("nonExistingPages", HeapEstimate.stringSet(nonExistingPages.size(), nonExistingPagesBytes));
+        }
+        if (refererDomains != null) {
+            bytes.put("refererDomains", HeapEstimate.stringSet(refererDomains.size(), refererDomainsBytes));
+        }
+        if (visitsPerHumanIpv4 != null) {
+            bytes.put("visitsPerHumanIpv4", visitsPerHumanIpv4.estimateHeapBytes());
+            bytes.put("visitsPerHumanIpv6", visitsPerHumanIpv6.estimateHeapBytes());
+            bytes.put("visitsPerHumanUser", HeapEstimate.stringIntMap(visitsPerHumanUser.size(), visitsPerHumanUserBytes));
+        }
+        if (existingPagesDistinct != null) {
+            bytes.put("existingPagesDistinct", existingPagesDistinct.estimateHeapBytes());
+            bytes.put("nonExistingPagesDistinct", nonExistingPagesDistinct.estimateHeapBytes());
+            bytes.put("topExistingPages", topExistingPages.estimateHeapBytes());
+            bytes.put("topNonExistingPages", topNonExistingPages.estimateHeapBytes());
+        }
+        if (refererDomainsDistinct != null) {
+            bytes.put("refererDomainsDistinct", refererDomainsDistinct.estimateHeapBytes());
+            bytes.put("topRefererDomains", topRefererDomains.estimateHeapBytes());
+        }
+        if (humanIpDistinct != null) {
+            bytes.put("humanIpDistinct", humanIpDistinct.estimateHeapBytes());
+            bytes.put("topHumanIps", topHumanIps.estimateHeapBytes());
+        }
+        return bytes;
+    }
+
+    // Самые частые значения с оценкой числа запросов (сверху), по убыванию.
+    // Доступны только в приблизительном режиме, иначе пустая карта
+    public Map<String, Long> getTopExistingPages() {
+        return toMap(topExistingPages);
+    }
+
+    public Map<String, Long> getTopNonExistingPages() {
+        return toMap(topNonExistingPages);
+    }
+
+    public Map<String, Long> getTopRefererDomains() {
+        return toMap(topRefererDomains);
+    }
+
+    public Map<String, Long> getTopHumanIps() {
+        return toMap(topHumanIps);
+    }
+
+    // Относительная ошибка оценок числа уникальных значений (стандартное отклонение)
+    public double getDistinctRelativeError() {
+        return approximate ? HyperLogLog.standardError(HyperLogLog.DEFAULT_PRECISION) : 0.0;
+    }
+
+    // Наибольшее завышение счётчика посещений одного IP-адреса
+    public long getApproximationErrorBound() {
+        return topHumanIps != null ? topHumanIps.errorBound() : 0;
+    }
+
+    private static Map<String, Long> toMap(SpaceSaving<String> summary) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        if (summary != null) {
+            for (SpaceSaving.Counter<String> counter : summary.top()) {
+                result.put(counter.getKey(), counter.getCount());
+            }
+        }
+        return result;
     }
 
     // Дополнительные геттеры для статистики
@@ -333,15 +1074,80 @@ class Statistics {
         return totalTraffic;
     }
 
+    // Период лога; null - записей нет или время не нужно выбранным метрикам
     public LocalDateTime getMinTime() {
-        return minTime;
+        return minLocalSecond > maxLocalSecond ? null : LocalDateTime.ofEpochSecond(minLocalSecond, 0, ZoneOffset.UTC);
     }
 
     public LocalDateTime getMaxTime() {
-        return maxTime;
+        return minLocalSecond > maxLocalSecond ? null : LocalDateTime.ofEpochSecond(maxLocalSecond, 0, ZoneOffset.UTC);
+    }
+
+    // Выбранные метрики: данные остальных не собираются, их геттеры возвращают пустые значения
+    public Set<Metric> getMetrics() {
+        return metrics;
+    }
+
+    // Поля строки, которые нужны выбранным метрикам
+    public Set<LogField> getFields() {
+        return fields;
+    }
+
+    // Число запросов по классам кодов ответа ("2xx" и т.д., "прочие" - коды вне 100-599),
+    // только ненулевые
+    public Map<String, Long> getStatusClassCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 1; i < statusClassCounts.length; i++) {
+            if (statusClassCounts[i] > 0) {
+                counts.put(i + "xx", statusClassCounts[i]);
+            }
+        }
+        if (statusClassCounts[0] > 0) {
+            counts.put("прочие", statusClassCounts[0]);
+        }
+        return counts;
+    }
+
+    public long getErrorRequestsCount() {
+        return errorRequestsCount;
     }
 
-    public int getEntryCount() {
+    public long getEntryCount() {
         return entryCount;
     }
+
+    public long getParseErrorCount() {
+        return parseErrorCount;
+    }
+
+    // Ошибки разбора по причинам, только ненулевые, в порядке перечисления. Сумма меньше
+    // getParseErrorCount, если часть ошибок пришла из состояния без причин
+    public Map<ParseError, Long> getParseErrorCounts() {
+        Map<ParseError, Long> counts = new EnumMap<>(ParseError.class);
+        for (ParseError reason : PARSE_ERRORS) {
+            if (parseErrorCounts[reason.ordinal()] > 0) {
+                counts.put(reason, parseErrorCounts[reason.ordinal()]);
+            }
+        }
+        return counts;
+    }
+
+    // Доля строк с ошибками разбора среди всех строк, 0 - строк не было
+    public double getParseErrorRate() {
+        long lines = getLineCount();
+        return lines == 0 ? 0 : (double) parseErrorCount / lines;
+    }
+
+    // Всего строк: разобранные и с ошибками
+    public long getLineCount() {
+        return entryCount + parseErrorCount;
+    }
+
+    public long getYandexBotCount() {
+        return yandexBotCount;
+    }
+
+    public long getGoogleBotCount() {
+        return googleBotCount;
+    }
 }
\ No newline at end of file
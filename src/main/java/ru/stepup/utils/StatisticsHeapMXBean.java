@@ -0,0 +1,12 @@
+package ru.stepup.utils;
+
+import java.util.Map;
+
+// Оценка памяти статистики в JMX (ru.stepup:type=StatisticsHeap). Во время анализа - сумма по
+// статистикам потоков разбора (обновляется раз в секунду), после анализа - итоговая статистика
+public interface StatisticsHeapMXBean {
+    // Байтов по структурам статистики (имена полей Statistics)
+    Map<String, Long> getStructureBytes();
+
+    long getTotalBytes();
+}
@@ -0,0 +1,270 @@
+package ru.stepup.utils;
+
+import ru.stepup.model.LogLine;
+import ru.stepup.model.ParseFailure;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Поиск части лога, в которой могут быть строки интервала времени, без чтения всего файла.
+// Лог почти упорядочен по времени, поэтому границы ищутся двоичным поиском по смещениям: в точке
+// пробы берётся ближайшее начало строки и время первой разобранной строки. Допуск порядка строк
+// делает поиск надёжным: граница сдвигается за строку, только если строка дальше от интервала,
+// чем на допуск, и тогда все строки по ту сторону от неё заведомо вне интервала. Найденная часть
+// разбирается целиком, строки вне интервала отбрасывает LineProcessor.
+// Пробы (смещение строки и её время) можно сохранять в "<лог>.timeindex": это разреженный индекс,
+// который пополняется при каждом поиске. Повторный запрос находит все пробы в индексе и не читает
+// лог до разбора, близкий запрос читает только недостающие. Дописанный лог индекс не портит,
+// после ротации или перезаписи (изменилось начало файла) индекс строится заново
+final class TimeIndex {
+    static final String SUFFIX = ".timeindex";
+
+    private static final int MAGIC = 0x4C54494E; // "LTIN"
+    private static final int VERSION = 1;
+    private static final long MIN_WINDOW = 64 << 10; // Поиск останавливается, когда граница найдена с такой точностью
+    private static final int PROBE_SIZE = 16 << 10; // Байтов, читаемых в точке пробы
+    private static final int MAX_SAMPLES = 1 << 16; // Больше проб индекс не запоминает
+
+    // Часть файла [start, end), start и end - начала строк (или конец файла)
+    static final class Region {
+        final long start;
+        final long end;
+
+        Region(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    // Проба: начало строки и её время
+    private static final class Sample {
+        private final long offset;
+        private final long epochSecond;
+        private final int offsetSeconds;
+
+        Sample(long offset, long epochSecond, int offsetSeconds) {
+            this.offset = offset;
+            this.epochSecond = epochSecond;
+            this.offsetSeconds = offsetSeconds;
+        }
+
+        long localSecond() {
+            return epochSecond + offsetSeconds;
+        }
+    }
+
+    private final FileChannel channel;
+    private final long size;
+    private final TreeMap<Long, Sample> samples = new TreeMap<>(); // По смещению строки
+    private final ByteBuffer probe = ByteBuffer.allocate(PROBE_SIZE);
+    private final ParseFailure failure = new ParseFailure();
+    private int reads; // Проб, прочитанных из лога (не найденных в индексе)
+
+    private TimeIndex(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+    }
+
+    static Path indexPath(Path source) {
+        return source.resolveSibling(source.getFileName() + SUFFIX);
+    }
+
+    // Часть файла для интервала options.getTimeRange(). С options.isTimeIndexed() пробы берутся
+    // из индекса рядом с логом и новые пробы сохраняются в него
+    static Region locate(Path source, FileChannel channel, AnalyzeOptions options) throws IOException {
+        TimeRange range = options.getTimeRange();
+        TimeIndex index = new TimeIndex(channel);
+        Path indexFile = indexPath(source);
+        if (options.isTimeIndexed()) {
+            index.load(indexFile);
+        }
+        Region region = index.find(range);
+        if (options.isTimeIndexed() && index.reads > 0) {
+            try {
+                index.save(indexFile);
+            } catch (IOException e) {
+                System.err.println("Не удалось сохранить индекс времени " + indexFile + ": " + e.getMessage());
+            }
+        }
+
+        AnalysisMetrics instrumentation = options.getInstrumentation();
+        if (instrumentation != null) {
+            // Прогресс считается только по найденной части файла: размер файла целиком
+            // в ожидаемый объём не добавляется (Analyze.isTimeRegionRead)
+            instrumentation.addExpectedBytes(region.end - region.start);
+            if (instrumentation.isProgressShown()) {
+                System.err.printf("Интервал %s: разбираем байты %d - %d из %d (%.1f%%), проб в логе: %d%n", range,
+                        region.start, region.end, index.size,
+                        index.size == 0 ? 0.0 : (region.end - region.start) * 100.0 / index.size, index.reads);
+            }
+        }
+        return region;
+    }
+
+    private Region find(TimeRange range) throws IOException {
+        // Начало: lo - начало строки, до которой все строки раньше интервала
+        long start = 0;
+        if (range.hasFrom()) {
+            long lo = 0;
+            long hi = size;
+            while (hi - lo > MIN_WINDOW) {
+                Sample sample = sampleBetween(lo, hi);
+                if (sample == null) {
+                    break;
+                }
+                if (range.isBefore(sample.epochSecond, sample.localSecond())) {
+                    lo = sample.offset;
+                } else {
+                    hi = sample.offset;
+                }
+            }
+            start = lo;
+        }
+
+        // Конец: hi - начало строки, с которой все строки позже интервала
+        long end = size;
+        if (range.hasTo()) {
+            long lo = start;
+            long hi = size;
+            while (hi - lo > MIN_WINDOW) {
+                Sample sample = sampleBetween(lo, hi);
+                if (sample == null) {
+                    break;
+                }
+                if (range.isAfter(sample.epochSecond, sample.localSecond())) {
+                    hi = sample.offset;
+                } else {
+                    lo = sample.offset;
+                }
+            }
+            end = hi;
+        }
+        return new Region(start, Math.max(start, end));
+    }
+
+    // Проба строго между lo и hi, ближе к середине: из индекса, если там есть проба в средней половине
+    // окна, иначе читаем лог. null - в точке пробы нет ни одной разобранной строки до hi
+    private Sample sampleBetween(long lo, long hi) throws IOException {
+        long mid = lo + (hi - lo) / 2;
+        long quarter = (hi - lo) / 4;
+        Map.Entry<Long, Sample> after = samples.ceilingEntry(mid);
+        if (after != null && after.getKey() < mid + quarter) {
+            return after.getValue();
+        }
+        Map.Entry<Long, Sample> before = samples.floorEntry(mid);
+        if (before != null && before.getKey() > mid - quarter) {
+            return before.getValue();
+        }
+
+        Sample sample = readSample(ChunkedAnalyzer.nextLineStart(channel, mid), hi);
+        if (sample != null && samples.size() < MAX_SAMPLES) {
+            samples.put(sample.offset, sample);
+        }
+        return sample;
+    }
+
+    // Первая строка с разобранным временем среди целых строк блока с позиции position (начало строки)
+    private Sample readSample(long position, long limit) throws IOException {
+        if (position >= limit) {
+            return null;
+        }
+        reads++;
+        probe.clear();
+        probe.limit((int) Math.min(PROBE_SIZE, size - position));
+        while (probe.hasRemaining()) {
+            if (channel.read(probe, position + probe.position()) < 0) {
+                break;
+            }
+        }
+        byte[] bytes = probe.array();
+        int length = probe.position();
+        int lineStart = 0;
+        for (int i = 0; i < length && position + lineStart < limit; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+            int lineEnd = i > lineStart && bytes[i - 1] == '\r' ? i - 1 : i;
+            LogLine line = LogLine.tryParse(bytes, lineStart, lineEnd - lineStart, failure);
+            if (line != null) {
+                return new Sample(position + lineStart, line.getEpochSecond(), line.getOffsetSeconds());
+            }
+            lineStart = i + 1;
+        }
+        return null;
+    }
+
+    // Файл индекса: заголовок, размер лога и отпечаток его начала, затем пробы по возрастанию смещения.
+    // Смещения и время пишутся разностями с предыдущей пробой, поэтому проба занимает несколько байт.
+    // Пишется во временный файл и заменяет прежний одним переименованием
+    private void save(Path indexFile) throws IOException {
+        Path temporary = Files.createTempFile(indexFile.toAbsolutePath().getParent(), "timeindex", ".tmp");
+        try {
+            try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16)) {
+                DataOutputStream out = new DataOutputStream(file);
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeLong(size);
+                out.writeLong(BinaryFormat.headChecksum(channel, size));
+                BinaryFormat.writeCount(out, samples.size());
+                long previousOffset = 0;
+                long previousSecond = 0;
+                for (Sample sample : samples.values()) {
+                    BinaryFormat.writeVarLong(out, sample.offset - previousOffset);
+                    BinaryFormat.writeSignedVarLong(out, sample.epochSecond - previousSecond);
+                    BinaryFormat.writeSignedVarLong(out, sample.offsetSeconds);
+                    previousOffset = sample.offset;
+                    previousSecond = sample.epochSecond;
+                }
+                out.flush();
+            }
+            Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // Читаем пробы индекса, если он подходит к текущему логу; иначе поиск начинается с пустого индекса
+    private void load(Path indexFile) {
+        if (!Files.isRegularFile(indexFile)) {
+            return;
+        }
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(indexFile), 1 << 16)) {
+            DataInputStream in = new DataInputStream(file);
+            if (in.readInt() != MAGIC || in.readUnsignedShort() != VERSION) {
+                System.err.println("Индекс времени " + indexFile + " в неизвестном формате, строим заново");
+                return;
+            }
+            long indexedSize = in.readLong();
+            if (indexedSize > size || in.readLong() != BinaryFormat.headChecksum(channel, indexedSize)) {
+                System.err.println("Лог изменился с момента создания индекса времени (ротация или перезапись),"
+                        + " строим заново");
+                return;
+            }
+            int count = BinaryFormat.readCount(in);
+            long offset = 0;
+            long epochSecond = 0;
+            for (int i = 0; i < count; i++) {
+                offset += BinaryFormat.readVarLong(in);
+                epochSecond += BinaryFormat.readSignedVarLong(in);
+                int offsetSeconds = (int) BinaryFormat.readSignedVarLong(in);
+                samples.put(offset, new Sample(offset, epochSecond, offsetSeconds));
+            }
+        } catch (IOException e) {
+            samples.clear();
+            System.err.println("Не удалось прочитать индекс времени " + indexFile + ": " + e.getMessage()
+                    + ", строим заново");
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package ru.stepup.utils;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+
+// Интервал времени [from, to) для анализа части лога. Граница без смещения зоны ("2023-10-10T14:00")
+// сравнивается со временем, как оно записано в логе, граница со смещением ("2023-10-10T14:00+03:00") -
+// с абсолютным временем строки. Лог упорядочен по времени не строго: строка пишется по окончании
+// запроса, поэтому может оказаться раньше уже записанных. jitterSeconds - на сколько секунд строка
+// может отставать от предыдущих; поиск части файла по времени (TimeIndex) учитывает этот допуск
+public final class TimeRange {
+    public static final int DEFAULT_JITTER_SECONDS = 60;
+
+    private final long fromSecond; // Long.MIN_VALUE - от начала лога
+    private final boolean fromAbsolute; // Граница задана со смещением зоны: сравниваем секунды эпохи UTC
+    private final long toSecond; // Long.MAX_VALUE - до конца лога
+    private final boolean toAbsolute;
+    private final int jitterSeconds;
+    private final String description;
+
+    private TimeRange(long fromSecond, boolean fromAbsolute, long toSecond, boolean toAbsolute, int jitterSeconds,
+                      String description) {
+        this.fromSecond = fromSecond;
+        this.fromAbsolute = fromAbsolute;
+        this.toSecond = toSecond;
+        this.toAbsolute = toAbsolute;
+        this.jitterSeconds = jitterSeconds;
+        this.description = description;
+    }
+
+    // Интервал из границ командной строки, null - граница не задана. Ошибка в границах -
+    // IllegalArgumentException с понятным сообщением
+    public static TimeRange parse(String from, String to, int jitterSeconds) {
+        if (from == null && to == null) {
+            throw new IllegalArgumentException("Не указана ни одна граница интервала времени");
+        }
+        if (jitterSeconds < 0) {
+            throw new IllegalArgumentException("Допуск порядка строк не может быть отрицательным: " + jitterSeconds);
+        }
+        long fromSecond = Long.MIN_VALUE;
+        boolean fromAbsolute = false;
+        if (from != null) {
+            fromSecond = parseSecond(from);
+            fromAbsolute = hasOffset(from);
+        }
+        long toSecond = Long.MAX_VALUE;
+        boolean toAbsolute = false;
+        if (to != null) {
+            toSecond = parseSecond(to);
+            toAbsolute = hasOffset(to);
+        }
+        if (from != null && to != null && fromAbsolute == toAbsolute && fromSecond >= toSecond) {
+            throw new IllegalArgumentException("Начало интервала должно быть раньше конца: " + from + " - " + to);
+        }
+        String description = (from != null ? "с " + from : "") + (from != null && to != null ? " " : "")
+                + (to != null ? "до " + to : "");
+        return new TimeRange(fromSecond, fromAbsolute, toSecond, toAbsolute, jitterSeconds, description);
+    }
+
+    // Дата и время ISO: "2023-10-10", "2023-10-10T14:00", "2023-10-10T14:00:30", можно со смещением "+03:00".
+    // Время со смещением - секунды эпохи UTC, без смещения - секунды времени, как в логе
+    private static long parseSecond(String value) {
+        try {
+            if (hasOffset(value)) {
+                return OffsetDateTime.parse(value).toEpochSecond();
+            }
+            if (value.indexOf('T') < 0) {
+                return LocalDate.parse(value).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+            }
+            return LocalDateTime.parse(value).toEpochSecond(ZoneOffset.UTC);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Неверное время: " + value
+                    + ". Ожидается дата и время ISO, например 2023-10-10T14:00 или 2023-10-10T14:00+03:00");
+        }
+    }
+
+    private static boolean hasOffset(String value) {
+        int time = value.indexOf('T');
+        return time >= 0 && (value.endsWith("Z") || value.indexOf('+', time) >= 0 || value.indexOf('-', time) >= 0);
+    }
+
+    public int getJitterSeconds() {
+        return jitterSeconds;
+    }
+
+    // Строка попадает в интервал. epochSecond - секунды эпохи UTC, localSecond - время, как в логе
+    public boolean contains(long epochSecond, long localSecond) {
+        return (fromAbsolute ? epochSecond : localSecond) >= fromSecond
+                && (toAbsolute ? epochSecond : localSecond) < toSecond;
+    }
+
+    // Строка раньше начала интервала больше чем на допуск: строки до неё тоже не попадают в интервал
+    boolean isBefore(long epochSecond, long localSecond) {
+        return fromSecond != Long.MIN_VALUE
+                && (fromAbsolute ? epochSecond : localSecond) < fromSecond - jitterSeconds;
+    }
+
+    // Строка не раньше конца интервала плюс допуск: строки после неё тоже не попадают в интервал
+    boolean isAfter(long epochSecond, long localSecond) {
+        return toSecond != Long.MAX_VALUE
+                && (toAbsolute ? epochSecond : localSecond) >= toSecond + jitterSeconds;
+    }
+
+    boolean hasFrom() {
+        return fromSecond != Long.MIN_VALUE;
+    }
+
+    boolean hasTo() {
+        return toSecond != Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
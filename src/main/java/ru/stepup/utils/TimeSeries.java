@@ -0,0 +1,302 @@
+package ru.stepup.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// Временной ряд в фиксированной памяти: кольцо из capacity корзин длиной bucketSeconds секунд.
+// Корзина хранит число запросов, посещений реальными пользователями, ошибочных запросов, байтов
+// и оценку числа уникальных IP-адресов (маленький HyperLogLog). Номер ячейки - номер корзины по
+// модулю capacity, поэтому новая корзина вытесняет ту, что на capacity корзин старше, а записи
+// старше окна отбрасываются. Окно отсчитывается от самой новой корзины, а не от текущих часов:
+// при разборе старого лога "последние 15 минут" - последние 15 минут лога.
+// Время - как в логе, без учёта зоны (как getMinTime/getMaxTime статистики)
+public final class TimeSeries {
+    private final int bucketSeconds;
+    private final int capacity;
+    private final int ipPrecision; // Точность HyperLogLog уникальных IP в каждой корзине
+
+    private final long[] buckets; // Номер корзины в ячейке, Long.MIN_VALUE - ячейка пуста
+    private final long[] requests;
+    private final long[] humanVisits;
+    private final long[] errors;
+    private final long[] bytes;
+    private final HyperLogLog[] ips; // Создаются при первом использовании ячейки
+    private long latest = Long.MIN_VALUE; // Номер самой новой корзины
+    // Первая и последняя секунды записей: окна, выходящие за края лога, обрезаются по ним,
+    // поэтому значения в минуту не занижаются пустым временем до начала или после конца лога
+    private long firstSecond = Long.MAX_VALUE;
+    private long lastSecond = Long.MIN_VALUE;
+
+    TimeSeries(int bucketSeconds, int capacity, int ipPrecision) {
+        this.bucketSeconds = bucketSeconds;
+        this.capacity = capacity;
+        this.ipPrecision = ipPrecision;
+        this.buckets = new long[capacity];
+        this.requests = new long[capacity];
+        this.humanVisits = new long[capacity];
+        this.errors = new long[capacity];
+        this.bytes = new long[capacity];
+        this.ips = new HyperLogLog[capacity];
+        Arrays.fill(buckets, Long.MIN_VALUE);
+    }
+
+    // Учитываем запрос в корзине его секунды. ipHash - 64-битный хеш IP-адреса
+    void add(long localSecond, long responseSize, boolean error, boolean human, long ipHash) {
+        firstSecond = Math.min(firstSecond, localSecond);
+        lastSecond = Math.max(lastSecond, localSecond);
+        int slot = slotFor(Math.floorDiv(localSecond, bucketSeconds));
+        if (slot < 0) {
+            return; // Запись старше окна
+        }
+        requests[slot]++;
+        bytes[slot] += responseSize;
+        if (error) {
+            errors[slot]++;
+        }
+        if (human) {
+            humanVisits[slot]++;
+        }
+        ips[slot].addHash(ipHash);
+    }
+
+    // Ячейка для корзины bucket: при необходимости вытесняем более старую корзину.
+    // -1 - в ячейке уже более новая корзина, то есть bucket вышла из окна
+    private int slotFor(long bucket) {
+        int slot = (int) Math.floorMod(bucket, (long) capacity);
+        if (buckets[slot] == bucket) {
+            return slot;
+        }
+        if (buckets[slot] > bucket) {
+            return -1;
+        }
+        buckets[slot] = bucket;
+        requests[slot] = 0;
+        humanVisits[slot] = 0;
+        errors[slot] = 0;
+        bytes[slot] = 0;
+        if (ips[slot] == null) {
+            ips[slot] = new HyperLogLog(ipPrecision);
+        } else {
+            ips[slot].clear();
+        }
+        if (bucket > latest) {
+            latest = bucket;
+        }
+        return slot;
+    }
+
+    // Объединяем с рядом по другой части данных: в каждой ячейке остаётся более новая корзина,
+    // одинаковые корзины складываются. Результат не зависит от порядка объединения
+    void merge(TimeSeries other) {
+        if (other.bucketSeconds != bucketSeconds || other.capacity != capacity
+                || other.ipPrecision != ipPrecision) {
+            throw new IllegalArgumentException("Нельзя объединить временные ряды с разными корзинами");
+        }
+        firstSecond = Math.min(firstSecond, other.firstSecond);
+        lastSecond = Math.max(lastSecond, other.lastSecond);
+        for (int i = 0; i < capacity; i++) {
+            if (other.buckets[i] != Long.MIN_VALUE) {
+                mergeBucket(other.buckets[i], other.requests[i], other.humanVisits[i], other.errors[i],
+                        other.bytes[i], other.ips[i]);
+            }
+        }
+    }
+
+    private void mergeBucket(long bucket, long bucketRequests, long bucketHumanVisits, long bucketErrors,
+                             long bucketBytes, HyperLogLog bucketIps) {
+        int slot = slotFor(bucket);
+        if (slot < 0) {
+            return;
+        }
+        requests[slot] += bucketRequests;
+        humanVisits[slot] += bucketHumanVisits;
+        errors[slot] += bucketErrors;
+        bytes[slot] += bucketBytes;
+        ips[slot].merge(bucketIps);
+    }
+
+    // Двоичное состояние: параметры ряда и непустые корзины по возрастанию времени
+    void writeTo(DataOutput out) throws IOException {
+        BinaryFormat.writeCount(out, bucketSeconds);
+        BinaryFormat.writeCount(out, capacity);
+        BinaryFormat.writeSignedVarLong(out, firstSecond);
+        BinaryFormat.writeSignedVarLong(out, lastSecond);
+        int[] slots = occupiedSlots();
+        BinaryFormat.writeCount(out, slots.length);
+        long previous = 0;
+        for (int slot : slots) {
+            BinaryFormat.writeSignedVarLong(out, buckets[slot] - previous);
+            BinaryFormat.writeVarLong(out, requests[slot]);
+            BinaryFormat.writeVarLong(out, humanVisits[slot]);
+            BinaryFormat.writeVarLong(out, errors[slot]);
+            BinaryFormat.writeVarLong(out, bytes[slot]);
+            ips[slot].writeTo(out);
+            previous = buckets[slot];
+        }
+    }
+
+    // Читаем корзины, записанные writeTo, в этот (пустой) ряд. Корзины другой длины
+    // не переводятся и пропускаются: такое состояние записано другой версией программы
+    void readFrom(DataInput in) throws IOException {
+        int savedBucketSeconds = BinaryFormat.readCount(in);
+        BinaryFormat.readCount(in); // Ёмкость сохранённого кольца: лишние старые корзины вытеснятся
+        firstSecond = Math.min(firstSecond, BinaryFormat.readSignedVarLong(in));
+        lastSecond = Math.max(lastSecond, BinaryFormat.readSignedVarLong(in));
+        int count = BinaryFormat.readCount(in);
+        long bucket = 0;
+        for (int i = 0; i < count; i++) {
+            bucket += BinaryFormat.readSignedVarLong(in);
+            long bucketRequests = BinaryFormat.readVarLong(in);
+            long bucketHumanVisits = BinaryFormat.readVarLong(in);
+            long bucketErrors = BinaryFormat.readVarLong(in);
+            long bucketBytes = BinaryFormat.readVarLong(in);
+            HyperLogLog bucketIps = HyperLogLog.readFrom(in);
+            if (savedBucketSeconds == bucketSeconds && bucketIps.getPrecision() == ipPrecision) {
+                mergeBucket(bucket, bucketRequests, bucketHumanVisits, bucketErrors, bucketBytes, bucketIps);
+            }
+        }
+    }
+
+    // Занятые ячейки по возрастанию времени корзины
+    private int[] occupiedSlots() {
+        return IntStream.range(0, capacity)
+                .filter(slot -> buckets[slot] != Long.MIN_VALUE)
+                .boxed()
+                .sorted((a, b) -> Long.compare(buckets[a], buckets[b]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    // Итоги по последним count корзинам, заканчивая самой новой. За O(count), без обхода записей
+    public Window last(int count) {
+        if (count < 1 || count > capacity) {
+            throw new IllegalArgumentException("Окно должно быть от 1 до " + capacity + " корзин: " + count);
+        }
+        return latest == Long.MIN_VALUE ? null : window(latest - count + 1, latest);
+    }
+
+    // Итоги по корзинам с номерами [from, to]. Корзины без записей (или уже вытесненные) дают нули
+    private Window window(long from, long to) {
+        long start = Math.max(from * bucketSeconds, firstSecond);
+        long end = Math.min((to + 1) * bucketSeconds, lastSecond + 1);
+        Window window = new Window(start, end - start);
+        HyperLogLog distinct = new HyperLogLog(ipPrecision);
+        for (long bucket = from; bucket <= to; bucket++) {
+            int slot = (int) Math.floorMod(bucket, (long) capacity);
+            if (buckets[slot] == bucket) {
+                window.requests += requests[slot];
+                window.humanVisits += humanVisits[slot];
+                window.errors += errors[slot];
+                window.bytes += bytes[slot];
+                distinct.merge(ips[slot]);
+            }
+        }
+        window.distinctIps = distinct.estimate();
+        return window;
+    }
+
+    // Корзина с наибольшим числом запросов среди хранимых, null - ряд пуст
+    public Window peak() {
+        int best = -1;
+        for (int slot = 0; slot < capacity; slot++) {
+            if (buckets[slot] != Long.MIN_VALUE && (best < 0 || requests[slot] > requests[best]
+                    || (requests[slot] == requests[best] && buckets[slot] < buckets[best]))) {
+                best = slot;
+            }
+        }
+        return best < 0 ? null : window(buckets[best], buckets[best]);
+    }
+
+    // Длина корзины в секундах
+    public int getBucketSeconds() {
+        return bucketSeconds;
+    }
+
+    // Сколько корзин хранится: глубина истории равна capacity * bucketSeconds
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Память ряда: пять массивов счётчиков по корзинам и HyperLogLog занятых корзин
+    long estimateHeapBytes() {
+        long bytes = HeapEstimate.align(HeapEstimate.OBJECT_HEADER + 3 * 4 + 6 * HeapEstimate.REFERENCE + 3 * 8)
+                + 5 * HeapEstimate.array(8, capacity) + HeapEstimate.array(HeapEstimate.REFERENCE, capacity);
+        for (HyperLogLog bucketIps : ips) {
+            if (bucketIps != null) {
+                bytes += bucketIps.estimateHeapBytes();
+            }
+        }
+        return bytes;
+    }
+
+    // Итоги за промежуток времени из нескольких корзин
+    public static final class Window {
+        private final long startSecond;
+        private final long durationSeconds;
+        private long requests;
+        private long humanVisits;
+        private long errors;
+        private long bytes;
+        private long distinctIps;
+
+        private Window(long startSecond, long durationSeconds) {
+            this.startSecond = startSecond;
+            this.durationSeconds = durationSeconds;
+        }
+
+        public LocalDateTime getStart() {
+            return LocalDateTime.ofEpochSecond(startSecond, 0, ZoneOffset.UTC);
+        }
+
+        public LocalDateTime getEnd() {
+            return LocalDateTime.ofEpochSecond(startSecond + durationSeconds, 0, ZoneOffset.UTC);
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getHumanVisits() {
+            return humanVisits;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        // Оценка числа уникальных IP-адресов за окно (все запросы, включая ботов)
+        public long getDistinctIps() {
+            return distinctIps;
+        }
+
+        // Значения в минуту: делим на длину окна в пределах лога, включая минуты без записей
+        public double getRequestsPerMinute() {
+            return perMinute(requests);
+        }
+
+        public double getHumanVisitsPerMinute() {
+            return perMinute(humanVisits);
+        }
+
+        public double getErrorsPerMinute() {
+            return perMinute(errors);
+        }
+
+        public double getBytesPerMinute() {
+            return perMinute(bytes);
+        }
+
+        private double perMinute(long value) {
+            return value * 60.0 / durationSeconds;
+        }
+    }
+}
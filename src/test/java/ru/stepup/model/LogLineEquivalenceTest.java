@@ -0,0 +1,145 @@
+package ru.stepup.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Однопроходный LogLine должен разбирать строки так же, как LogEntry: те же поля у верных строк,
+// та же причина и сообщение у неверных. golden.log - строки из реального формата и пограничные случаи
+// (IPv6 в скобках, "HTTP/" в пути, длинные и не-ASCII числа, не-ASCII метод, недостающие поля).
+// golden.expected - то, что для каждой строки golden.log вернул исходный LogEntry (конструктор
+// до появления LogLine), поэтому оба разбора сверяются и друг с другом, и с исходным поведением.
+// Строка файла: "ok" и поля, "error" и сообщение исключения или "date" и метка времени, на которой
+// исходный разбор падал с DateTimeParseException и прерывал анализ файла; теперь это ошибка
+// разбора INVALID_TIME. Табуляция, перевод строки и '\' в полях экранированы
+class LogLineEquivalenceTest {
+
+    @Test
+    void stringAndBytesParseLikeLogEntry() throws IOException {
+        List<String> lines = readLines("golden.log");
+        List<String> expectedRows = readLines("golden.expected");
+        assertEquals(lines.size(), expectedRows.size(), "строк в golden.expected");
+        int parsed = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            List<String> baseline = unescape(expectedRows.get(i));
+
+            ParseFailure expectedFailure = new ParseFailure();
+            LogEntry expected = LogEntry.tryParse(line, expectedFailure);
+            assertBaseline(line, baseline, describe(expected, expectedFailure), expectedFailure);
+
+            ParseFailure stringFailure = new ParseFailure();
+            LogLine fromString = LogLine.tryParse(line, stringFailure);
+            assertBaseline(line, baseline, describe(fromString, stringFailure), stringFailure);
+            assertSame(line, expected, expectedFailure, fromString, stringFailure);
+
+            // Байты лога читаются в кодировке по умолчанию, как FileReader; сравниваем с тем,
+            // что LogEntry получил бы из той же строки, прочитанной построчно
+            byte[] bytes = line.getBytes(Charset.defaultCharset());
+            String decoded = new String(bytes, Charset.defaultCharset());
+            ParseFailure decodedFailure = new ParseFailure();
+            LogEntry expectedDecoded = LogEntry.tryParse(decoded, decodedFailure);
+            ParseFailure bytesFailure = new ParseFailure();
+            LogLine fromBytes = LogLine.tryParse(bytes, 0, bytes.length, bytesFailure);
+            assertSame(decoded, expectedDecoded, decodedFailure, fromBytes, bytesFailure);
+            if (decoded.equals(line)) {
+                assertBaseline(line, baseline, describe(fromBytes, bytesFailure), bytesFailure);
+            }
+
+            if (expected != null) {
+                parsed++;
+            }
+        }
+        // Корпус проверяет обе ветки: и разобранные строки, и ошибки
+        assertTrue(parsed > 0 && parsed < lines.size(), "разобрано строк: " + parsed + " из " + lines.size());
+    }
+
+    // Результат разбора совпадает с исходным LogEntry; неверная метка времени - теперь ошибка разбора
+    private static void assertBaseline(String line, List<String> baseline, List<String> actual, ParseFailure failure) {
+        if (baseline.get(0).equals("date")) {
+            assertEquals(ParseError.INVALID_TIME, failure.getReason(), line);
+            assertEquals(List.of("error", ParseError.INVALID_TIME.getMessage(baseline.get(1))), actual, line);
+            return;
+        }
+        assertEquals(baseline, actual, line);
+    }
+
+    // Поля в виде строки golden.expected
+    private static List<String> describe(LogEntry entry, ParseFailure failure) {
+        if (entry == null) {
+            return List.of("error", failure.getMessage());
+        }
+        return List.of("ok", entry.getIpAddr(), entry.getTime().toString(), entry.getMethod().name(), entry.getPath(),
+                String.valueOf(entry.getResponseCode()), String.valueOf(entry.getResponseSize()), entry.getReferer(),
+                entry.getAgent().getAgent());
+    }
+
+    private static List<String> describe(LogLine line, ParseFailure failure) {
+        if (line == null) {
+            return List.of("error", failure.getMessage());
+        }
+        return List.of("ok", line.getIpAddr(), line.getTime().toString(), line.getMethod().name(), line.getPath(),
+                String.valueOf(line.getResponseCode()), String.valueOf(line.getResponseSize()), line.getReferer(),
+                line.getAgent().getAgent());
+    }
+
+    private static void assertSame(String line, LogEntry expected, ParseFailure expectedFailure, LogLine actual,
+                                   ParseFailure actualFailure) {
+        if (expected == null) {
+            assertNull(actual, () -> "LogLine разобрал строку, которую LogEntry отверг: " + line);
+            assertEquals(expectedFailure.getReason(), actualFailure.getReason(), line);
+            assertEquals(expectedFailure.getMessage(), actualFailure.getMessage(), line);
+            return;
+        }
+        assertNotNull(actual, () -> "LogLine отверг строку (" + actualFailure.getMessage() + "): " + line);
+        assertEquals(expected.getIpAddr(), actual.getIpAddr(), line);
+        assertEquals(expected.getTime(), actual.getTime(), line);
+        assertEquals(expected.getEpochSecond(), actual.getEpochSecond(), line);
+        assertEquals(expected.getMethod(), actual.getMethod(), line);
+        assertEquals(expected.getPath(), actual.getPath(), line);
+        assertEquals(expected.getResponseCode(), actual.getResponseCode(), line);
+        assertEquals(expected.getResponseSize(), (int) actual.getResponseSize(), line);
+        assertEquals(expected.getReferer(), actual.getReferer(), line);
+        assertEquals(expected.getAgent().getAgent(), actual.getAgent().getAgent(), line);
+    }
+
+    private static List<String> readLines(String name) throws IOException {
+        try (InputStream in = LogLineEquivalenceTest.class.getResourceAsStream(name)) {
+            assertNotNull(in, "нет " + name);
+            String text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            List<String> lines = new ArrayList<>(List.of(text.split("\n", -1)));
+            lines.remove(lines.size() - 1); // После последнего перевода строки
+            return lines;
+        }
+    }
+
+    // Поля строки golden.expected без экранирования
+    private static List<String> unescape(String row) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        for (int i = 0; i < row.length(); i++) {
+            char c = row.charAt(i);
+            if (c == '\t') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\\' && i + 1 < row.length()) {
+                char next = row.charAt(++i);
+                field.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
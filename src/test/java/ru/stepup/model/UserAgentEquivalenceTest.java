@@ -0,0 +1,127 @@
+package ru.stepup.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Классификация UserAgent за один проход матчера должна совпадать с прежней цепочкой
+// toLowerCase().contains(...), а SearchBot - с прежним сравнением программы через equalsIgnoreCase.
+// user-agents.txt - User-Agent из сгенерированного лога и пограничные случаи (регистр, пустые
+// части в скобках, незакрытые скобки, не-ASCII символы)
+class UserAgentEquivalenceTest {
+
+    @Test
+    void classificationMatchesLegacyChains() throws IOException {
+        List<String> agents = readAgents();
+        agents.add("");
+        agents.add(null);
+        int searchBots = 0;
+        for (String agent : agents) {
+            UserAgent actual = new UserAgent(agent);
+            assertEquals(legacyOs(agent), actual.getOs(), agent);
+            assertEquals(legacyBrowser(agent), actual.getBrowser(), agent);
+            assertEquals(legacyBot(agent), actual.isBot(), agent);
+            assertEquals(legacyProgram(agent), actual.getProgram(), agent);
+            assertEquals(legacySearchBot(agent), actual.getSearchBot(), agent);
+            if (actual.getSearchBot() != SearchBot.NONE) {
+                searchBots++;
+            }
+
+            // Общий кэш отдаёт ту же классификацию
+            UserAgent cached = UserAgent.of(agent);
+            assertEquals(actual.getOs(), cached.getOs(), agent);
+            assertEquals(actual.getBrowser(), cached.getBrowser(), agent);
+            assertEquals(actual.getSearchBot(), cached.getSearchBot(), agent);
+        }
+        assertTrue(searchBots > 0, "в корпусе нет поисковых ботов");
+    }
+
+    // Прежняя классификация из UserAgent до однопроходного матчера
+    private static OsType legacyOs(String agent) {
+        if (agent == null || agent.isEmpty()) {
+            return OsType.UNKNOWN;
+        }
+        agent = agent.toLowerCase();
+        if (agent.contains("windows")) {
+            return OsType.WINDOWS;
+        } else if (agent.contains("mac os") || agent.contains("macos")) {
+            return OsType.MACOS;
+        } else if (agent.contains("linux")) {
+            return OsType.LINUX;
+        } else if (agent.contains("android")) {
+            return OsType.ANDROID;
+        } else if (agent.contains("ios")) {
+            return OsType.IOS;
+        }
+        return OsType.OTHER;
+    }
+
+    private static BrowserType legacyBrowser(String agent) {
+        if (agent == null || agent.isEmpty()) {
+            return BrowserType.UNKNOWN;
+        }
+        agent = agent.toLowerCase();
+        if (agent.contains("edg/") || agent.contains("edge/")) {
+            return BrowserType.EDGE;
+        } else if (agent.contains("firefox") || agent.contains("fxios")) {
+            return BrowserType.FIREFOX;
+        } else if (agent.contains("chrome") && !agent.contains("chromium")) {
+            return BrowserType.CHROME;
+        } else if (agent.contains("chromium")) {
+            return BrowserType.CHROMIUM;
+        } else if (agent.contains("safari") && !agent.contains("chrome")) {
+            return BrowserType.SAFARI;
+        } else if (agent.contains("opera") || agent.contains("opr/")) {
+            return BrowserType.OPERA;
+        }
+        return BrowserType.OTHER;
+    }
+
+    private static boolean legacyBot(String agent) {
+        return agent != null && !agent.isEmpty() && agent.toLowerCase().contains("bot");
+    }
+
+    private static String legacyProgram(String agent) {
+        if (agent == null) {
+            return null;
+        }
+        int openBracket = agent.indexOf('(');
+        int closeBracket = agent.indexOf(')', openBracket);
+        if (openBracket == -1 || closeBracket == -1) {
+            return null;
+        }
+        String[] parts = agent.substring(openBracket + 1, closeBracket).split(";");
+        if (parts.length < 2) {
+            return null;
+        }
+        String fragment = parts[1].trim();
+        int slash = fragment.indexOf('/');
+        return slash != -1 ? fragment.substring(0, slash).trim() : fragment;
+    }
+
+    private static SearchBot legacySearchBot(String agent) {
+        String program = legacyProgram(agent);
+        if (program != null && program.equalsIgnoreCase("YandexBot")) {
+            return SearchBot.YANDEX;
+        } else if (program != null && program.equalsIgnoreCase("Googlebot")) {
+            return SearchBot.GOOGLE;
+        }
+        return SearchBot.NONE;
+    }
+
+    private static List<String> readAgents() throws IOException {
+        try (InputStream in = UserAgentEquivalenceTest.class.getResourceAsStream("user-agents.txt")) {
+            assertNotNull(in, "нет user-agents.txt");
+            String text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            return new ArrayList<>(List.of(text.split("\n")));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ru.stepup.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Кэш, контрольная точка и индекс времени сохраняются рядом с логом. Повторный запуск по той же
+// папке или шаблону должен видеть только сами логи, а не эти служебные файлы
+class BatchAnalyzerTest {
+    private static final int LINES = 3000; // Больше окна поиска по времени, чтобы индекс сохранялся
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void directoryAndGlobSkipSidecarFiles() throws IOException {
+        Path a = writeLog(directory.resolve("a.log"), 0);
+        Path b = writeLog(directory.resolve("nested").resolve("b.log"), LINES);
+        List<Path> logs = List.of(a, b);
+        assertEquals(logs, BatchAnalyzer.resolveInputs(List.of(directory.toString())));
+
+        // Служебные файлы каждого вида, созданные самим анализом
+        analyze(logs, new AnalyzeOptions().setCached(true));
+        analyze(logs, new AnalyzeOptions().setCheckpointed(true));
+        analyze(logs, new AnalyzeOptions().setTimeIndexed(true)
+                .setTimeRange(TimeRange.parse("2023-11-01T03:20", "2023-11-01T03:30", 0)));
+        for (Path log : logs) {
+            assertTrue(Files.exists(ColumnarCache.cachePath(log)), "нет кэша " + log);
+            assertTrue(Files.exists(CheckpointedAnalyzer.checkpointPath(log)), "нет контрольной точки " + log);
+            assertTrue(Files.exists(TimeIndex.indexPath(log)), "нет индекса времени " + log);
+        }
+
+        assertEquals(logs, BatchAnalyzer.resolveInputs(List.of(directory.toString())));
+        assertEquals(List.of(a), BatchAnalyzer.resolveInputs(List.of(directory + "/*")));
+        assertEquals(List.of(b), BatchAnalyzer.resolveInputs(List.of(directory + "/*/*")));
+        // Повторный анализ с кэшем и с контрольной точкой проходит по всем логам без ошибок
+        analyze(BatchAnalyzer.resolveInputs(List.of(directory.toString())), new AnalyzeOptions().setCached(true));
+        analyze(BatchAnalyzer.resolveInputs(List.of(directory.toString())), new AnalyzeOptions().setCheckpointed(true));
+        assertEquals(logs, BatchAnalyzer.resolveInputs(List.of(directory.toString())));
+    }
+
+    private static void analyze(List<Path> files, AnalyzeOptions options) {
+        List<BatchAnalyzer.FileResult> results = BatchAnalyzer.analyze(files, options);
+        assertEquals(files.size(), results.size());
+        for (BatchAnalyzer.FileResult result : results) {
+            assertNull(result.getError(), () -> result.getPath() + ": " + result.getError());
+            if (options.getTimeRange() == null) {
+                assertEquals(LINES, result.getStatistics().getLineCount(), result.getPath().toString());
+            }
+        }
+    }
+
+    // LINES строк, по строке в секунду начиная с 03:00 + startSecond
+    private static Path writeLog(Path file, int startSecond) throws IOException {
+        Files.createDirectories(file.getParent());
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < LINES; i++) {
+            int second = startSecond + i;
+            lines.add(String.format("10.0.0.%d - - [01/Nov/2023:%02d:%02d:%02d +0300] \"GET /page/%d HTTP/1.1\" 200 %d"
+                            + " \"-\" \"Mozilla/5.0 (X11; Linux x86_64; rv:121.0) Gecko/20100101 Firefox/121.0\"",
+                    i % 50, 3 + second / 3600, second / 60 % 60, second % 60, i, 100 + i));
+        }
+        Files.write(file, lines);
+        return file;
+    }
+}
@@ -0,0 +1,46 @@
+package ru.stepup.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Быстрый разбор referer должен давать тот же домен, что и разбор через URI с ручным
+// извлечением после исключения: на обычных адресах, на адресах с символами, которые URI
+// отвергает, и на случайных строках из "опасных" для URI символов
+class RefererDomainsTest {
+    private static final String[] PREFIXES = {"http://", "https://", "HTTP://", "ftp://", "//", "", "http://www."};
+    private static final String[] HOSTS = {"example.com", "WWW.Site.ru", "a-b.c", "a.b.", "1.2.3.4", "[::1]",
+            "user@host.com", "host-.com", "xn--e1afmkfd.xn--p1ai", "пример.рф", "h", "9host.com", "host.9com"};
+    private static final String TAIL_CHARS = "/?#:%aZ09-_.~!*'();@&=+$, |{}[]\"<>\\^`\t\u007fé%2F%zz";
+
+    @Test
+    void parseMatchesUriOnRandomReferers() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < 200_000; i++) {
+            StringBuilder referer = new StringBuilder();
+            referer.append(PREFIXES[random.nextInt(PREFIXES.length)]).append(HOSTS[random.nextInt(HOSTS.length)]);
+            if (random.nextInt(4) == 0) {
+                referer.append(':').append(random.nextInt(1_000_000));
+            }
+            int tail = random.nextInt(12);
+            for (int j = 0; j < tail; j++) {
+                referer.append(TAIL_CHARS.charAt(random.nextInt(TAIL_CHARS.length())));
+            }
+            String value = referer.toString();
+            assertEquals(RefererDomains.parseWithUri(value), RefererDomains.parse(value), value);
+        }
+    }
+
+    @Test
+    void parseMatchesUriOnTypicalReferers() {
+        String[] referers = {"https://www.google.com/search?q=log", "http://yandex.ru/", "https://site.com:8080/a#b",
+                "http://WWW.site1.example.com/a b", "https://site2.example.com/{x}", "http://site3.example.com/%zz",
+                "site4.example.com/search?q=a|b", "https://a.com/x#y#z", "https://a.com/?q=[1]", "https://a.com/[1]",
+                "https://a.com/путь", "https://a.com/%", "https://a.com/%4", "-", ""};
+        for (String referer : referers) {
+            assertEquals(RefererDomains.parseWithUri(referer), RefererDomains.parse(referer), referer);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ru.stepup.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Пик в ограниченной памяти на потоке за много дней: совпадает с точным пиком по всем секундам,
+// когда строки опаздывают меньше чем на edge секунд, а соседние части объединяются в любом порядке
+class SecondPeakTest {
+    private static final int SECONDS = 2_000_000; // Около 23 дней
+    private static final int JITTER = 60;
+
+    @Test
+    void boundedPeakMatchesExactPeak() throws IOException {
+        long[] events = events();
+        Map<Long, Integer> exact = new HashMap<>();
+        SecondPeak peak = new SecondPeak();
+        long maxHeap = 0;
+        for (int i = 0; i < events.length; i++) {
+            exact.merge(events[i], 1, Integer::sum);
+            peak.increment(events[i]);
+            if ((i & 0xFFFF) == 0) {
+                maxHeap = Math.max(maxHeap, peak.estimateHeapBytes());
+            }
+        }
+        int expected = exact.values().stream().mapToInt(Integer::intValue).max().orElse(0);
+        assertEquals(expected, peak.peak());
+        // Память не растёт с длиной периода: не больше 4 * edge секунд в карте с запасом заполнения
+        assertTrue(maxHeap < 200_000, "оценка памяти " + maxHeap);
+
+        // Части по дням объединяются с соседними: секунды на границах складываются из обеих частей
+        int parts = 8;
+        SecondPeak[] split = new SecondPeak[parts];
+        for (int p = 0; p < parts; p++) {
+            split[p] = new SecondPeak();
+            for (int i = events.length * p / parts; i < events.length * (p + 1) / parts; i++) {
+                split[p].increment(events[i]);
+            }
+        }
+        SecondPeak reversed = new SecondPeak();
+        for (int p = parts - 1; p >= 0; p--) {
+            reversed.merge(split[p]);
+        }
+        assertEquals(expected, reversed.peak());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        peak.writeTo(new DataOutputStream(bytes));
+        SecondPeak restored = new SecondPeak();
+        restored.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(expected, restored.peak());
+    }
+
+    // Посещения по секундам с редкими всплесками; время строки отстаёт от порядка в файле
+    // не больше чем на JITTER секунд
+    private static long[] events() {
+        SplittableRandom random = new SplittableRandom(10);
+        long[] events = new long[SECONDS + SECONDS / 2];
+        int count = 0;
+        long start = 1_698_796_800L;
+        for (long second = 0; second < SECONDS && count < events.length; second += 1 + random.nextInt(2)) {
+            int visits = random.nextInt(10_000) == 0 ? 20 + random.nextInt(40) : 1;
+            for (int i = 0; i < visits && count < events.length; i++) {
+                events[count++] = start + Math.max(0, second - random.nextInt(JITTER));
+            }
+        }
+        return Arrays.copyOf(events, count);
+    }
+}
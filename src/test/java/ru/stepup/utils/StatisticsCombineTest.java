@@ -0,0 +1,189 @@
+package ru.stepup.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Статистика частей лога, объединённая через combine в любой группировке и любом порядке,
+// должна совпадать со статистикой одного прохода: на этом держатся фрагменты файла, пакетный
+// анализ, конвейер и кэш. В приблизительном режиме различных значений меньше размера
+// Space-Saving, поэтому и его оценки объединяются без потерь
+class StatisticsCombineTest {
+    private static final String[] METHODS = {"GET", "GET", "GET", "POST", "HEAD"};
+    private static final int[] CODES = {200, 200, 200, 200, 404, 301, 500, 503, 403};
+    private static final String[] REFERERS = {"-", "https://www.google.com/search?q=log", "http://yandex.ru/",
+            "https://site.com:8080/a#b", "http://WWW.site1.example.com/a b"};
+    private static final String[] AGENTS = {
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 Chrome/120.0 Safari/537.36",
+            "Mozilla/5.0 (X11; Linux x86_64; rv:121.0) Gecko/20100101 Firefox/121.0",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/605.1.15 Version/17.1 Safari/605.1.15",
+            "Mozilla/5.0 (compatible; YandexBot/3.0; +http://yandex.com/bots)",
+            "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)",
+            "-"};
+
+    @Test
+    void combinedPartsMatchSinglePass() throws IOException {
+        assertCombineMatchesSinglePass(false);
+    }
+
+    @Test
+    void combinedApproximatePartsMatchSinglePass() throws IOException {
+        assertCombineMatchesSinglePass(true);
+    }
+
+    private static void assertCombineMatchesSinglePass(boolean approximate) throws IOException {
+        List<String> lines = corpus();
+        Statistics expected = collect(lines, 0, lines.size(), approximate);
+        assertTrue(expected.getEntryCount() > 0 && expected.getParseErrorCount() > 0, "корпус без ошибок разбора");
+
+        // Границы частей, в том числе пустая часть и части из одной строки
+        int n = lines.size();
+        int[][] splits = {{0, n}, {1, n / 2}, {n / 3, 2 * n / 3, n - 1}, {7, 7, 500, 1201, n - 2}};
+        for (int[] split : splits) {
+            String label = "части до " + Arrays.toString(split) + ", ";
+
+            // ((a + b) + c) + ...
+            List<Statistics> parts = split(lines, split, approximate);
+            Statistics left = parts.get(0);
+            for (int i = 1; i < parts.size(); i++) {
+                left.combine(parts.get(i));
+            }
+            assertSame(expected, left, label + "слева направо");
+
+            // a + (b + (c + ...))
+            parts = split(lines, split, approximate);
+            Statistics right = parts.get(parts.size() - 1);
+            for (int i = parts.size() - 2; i >= 0; i--) {
+                right = parts.get(i).combine(right);
+            }
+            assertSame(expected, right, label + "справа налево");
+
+            // (a + b) + (c + d) ...
+            List<Statistics> level = split(lines, split, approximate);
+            while (level.size() > 1) {
+                List<Statistics> next = new ArrayList<>();
+                for (int i = 0; i < level.size(); i += 2) {
+                    next.add(i + 1 < level.size() ? level.get(i).combine(level.get(i + 1)) : level.get(i));
+                }
+                level = next;
+            }
+            assertSame(expected, level.get(0), label + "попарно");
+
+            // В обратном порядке частей, в пустую статистику
+            parts = split(lines, split, approximate);
+            Statistics reversed = new Statistics(approximate);
+            for (int i = parts.size() - 1; i >= 0; i--) {
+                reversed.combine(parts.get(i));
+            }
+            assertSame(expected, reversed, label + "в обратном порядке");
+        }
+    }
+
+    // Статистики частей корпуса между границами bounds
+    private static List<Statistics> split(List<String> lines, int[] bounds, boolean approximate) {
+        List<Statistics> parts = new ArrayList<>();
+        int from = 0;
+        for (int to : bounds) {
+            parts.add(collect(lines, from, to, approximate));
+            from = to;
+        }
+        parts.add(collect(lines, from, lines.size(), approximate));
+        return parts;
+    }
+
+    private static Statistics collect(List<String> lines, int from, int to, boolean approximate) {
+        Statistics statistics = new Statistics(approximate);
+        AnalyzeOptions options = new AnalyzeOptions().setParserMode(ParserMode.SINGLE_PASS).setApproximate(approximate);
+        LineProcessor processor = new LineProcessor(statistics, options, "");
+        for (String line : lines.subList(from, to)) {
+            processor.processLine(line);
+        }
+        processor.finish();
+        return statistics;
+    }
+
+    private static void assertSame(Statistics expected, Statistics actual, String label) {
+        assertEquals(expected.getEntryCount(), actual.getEntryCount(), label);
+        assertEquals(expected.getParseErrorCount(), actual.getParseErrorCount(), label);
+        assertEquals(expected.getParseErrorCounts(), actual.getParseErrorCounts(), label);
+        assertEquals(expected.getTotalTraffic(), actual.getTotalTraffic(), label);
+        assertEquals(expected.getMinTime(), actual.getMinTime(), label);
+        assertEquals(expected.getMaxTime(), actual.getMaxTime(), label);
+        assertEquals(expected.getStatusClassCounts(), actual.getStatusClassCounts(), label);
+        assertEquals(expected.getErrorRequestsCount(), actual.getErrorRequestsCount(), label);
+        assertEquals(expected.getYandexBotCount(), actual.getYandexBotCount(), label);
+        assertEquals(expected.getGoogleBotCount(), actual.getGoogleBotCount(), label);
+        assertEquals(expected.getOsStatistics(), actual.getOsStatistics(), label);
+        assertEquals(expected.getBrowserStatistics(), actual.getBrowserStatistics(), label);
+        assertEquals(expected.getPeakVisitsPerSecond(), actual.getPeakVisitsPerSecond(), label);
+        assertEquals(expected.getMaxVisitsBySingleUser(), actual.getMaxVisitsBySingleUser(), label);
+        assertEquals(expected.getUniqueHumanIpCount(), actual.getUniqueHumanIpCount(), label);
+        assertEquals(expected.getAverageVisitsPerHour(), actual.getAverageVisitsPerHour(), label);
+        assertEquals(expected.getAverageVisitsPerUser(), actual.getAverageVisitsPerUser(), label);
+        assertEquals(expected.getTrafficRate(), actual.getTrafficRate(), label);
+        assertEquals(expected.getExistingPages(), actual.getExistingPages(), label);
+        assertEquals(expected.getNonExistingPages(), actual.getNonExistingPages(), label);
+        assertEquals(expected.getExistingPagesCount(), actual.getExistingPagesCount(), label);
+        assertEquals(expected.getNonExistingPagesCount(), actual.getNonExistingPagesCount(), label);
+        assertEquals(expected.getRefererDomains(), actual.getRefererDomains(), label);
+        assertEquals(expected.getRefererDomainsCount(), actual.getRefererDomainsCount(), label);
+        assertEquals(expected.getTopExistingPages(), actual.getTopExistingPages(), label);
+        assertEquals(expected.getTopHumanIps(), actual.getTopHumanIps(), label);
+        assertSame(expected.getMinuteSeries(), actual.getMinuteSeries(), label + "по минутам");
+        assertSame(expected.getHourSeries(), actual.getHourSeries(), label + "по часам");
+    }
+
+    private static void assertSame(TimeSeries expected, TimeSeries actual, String label) {
+        for (int count : new int[]{1, 15, expected.getCapacity()}) {
+            assertSame(expected.last(count), actual.last(count), label + ", последние " + count);
+        }
+        assertSame(expected.peak(), actual.peak(), label + ", пик");
+    }
+
+    private static void assertSame(TimeSeries.Window expected, TimeSeries.Window actual, String label) {
+        assertNotNull(actual, label);
+        assertEquals(expected.getStart(), actual.getStart(), label);
+        assertEquals(expected.getEnd(), actual.getEnd(), label);
+        assertEquals(expected.getRequests(), actual.getRequests(), label);
+        assertEquals(expected.getHumanVisits(), actual.getHumanVisits(), label);
+        assertEquals(expected.getErrors(), actual.getErrors(), label);
+        assertEquals(expected.getBytes(), actual.getBytes(), label);
+        assertEquals(expected.getDistinctIps(), actual.getDistinctIps(), label);
+    }
+
+    // Несколько часов синтетического лога с всплесками в одну секунду и строки golden.log:
+    // пограничные случаи разбора и строки с ошибками
+    private static List<String> corpus() throws IOException {
+        SplittableRandom random = new SplittableRandom(7);
+        List<String> lines = new ArrayList<>();
+        long second = 0;
+        for (int i = 0; i < 3000; i++) {
+            second += random.nextInt(4) == 0 ? 0 : random.nextInt(8);
+            String ip = random.nextInt(20) == 0 ? "2001:db8::" + Integer.toHexString(random.nextInt(30))
+                    : "10.0." + random.nextInt(3) + "." + random.nextInt(200);
+            lines.add(String.format("%s - - [01/Nov/2023:%02d:%02d:%02d +0300] \"%s /page/%d HTTP/1.1\" %d %d \"%s\" \"%s\"",
+                    ip, 3 + second / 3600, second / 60 % 60, second % 60, METHODS[random.nextInt(METHODS.length)],
+                    random.nextInt(300), CODES[random.nextInt(CODES.length)], random.nextInt(50_000),
+                    REFERERS[random.nextInt(REFERERS.length)], AGENTS[random.nextInt(AGENTS.length)]));
+            if (random.nextInt(100) == 0) {
+                lines.add("повреждённая строка " + i);
+            }
+        }
+        try (InputStream in = StatisticsCombineTest.class.getResourceAsStream("/ru/stepup/model/golden.log")) {
+            assertNotNull(in, "нет golden.log");
+            String text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            lines.addAll(List.of(text.split("\n")));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,150 @@
+package ru.stepup.utils;
+
+import org.junit.jupiter.api.Test;
+
+import ru.stepup.model.ParseError;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Состояние статистики для контрольных точек: запись и чтение без потерь, счётчики больше
+// Integer.MAX_VALUE и чтение состояний прежних версий. state-v1..v5 записаны версиями программы,
+// в которых появился соответствующий формат, по тем же строкам state.log
+class StatisticsStateTest {
+    private static final int OLDEST_VERSION = 1;
+    private static final int CURRENT_VERSION = 6;
+
+    @Test
+    void writeAndReadKeepEveryGetter() throws IOException {
+        for (boolean approximate : new boolean[]{false, true}) {
+            Statistics expected = collect(approximate);
+            assertSame(expected, roundTrip(expected), CURRENT_VERSION, "запись и чтение, " + approximate);
+        }
+    }
+
+    @Test
+    void countersAboveIntRangeSurviveRoundTrip() throws IOException {
+        Statistics statistics = collect(false);
+        long before = statistics.getParseErrorCount();
+        statistics.addParseErrors(ParseError.NO_USER_AGENT, Integer.MAX_VALUE);
+        statistics.addParseErrors(ParseError.NO_USER_AGENT, Integer.MAX_VALUE);
+        long expected = before + 2L * Integer.MAX_VALUE;
+        assertEquals(expected, statistics.getParseErrorCount());
+
+        Statistics restored = roundTrip(statistics);
+        assertEquals(expected, restored.getParseErrorCount());
+        assertEquals(statistics.getParseErrorCounts(), restored.getParseErrorCounts());
+        assertEquals(statistics.getLineCount(), restored.getLineCount());
+        assertTrue(restored.getParseErrorRate() > 0.99, "доля ошибок " + restored.getParseErrorRate());
+    }
+
+    @Test
+    void readsEveryOlderVersion() throws IOException {
+        for (boolean approximate : new boolean[]{false, true}) {
+            Statistics expected = collect(approximate);
+            for (int version = OLDEST_VERSION; version < CURRENT_VERSION; version++) {
+                String name = "state-v" + version + (approximate ? "-approximate" : "") + ".bin";
+                Statistics restored;
+                try (InputStream in = StatisticsStateTest.class.getResourceAsStream(name)) {
+                    assertNotNull(in, "нет " + name);
+                    restored = Statistics.readFrom(new DataInputStream(in));
+                }
+                assertSame(expected, restored, version, name);
+            }
+        }
+    }
+
+    @Test
+    void rejectsUnknownVersion() throws IOException {
+        byte[] state = write(collect(false));
+        state[5] = 99; // Младший байт версии после четырёх байтов заголовка
+        assertThrows(IOException.class, () -> Statistics.readFrom(new DataInputStream(new ByteArrayInputStream(state))));
+    }
+
+    private static Statistics collect(boolean approximate) throws IOException {
+        Statistics statistics = new Statistics(approximate);
+        AnalyzeOptions options = new AnalyzeOptions().setApproximate(approximate);
+        LineProcessor processor = new LineProcessor(statistics, options, "");
+        for (String line : readLog()) {
+            processor.processLine(line);
+        }
+        processor.finish();
+        return statistics;
+    }
+
+    private static Statistics roundTrip(Statistics statistics) throws IOException {
+        return Statistics.readFrom(new DataInputStream(new ByteArrayInputStream(write(statistics))));
+    }
+
+    private static byte[] write(Statistics statistics) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        statistics.writeTo(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    // Сравниваем то, что сохраняет состояние версии version: до версии 2 нет временных рядов,
+    // до 3 - причин ошибок разбора, до 4 - классов кодов ответа
+    private static void assertSame(Statistics expected, Statistics actual, int version, String label) {
+        assertEquals(expected.isApproximate(), actual.isApproximate(), label);
+        assertEquals(expected.getEntryCount(), actual.getEntryCount(), label);
+        assertEquals(expected.getParseErrorCount(), actual.getParseErrorCount(), label);
+        assertEquals(version >= 3 ? expected.getParseErrorCounts() : Map.of(), actual.getParseErrorCounts(), label);
+        assertEquals(version >= 4 ? expected.getStatusClassCounts() : Map.of(), actual.getStatusClassCounts(), label);
+        assertEquals(expected.getTotalTraffic(), actual.getTotalTraffic(), label);
+        assertEquals(expected.getMinTime(), actual.getMinTime(), label);
+        assertEquals(expected.getMaxTime(), actual.getMaxTime(), label);
+        assertEquals(expected.getErrorRequestsCount(), actual.getErrorRequestsCount(), label);
+        assertEquals(expected.getYandexBotCount(), actual.getYandexBotCount(), label);
+        assertEquals(expected.getGoogleBotCount(), actual.getGoogleBotCount(), label);
+        assertEquals(expected.getOsStatistics(), actual.getOsStatistics(), label);
+        assertEquals(expected.getBrowserStatistics(), actual.getBrowserStatistics(), label);
+        assertEquals(expected.getPeakVisitsPerSecond(), actual.getPeakVisitsPerSecond(), label);
+        assertEquals(expected.getMaxVisitsBySingleUser(), actual.getMaxVisitsBySingleUser(), label);
+        assertEquals(expected.getUniqueHumanIpCount(), actual.getUniqueHumanIpCount(), label);
+        assertEquals(expected.getAverageVisitsPerHour(), actual.getAverageVisitsPerHour(), label);
+        assertEquals(expected.getExistingPages(), actual.getExistingPages(), label);
+        assertEquals(expected.getNonExistingPages(), actual.getNonExistingPages(), label);
+        assertEquals(expected.getExistingPagesCount(), actual.getExistingPagesCount(), label);
+        assertEquals(expected.getRefererDomains(), actual.getRefererDomains(), label);
+        assertEquals(expected.getTopExistingPages(), actual.getTopExistingPages(), label);
+        assertEquals(expected.getTopRefererDomains(), actual.getTopRefererDomains(), label);
+        assertEquals(expected.getTopHumanIps(), actual.getTopHumanIps(), label);
+        if (version < 2) {
+            assertNull(actual.getMinuteSeries().last(1), label);
+            return;
+        }
+        for (TimeSeries[] series : new TimeSeries[][]{{expected.getMinuteSeries(), actual.getMinuteSeries()},
+                {expected.getHourSeries(), actual.getHourSeries()}}) {
+            for (int count : new int[]{1, 15, series[0].getCapacity()}) {
+                TimeSeries.Window expectedWindow = series[0].last(count);
+                TimeSeries.Window actualWindow = series[1].last(count);
+                assertEquals(expectedWindow.getStart(), actualWindow.getStart(), label);
+                assertEquals(expectedWindow.getRequests(), actualWindow.getRequests(), label);
+                assertEquals(expectedWindow.getHumanVisits(), actualWindow.getHumanVisits(), label);
+                assertEquals(expectedWindow.getErrors(), actualWindow.getErrors(), label);
+                assertEquals(expectedWindow.getBytes(), actualWindow.getBytes(), label);
+                assertEquals(expectedWindow.getDistinctIps(), actualWindow.getDistinctIps(), label);
+            }
+        }
+    }
+
+    private static List<String> readLog() throws IOException {
+        try (InputStream in = StatisticsStateTest.class.getResourceAsStream("state.log")) {
+            assertNotNull(in, "нет state.log");
+            return List.of(new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n"));
+        }
+    }
+}
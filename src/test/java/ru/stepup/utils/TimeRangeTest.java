@@ -0,0 +1,97 @@
+package ru.stepup.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Запрос --from/--to даёт одинаковые итоги на любом пути чтения: поиск части файла по времени
+// в один и несколько потоков, конвейер и gzip читают разные части лога, но строка с ошибкой
+// разбора относится к интервалу только по своей метке времени
+class TimeRangeTest {
+    private static final int LINES = 40_000; // Несколько мегабайт: поиск по времени отбрасывает большую часть
+    private static final int JITTER = 30; // Насколько строки нарушают порядок, меньше допуска запроса
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void everyReadPathCountsTheSameLines() throws IOException, InterruptedException {
+        Path log = directory.resolve("access.log");
+        Path gzip = directory.resolve("access.log.gz");
+        int[] expected = writeLogs(log, gzip);
+        TimeRange range = TimeRange.parse("2023-11-01T04:00", "2023-11-01T04:30", TimeRange.DEFAULT_JITTER_SECONDS);
+
+        AnalyzeOptions[] paths = {
+                new AnalyzeOptions(),
+                new AnalyzeOptions().setParserMode(ParserMode.BYTES),
+                new AnalyzeOptions().setParserMode(ParserMode.SINGLE_PASS).setThreads(4),
+                new AnalyzeOptions().setParserMode(ParserMode.BYTES).setPipelined(true).setThreads(3)};
+        for (AnalyzeOptions options : paths) {
+            options.setTimeRange(range);
+            assertCounts(expected, Analyze.collectStatistics(log.toString(), options), "лог, " + describe(options));
+            assertCounts(expected, Analyze.collectStatistics(gzip.toString(), options), "gzip, " + describe(options));
+        }
+    }
+
+    private static void assertCounts(int[] expected, Statistics statistics, String label) {
+        assertEquals(expected[0], statistics.getEntryCount(), label + ": записей");
+        assertEquals(expected[1], statistics.getParseErrorCount(), label + ": ошибок");
+        assertEquals(expected[0] + expected[1], statistics.getLineCount(), label + ": строк");
+    }
+
+    private static String describe(AnalyzeOptions options) {
+        return options.getParserMode() + ", потоков " + options.getThreads() + (options.isPipelined() ? ", конвейер" : "");
+    }
+
+    // Пишем один и тот же лог как есть и в gzip. Около 1% строк с ошибками: обрезанные после
+    // метки времени, с неверным кодом ответа и вовсе без метки. Результат - записи и ошибки интервала
+    private int[] writeLogs(Path log, Path gzip) throws IOException {
+        SplittableRandom random = new SplittableRandom(25);
+        int entries = 0;
+        int errors = 0;
+        long from = 3600; // 04:00 от начала лога в 03:00
+        long to = 5400;
+        try (Writer plain = Files.newBufferedWriter(log);
+             OutputStream gzipFile = new GZIPOutputStream(Files.newOutputStream(gzip));
+             Writer compressed = new OutputStreamWriter(gzipFile, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < LINES; i++) {
+                long second = Math.max(0, i * 7200L / LINES - random.nextInt(JITTER));
+                boolean inRange = second >= from && second < to;
+                String time = String.format("%02d/Nov/2023:%02d:%02d:%02d +0300",
+                        1, 3 + second / 3600, second / 60 % 60, second % 60);
+                String line;
+                int kind = random.nextInt(300);
+                if (kind == 0) {
+                    line = "10.0.0.1 - - [" + time + "] \"GET /обрезано";
+                    errors += inRange ? 1 : 0;
+                } else if (kind == 1) {
+                    line = "10.0.0.2 - - [" + time + "] \"GET /page HTTP/1.1\" abc 10 \"-\" \"curl/8.0\"";
+                    errors += inRange ? 1 : 0;
+                } else if (kind == 2) {
+                    line = "строка без метки времени " + i; // Не относится ни к какому интервалу
+                } else {
+                    line = "10.0." + random.nextInt(4) + "." + random.nextInt(250) + " - - [" + time + "] \"GET /page/"
+                            + random.nextInt(500) + " HTTP/1.1\" 200 " + random.nextInt(10_000)
+                            + " \"-\" \"Mozilla/5.0 (X11; Linux x86_64; rv:121.0) Gecko/20100101 Firefox/121.0\"";
+                    entries += inRange ? 1 : 0;
+                }
+                plain.write(line);
+                plain.write('\n');
+                compressed.write(line);
+                compressed.write('\n');
+            }
+        }
+        return new int[]{entries, errors};
+    }
+}